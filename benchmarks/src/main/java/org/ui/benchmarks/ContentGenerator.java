@@ -0,0 +1,142 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.benchmarks;
+
+import info.magnolia.jcr.util.NodeTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Fills an {@link InMemoryRepository} with generated users, groups, tags and site trees. Output only depends on the
+ * requested sizes, so runs are comparable.
+ */
+public class ContentGenerator {
+
+    static final String ROOT = "generated";
+    static final String LOGIN_TEMPLATE = "travel-demo:pages/login";
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int TEMPLATES = 20;
+
+    private final Random random = new Random(42);
+
+    /**
+     * Creates <code>count</code> nodes of the given type below <code>/generated</code>, returns their identifiers.
+     */
+    public List<String> createOptions(Session session, String nodeType, String prefix, int count) throws RepositoryException {
+        Node root = session.getRootNode().addNode(ROOT, NodeTypes.Folder.NAME);
+        List<String> identifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Node node = root.addNode(String.format("%s-%07d", prefix, i), nodeType);
+            node.setProperty("name", node.getName());
+            node.setProperty("title", prefix + " " + i);
+            identifiers.add(node.getIdentifier());
+            saveBatch(session, i);
+        }
+        session.save();
+        return identifiers;
+    }
+
+    /**
+     * Creates <code>count</code> users below <code>/generated</code>, each a member of up to three of the given groups.
+     */
+    public List<String> createUsers(Session session, int count, List<String> groupIds) throws RepositoryException {
+        Node root = session.getRootNode().addNode(ROOT, NodeTypes.Folder.NAME);
+        List<String> identifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Node user = root.addNode(String.format("user-%07d", i), NodeTypes.User.NAME);
+            user.setProperty("name", user.getName());
+            user.setProperty("email", user.getName() + "@example.com");
+            user.setProperty("enabled", true);
+            Node groups = user.addNode("groups", NodeTypes.ContentNode.NAME);
+            for (int g = 0; g < 3 && !groupIds.isEmpty(); g++) {
+                groups.setProperty(String.valueOf(g), groupIds.get(random.nextInt(groupIds.size())));
+            }
+            identifiers.add(user.getIdentifier());
+            saveBatch(session, i);
+        }
+        session.save();
+        return identifiers;
+    }
+
+    /**
+     * Creates a site of <code>count</code> pages, ten children per page, using twenty templates; a single page, the
+     * last one created and thus the deepest, uses {@link #LOGIN_TEMPLATE}.
+     */
+    public Node createSite(Session session, String name, int count) throws RepositoryException {
+        Node site = session.getRootNode().addNode(name, NodeTypes.Page.NAME);
+        site.setProperty(NodeTypes.Renderable.TEMPLATE, "travel-demo:pages/home");
+        List<Node> parents = new ArrayList<>();
+        parents.add(site);
+        int next = 0;
+        int children = 0;
+        for (int i = 1; i < count; i++) {
+            Node parent = parents.get(next);
+            Node page = parent.addNode("page-" + i, NodeTypes.Page.NAME);
+            page.setProperty(NodeTypes.Renderable.TEMPLATE, i == count - 1 ? LOGIN_TEMPLATE : "travel-demo:pages/template-" + (i % TEMPLATES));
+            page.setProperty("title", "Page " + i);
+            parents.add(page);
+            if (++children == 10) {
+                next++;
+                children = 0;
+            }
+            saveBatch(session, i);
+        }
+        session.save();
+        return site;
+    }
+
+    /**
+     * Assigns a random sample of the given identifiers to the node, the way management fields store them.
+     */
+    public void assign(Node node, String assignmentNodeName, List<String> identifiers, int count) throws RepositoryException {
+        Node assignments = node.addNode(assignmentNodeName, NodeTypes.ContentNode.NAME);
+        for (int i = 0; i < count && !identifiers.isEmpty(); i++) {
+            assignments.setProperty(String.valueOf(i), identifiers.get(random.nextInt(identifiers.size())));
+        }
+        node.getSession().save();
+    }
+
+    private static void saveBatch(Session session, int i) throws RepositoryException {
+        if (i % BATCH_SIZE == BATCH_SIZE - 1) {
+            session.save();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.benchmarks;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.context.SystemContext;
+import info.magnolia.test.ComponentsTestUtil;
+import info.magnolia.test.mock.MockContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.commons.cnd.CndImporter;
+import org.apache.jackrabbit.commons.cnd.ParseException;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+
+/**
+ * Jackrabbit repository kept in memory, with the workspaces used by the module and a mock Magnolia context serving
+ * their sessions, so that code relying on {@link MgnlContext} (including the system context) runs unchanged.
+ */
+public class InMemoryRepository implements AutoCloseable {
+
+    static final List<String> WORKSPACES = Arrays.asList("users", "usergroups", "tags", "website");
+
+    private final File home;
+    private final RepositoryImpl repository;
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    public InMemoryRepository() throws IOException, RepositoryException {
+        home = Files.createTempDirectory("ui-benchmarks").toFile();
+        try (InputStream config = InMemoryRepository.class.getResourceAsStream("repository.xml")) {
+            repository = RepositoryImpl.create(RepositoryConfig.create(config, home.getAbsolutePath()));
+        }
+        Session defaultSession = login("default");
+        try (Reader cnd = new InputStreamReader(InMemoryRepository.class.getResourceAsStream("nodetypes.cnd"), StandardCharsets.UTF_8)) {
+            CndImporter.registerNodeTypes(cnd, defaultSession);
+        } catch (ParseException e) {
+            throw new RepositoryException("Cannot register node types", e);
+        }
+        for (String workspace : WORKSPACES) {
+            defaultSession.getWorkspace().createWorkspace(workspace);
+            sessions.put(workspace, login(workspace));
+        }
+        defaultSession.logout();
+
+        MockContext context = new MockContext();
+        for (Map.Entry<String, Session> session : sessions.entrySet()) {
+            context.addSession(session.getKey(), session.getValue());
+        }
+        MgnlContext.setInstance(context);
+        ComponentsTestUtil.setInstance(SystemContext.class, context);
+    }
+
+    public Session getSession(String workspace) {
+        return sessions.get(workspace);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Session session : sessions.values()) {
+            session.logout();
+        }
+        sessions.clear();
+        MgnlContext.setInstance(null);
+        ComponentsTestUtil.clear();
+        repository.shutdown();
+        FileUtils.deleteQuietly(home);
+    }
+
+    private Session login(String workspace) throws RepositoryException {
+        return repository.login(new SimpleCredentials("admin", "admin".toCharArray()), workspace);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.benchmarks;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ui.model.TemplatePageIndex;
+
+/**
+ * Cost of finding the page of a template below a site root, as done by the navigation links of every render:
+ * through the {@link TemplatePageIndex}, and by walking the site tree as the templating functions do.
+ * Sizes are the number of pages, e.g. <code>-p size=500000</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkResolutionBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    private InMemoryRepository repository;
+    private TemplatePageIndex templatePageIndex;
+    private Node siteRoot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = new InMemoryRepository();
+        siteRoot = new ContentGenerator().createSite(repository.getSession("website"), "travel", size);
+        // only looked up by template id, the registry is needed for lookups by type
+        templatePageIndex = new TemplatePageIndex(null);
+        templatePageIndex.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Benchmark
+    public Node indexedLookup() throws RepositoryException {
+        return templatePageIndex.findPage(siteRoot, ContentGenerator.LOGIN_TEMPLATE);
+    }
+
+    @Benchmark
+    public Node treeWalkLookup() throws RepositoryException {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(siteRoot);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (ContentGenerator.LOGIN_TEMPLATE.equals(PropertyUtil.getString(node, NodeTypes.Renderable.TEMPLATE))) {
+                return node;
+            }
+            for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+                Node child = children.nextNode();
+                if (child.isNodeType(NodeTypes.Page.NAME)) {
+                    pending.push(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cold start of the index, paid once per instance.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5, batchSize = 1)
+    public int rebuildIndex() {
+        templatePageIndex.rebuild();
+        return templatePageIndex.getSize();
+    }
+}
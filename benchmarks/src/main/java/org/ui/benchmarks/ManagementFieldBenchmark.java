@@ -0,0 +1,143 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.benchmarks;
+
+import info.magnolia.jcr.util.NodeTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ui.field.AssignmentSnapshot;
+import org.ui.field.ManagementOption;
+import org.ui.field.ManagementOptionIndex;
+import org.ui.field.QueryManagementOptionSource;
+
+/**
+ * Cost of building the options of a management field dialog and of loading its assigned values.
+ * Sizes are the number of users, e.g. <code>-p size=500000</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagementFieldBenchmark {
+
+    private static final String WORKSPACE = "users";
+    private static final String PAGE_WORKSPACE = "website";
+
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    @Param({ "50" })
+    public int assigned;
+
+    private InMemoryRepository repository;
+    private List<ManagementOption> options;
+    private ManagementOptionIndex index;
+    private Node editedNode;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = new InMemoryRepository();
+        ContentGenerator generator = new ContentGenerator();
+        List<String> groupIds = generator.createOptions(repository.getSession("usergroups"), NodeTypes.Group.NAME, "group", Math.max(10, size / 100));
+        List<String> userIds = generator.createUsers(repository.getSession(WORKSPACE), size, groupIds);
+        editedNode = repository.getSession(PAGE_WORKSPACE).getRootNode().addNode("edited", NodeTypes.Page.NAME);
+        generator.assign(editedNode, "users", userIds, assigned);
+        options = QueryManagementOptionSource.query(WORKSPACE, NodeTypes.User.NAME, "name");
+        index = ManagementOptionIndex.of(options);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    /**
+     * Uncached dialog option construction: one query over the workspace.
+     */
+    @Benchmark
+    public List<ManagementOption> queryOptions() throws Exception {
+        return QueryManagementOptionSource.query(WORKSPACE, NodeTypes.User.NAME, "name");
+    }
+
+    /**
+     * Building the shared prefix index out of the queried options.
+     */
+    @Benchmark
+    public ManagementOptionIndex buildIndex() {
+        return ManagementOptionIndex.of(options);
+    }
+
+    /**
+     * Type-ahead search in the cached index.
+     */
+    @Benchmark
+    public List<ManagementOption> searchIndex() {
+        return index.search("user-00012", 50);
+    }
+
+    /**
+     * Reading the assigned identifiers and marking the selected options, as done once per dialog.
+     */
+    @Benchmark
+    public List<ManagementOption> loadAssigned() throws Exception {
+        AssignmentSnapshot snapshot = AssignmentSnapshot.read(editedNode, "users");
+        List<ManagementOption> selected = new ArrayList<>(snapshot.size());
+        for (ManagementOption option : options) {
+            if (snapshot.contains(option)) {
+                selected.add(option);
+            }
+        }
+        return selected;
+    }
+}
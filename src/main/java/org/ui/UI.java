@@ -1,12 +1,117 @@
 package org.ui;
 
+import info.magnolia.module.ModuleLifecycle;
+import info.magnolia.module.ModuleLifecycleContext;
+
+import javax.inject.Inject;
+
+import org.ui.alert.AlertTopic;
+import org.ui.engagement.EngagementCounters;
+import org.ui.engagement.EngagementLeaderboard;
+import org.ui.feed.TagFeedIndex;
+import org.ui.field.AssignmentIndex;
+import org.ui.field.ManagementOptionCache;
+import org.ui.image.ImageDerivatives;
+import org.ui.metrics.MetricsRegistry;
+import org.ui.model.FragmentCache;
+import org.ui.model.NavigationLinksCache;
+import org.ui.model.PageLinkCache;
+import org.ui.model.TemplatePageIndex;
+import org.ui.notification.GroupMembershipCache;
+import org.ui.notification.NotificationService;
+import org.ui.site.SiteResolver;
+import org.ui.webresources.WebResourceBundler;
+
 /**
  * This class is optional and represents the configuration for the ui module.
  * By exposing simple getter/setter/adder methods, this bean can be configured via content2bean
  * using the properties and node from <tt>config:/modules/ui</tt>.
  * If you don't need this, simply remove the reference to this class in the module descriptor xml.
  */
-public class UI {
-    /* you can optionally implement info.magnolia.module.ModuleLifecycle */
+public class UI implements ModuleLifecycle {
+
+    private final ManagementOptionCache managementOptionCache;
+    private final PageLinkCache pageLinkCache;
+    private final TemplatePageIndex templatePageIndex;
+    private final GroupMembershipCache groupMembershipCache;
+    private final NotificationService notificationService;
+    private final EngagementCounters engagementCounters;
+    private final EngagementLeaderboard engagementLeaderboard;
+    private final NavigationLinksCache navigationLinksCache;
+    private final MetricsRegistry metricsRegistry;
+    private final FragmentCache fragmentCache;
+    private final WebResourceBundler webResourceBundler;
+    private final ImageDerivatives imageDerivatives;
+    private final SiteResolver siteResolver;
+    private final TagFeedIndex tagFeedIndex;
+    private final AlertTopic alertTopic;
+    private final AssignmentIndex assignmentIndex;
+
+    @Inject
+    public UI(ManagementOptionCache managementOptionCache, PageLinkCache pageLinkCache, TemplatePageIndex templatePageIndex,
+            GroupMembershipCache groupMembershipCache, NotificationService notificationService, EngagementCounters engagementCounters,
+            EngagementLeaderboard engagementLeaderboard, NavigationLinksCache navigationLinksCache, MetricsRegistry metricsRegistry,
+            FragmentCache fragmentCache, WebResourceBundler webResourceBundler, ImageDerivatives imageDerivatives,
+            SiteResolver siteResolver, TagFeedIndex tagFeedIndex, AlertTopic alertTopic,
+            AssignmentIndex assignmentIndex) {
+        this.managementOptionCache = managementOptionCache;
+        this.pageLinkCache = pageLinkCache;
+        this.templatePageIndex = templatePageIndex;
+        this.groupMembershipCache = groupMembershipCache;
+        this.notificationService = notificationService;
+        this.engagementCounters = engagementCounters;
+        this.engagementLeaderboard = engagementLeaderboard;
+        this.navigationLinksCache = navigationLinksCache;
+        this.metricsRegistry = metricsRegistry;
+        this.fragmentCache = fragmentCache;
+        this.webResourceBundler = webResourceBundler;
+        this.imageDerivatives = imageDerivatives;
+        this.siteResolver = siteResolver;
+        this.tagFeedIndex = tagFeedIndex;
+        this.alertTopic = alertTopic;
+        this.assignmentIndex = assignmentIndex;
+    }
+
+    @Override
+    public void start(ModuleLifecycleContext moduleLifecycleContext) {
+        siteResolver.start();
+        managementOptionCache.start();
+        pageLinkCache.start();
+        templatePageIndex.start();
+        assignmentIndex.start();
+        groupMembershipCache.start();
+        notificationService.start();
+        alertTopic.start();
+        engagementCounters.start();
+        engagementLeaderboard.start();
+        fragmentCache.start();
+        webResourceBundler.start();
+        imageDerivatives.start();
+        tagFeedIndex.start();
+        metricsRegistry.hitRatio("field.options.cache", managementOptionCache::getHitCount, managementOptionCache::getMissCount);
+        metricsRegistry.hitRatio("links.page.cache", pageLinkCache::getHitCount, pageLinkCache::getMissCount);
+        metricsRegistry.hitRatio("links.navigation.cache", navigationLinksCache::getHitCount, navigationLinksCache::getMissCount);
+        metricsRegistry.hitRatio("fragments.cache", fragmentCache::getHitCount, fragmentCache::getMissCount);
+        metricsRegistry.hitRatio("images.cache", imageDerivatives::getHitCount, imageDerivatives::getMissCount);
+        metricsRegistry.start();
+    }
 
+    @Override
+    public void stop(ModuleLifecycleContext moduleLifecycleContext) {
+        notificationService.stop();
+        alertTopic.stop();
+        engagementLeaderboard.stop();
+        engagementCounters.stop();
+        managementOptionCache.stop();
+        pageLinkCache.stop();
+        templatePageIndex.stop();
+        assignmentIndex.stop();
+        groupMembershipCache.stop();
+        fragmentCache.stop();
+        webResourceBundler.stop();
+        imageDerivatives.stop();
+        tagFeedIndex.stop();
+        siteResolver.stop();
+        metricsRegistry.stop();
+    }
 }
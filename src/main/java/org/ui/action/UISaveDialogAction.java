@@ -33,36 +33,164 @@
  */
 package org.ui.action;
 
+import info.magnolia.jcr.iterator.FilteringPropertyIterator;
+import info.magnolia.jcr.predicate.JCRMgnlPropertyHidingPredicate;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
 import info.magnolia.ui.api.action.ActionExecutionException;
 import info.magnolia.ui.dialog.action.SaveDialogAction;
 import info.magnolia.ui.dialog.action.SaveDialogActionDefinition;
 import info.magnolia.ui.form.EditorCallback;
 import info.magnolia.ui.form.EditorValidator;
+import info.magnolia.ui.vaadin.integration.jcr.JcrNodeAdapter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ui.alert.AlertTopic;
+import org.ui.feed.TagFeedIndex;
+import org.ui.field.AssignmentIndex;
+import org.ui.field.AssignmentSnapshot;
+import org.ui.metrics.MetricsRegistry;
+import org.ui.metrics.Timer;
+import org.ui.notification.Notification;
+import org.ui.notification.NotificationService;
 
 import com.vaadin.v7.data.Item;
 
 /**
- * org.ui.action.
+ * Saves the dialog, then queues a {@link Notification} to the users and groups assigned to the saved node, unless the
+ * save changed neither the node nor its assignments. Recipients are expanded and mails sent by the {@link NotificationService}, off the UI thread. The saved page is
+ * indexed again by the {@link TagFeedIndex} right away, without waiting for the observation, and pages flagged
+ * <code>important</code> are published to the {@link AlertTopic}. The assignments written by the management fields
+ * are committed to the {@link AssignmentIndex}.
  */
 public class UISaveDialogAction<T extends SaveDialogActionDefinition> extends SaveDialogAction {
     private static final Logger log = LoggerFactory.getLogger(UISaveDialogAction.class);
     protected final Item item;
     protected final EditorCallback callback;
     protected final EditorValidator validator;
+    private final NotificationService notificationService;
+    private final TagFeedIndex tagFeedIndex;
+    private final AlertTopic alertTopic;
+    private final AssignmentIndex assignmentIndex;
+    private final Timer saveTimer;
 
-    public UISaveDialogAction(T definition, Item item, EditorValidator validator, EditorCallback callback) {
+    @Inject
+    public UISaveDialogAction(T definition, Item item, EditorValidator validator, EditorCallback callback, NotificationService notificationService, TagFeedIndex tagFeedIndex,
+            AlertTopic alertTopic, AssignmentIndex assignmentIndex, MetricsRegistry metricsRegistry) {
         super(definition, item, validator, callback);
         this.item = item;
         this.callback = callback;
         this.validator = validator;
+        this.notificationService = notificationService;
+        this.tagFeedIndex = tagFeedIndex;
+        this.alertTopic = alertTopic;
+        this.assignmentIndex = assignmentIndex;
+        this.saveTimer = metricsRegistry.timer("dialog.save");
     }
 
     @Override
     public void execute() throws ActionExecutionException {
-        log.warn("\n==============\nEmail Sent!\n==============\n");
-        super.execute();
+        Map<String, String> before = null;
+        if (item instanceof JcrNodeAdapter && !((JcrNodeAdapter) item).isNew()) {
+            try {
+                before = readState(((JcrNodeAdapter) item).getJcrItem());
+            } catch (RepositoryException e) {
+                log.warn("Cannot read the node before saving, it will be considered changed.", e);
+            }
+        }
+        long start = saveTimer.start();
+        try {
+            super.execute();
+        } catch (ActionExecutionException | RuntimeException e) {
+            saveTimer.error();
+            throw e;
+        } finally {
+            saveTimer.stop(start);
+        }
+        if (validator.isValid() && item instanceof JcrNodeAdapter) {
+            Node node = ((JcrNodeAdapter) item).getJcrItem();
+            try {
+                Notification notification = createNotification(node);
+                // re-saving an unchanged page neither notifies nor alerts again
+                boolean changed = before == null || !before.equals(readState(node));
+                if (notification.hasRecipients() && changed) {
+                    notificationService.submit(notification);
+                }
+                if (notification.isImportant() && changed) {
+                    alertTopic.publish(notification.getPageIdentifier(), notification.getPagePath(), notification.getTitle());
+                }
+            } catch (RepositoryException e) {
+                log.error("Cannot read the recipients of the saved node, no notification is sent.", e);
+            }
+            try {
+                assignmentIndex.commit(item, node);
+            } catch (RepositoryException e) {
+                log.warn("Cannot index the assignments of the saved node, the index will follow on the next change event.", e);
+            }
+            try {
+                tagFeedIndex.update(node);
+            } catch (RepositoryException e) {
+                log.warn("Cannot index the tags of the saved node, the feeds will follow on the next change event.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the assignments written by the management fields of the dialog.
+     */
+    protected Notification createNotification(Node node) throws RepositoryException {
+        return new Notification(node.getIdentifier(), node.getPath(),
+                PropertyUtil.getString(node, "title", node.getName()),
+                PropertyUtil.getBoolean(node, "important", false),
+                AssignmentSnapshot.read(node, "users").getIdentifiers(),
+                AssignmentSnapshot.read(node, "groups").getIdentifiers(),
+                AssignmentSnapshot.read(node, "tags").getIdentifiers());
+    }
+
+    /**
+     * Reads the properties of the node and of its content child nodes, e.g. the assignments, to tell whether a save
+     * changed anything.
+     */
+    private static Map<String, String> readState(Node node) throws RepositoryException {
+        Map<String, String> state = new HashMap<>();
+        readState(node, "", state);
+        return state;
+    }
+
+    private static void readState(Node node, String prefix, Map<String, String> state) throws RepositoryException {
+        for (PropertyIterator properties = new FilteringPropertyIterator(node.getProperties(), new JCRMgnlPropertyHidingPredicate()); properties.hasNext(); ) {
+            Property property = properties.nextProperty();
+            if (property.getType() == PropertyType.BINARY) {
+                // compared by size, binaries aren't read
+                state.put(prefix + property.getName(), String.valueOf(property.isMultiple() ? -1 : property.getLength()));
+            } else if (property.isMultiple()) {
+                StringBuilder values = new StringBuilder();
+                for (Value value : property.getValues()) {
+                    values.append(value.getString()).append('\n');
+                }
+                state.put(prefix + property.getName(), values.toString());
+            } else {
+                state.put(prefix + property.getName(), property.getString());
+            }
+        }
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            Node child = children.nextNode();
+            if (NodeTypes.ContentNode.NAME.equals(child.getPrimaryNodeType().getName())) {
+                readState(child, prefix + child.getName() + "/", state);
+            }
+        }
     }
 }
@@ -0,0 +1,80 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.alert;
+
+/**
+ * Immutable alert about a page saved with its <code>important</code> flag set, numbered in publication order.
+ */
+public final class Alert {
+
+    private final long id;
+    private final String pageIdentifier;
+    private final String pagePath;
+    private final String title;
+    private final long timestamp;
+
+    Alert(long id, String pageIdentifier, String pagePath, String title, long timestamp) {
+        this.id = id;
+        this.pageIdentifier = pageIdentifier;
+        this.pagePath = pagePath;
+        this.title = title;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sequence number of the alert, used as event id to resume a stream.
+     */
+    public long getId() {
+        return id;
+    }
+
+    public String getPageIdentifier() {
+        return pageIdentifier;
+    }
+
+    public String getPagePath() {
+        return pagePath;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Time of the last save coalesced into the alert, in milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.alert;
+
+import info.magnolia.cms.security.AccessManager;
+import info.magnolia.cms.security.Permission;
+import info.magnolia.cms.security.PermissionUtil;
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Server-sent event stream of the {@link AlertTopic}, mapped to <code>/.ui/alerts</code> by the module descriptor.
+ * <p>
+ * Each connection is held open asynchronously, without a container thread, written without blocking and subscribed to
+ * the topic; browsers reconnect by themselves with the id of the last event received and get the alerts they missed
+ * from the history. Where the container doesn't support asynchronous requests, the stream only returns the missed
+ * alerts and asks the browser to reconnect later, which reads memory only.
+ * <p>
+ * The stream is only served to authenticated users; anonymous visitors get a 403, and the module also denies them the
+ * URI. Each connection only receives the alerts about pages its user can read, checked against the access control
+ * lists of the user captured when subscribing.
+ */
+public class AlertServlet extends HttpServlet {
+
+    private static final String CONTENT_TYPE = "text/event-stream; charset=utf-8";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final long CONNECTION_TIMEOUT = 30 * 60 * 1000;
+    private static final long RECONNECT_DELAY = 3000;
+    private static final long FALLBACK_RECONNECT_DELAY = 15000;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        User user = MgnlContext.getUser();
+        if (user == null || UserManager.ANONYMOUS_USER.equals(user.getName())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        AlertTopic topic = Components.getComponent(AlertTopic.class);
+        long lastId = NumberUtils.toLong(StringUtils.defaultIfBlank(request.getHeader(LAST_EVENT_ID), request.getParameter("lastEventId")), -1);
+        if (!topic.isRunning()) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        // keeps reverse proxies from buffering the stream
+        response.setHeader("X-Accel-Buffering", "no");
+        ServletOutputStream out = response.getOutputStream();
+        Predicate<Alert> readable = readable();
+
+        if (!request.isAsyncSupported()) {
+            write(out, "retry: " + FALLBACK_RECONNECT_DELAY + "\n\n");
+            write(out, topic.getHistory(lastId, readable));
+            return;
+        }
+        AsyncContext async = request.startAsync();
+        async.setTimeout(CONNECTION_TIMEOUT);
+        out.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                // the next delivery finds the connection ready again
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                complete(async);
+            }
+        });
+        if (!out.isReady()) {
+            complete(async);
+            return;
+        }
+        write(out, "retry: " + RECONNECT_DELAY + "\n\n");
+        out.flush();
+        AlertSubscription subscription = topic.subscribe(alerts -> {
+            try {
+                // writes don't block: a connection still sending its previous events is dropped rather than holding a
+                // writer thread of the topic, and gets what it missed from the history when the browser reconnects
+                if (!out.isReady()) {
+                    throw new IOException("The connection is too slow to take the alerts.");
+                }
+                write(out, alerts);
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                // the subscription closes itself, the request is released here rather than at the timeout
+                complete(async);
+                throw e;
+            }
+        }, lastId, readable);
+        if (subscription == null) {
+            complete(async);
+            return;
+        }
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                subscription.close();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                subscription.close();
+                complete(event.getAsyncContext());
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                subscription.close();
+                complete(event.getAsyncContext());
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    private static void complete(AsyncContext async) {
+        try {
+            async.complete();
+        } catch (IllegalStateException e) {
+            // already completed, e.g. by the timeout
+        }
+    }
+
+    /**
+     * Tells whether the current user can read the page of an alert, without a repository session: alerts are checked on
+     * the threads of the topic.
+     */
+    private static Predicate<Alert> readable() {
+        AccessManager accessManager = PermissionUtil.getAccessManager(RepositoryConstants.WEBSITE, MgnlContext.getSubject());
+        if (accessManager == null) {
+            return alert -> false;
+        }
+        return alert -> accessManager.isGranted(alert.getPagePath(), Permission.READ);
+    }
+
+    /**
+     * Writes the given alerts as events, or a comment keeping the connection alive if there are none.
+     */
+    private static void write(ServletOutputStream out, List<Alert> alerts) throws IOException {
+        if (alerts.isEmpty()) {
+            write(out, ":\n\n");
+            return;
+        }
+        StringBuilder events = new StringBuilder();
+        for (Alert alert : alerts) {
+            events.append("id: ").append(alert.getId()).append('\n')
+                    .append("event: alert\n")
+                    .append("data: {\"identifier\":\"").append(StringEscapeUtils.escapeJson(alert.getPageIdentifier()))
+                    .append("\",\"path\":\"").append(StringEscapeUtils.escapeJson(alert.getPagePath()))
+                    .append("\",\"title\":\"").append(StringEscapeUtils.escapeJson(StringUtils.defaultString(alert.getTitle())))
+                    .append("\",\"timestamp\":").append(alert.getTimestamp()).append("}\n\n");
+        }
+        write(out, events.toString());
+    }
+
+    private static void write(ServletOutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
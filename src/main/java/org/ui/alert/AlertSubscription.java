@@ -0,0 +1,175 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.alert;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Connection subscribed to the {@link AlertTopic}, with a bounded buffer of the alerts it hasn't received yet.
+ * <p>
+ * A newer alert about a page replaces the buffered one, and the oldest alert is dropped when the buffer is full: a
+ * slow connection never holds more than {@link AlertTopic#getBufferSize()} alerts. Alerts the filter of the subscription
+ * rejects, e.g. about pages its user cannot read, are never buffered. Alerts are handed to the {@link Listener} on a
+ * writer thread of the topic, one delivery at a time per subscription.
+ */
+public final class AlertSubscription implements AutoCloseable {
+
+    /**
+     * Writes alerts to the connection.
+     */
+    public interface Listener {
+
+        /**
+         * Writes the given alerts, or a keep-alive if there are none; a failure closes the subscription.
+         */
+        void onAlerts(List<Alert> alerts) throws IOException;
+    }
+
+    private final AlertTopic topic;
+    private final Listener listener;
+    private final Predicate<Alert> filter;
+    private final int capacity;
+    private final Deque<Alert> buffer;
+    private boolean scheduled;
+    private boolean heartbeat;
+    private long dropped;
+    private volatile boolean closed;
+
+    AlertSubscription(AlertTopic topic, Listener listener, Predicate<Alert> filter, int capacity) {
+        this.topic = topic;
+        this.listener = listener;
+        this.filter = filter;
+        this.capacity = capacity;
+        this.buffer = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Buffers the given alert, returns <code>true</code> if a delivery must be scheduled.
+     */
+    synchronized boolean offer(Alert alert) {
+        if (closed || !filter.test(alert)) {
+            return false;
+        }
+        for (Iterator<Alert> alerts = buffer.iterator(); alerts.hasNext();) {
+            if (alerts.next().getPageIdentifier().equals(alert.getPageIdentifier())) {
+                alerts.remove();
+                break;
+            }
+        }
+        if (buffer.size() >= capacity) {
+            buffer.pollFirst();
+            dropped++;
+            topic.dropped(1);
+        }
+        buffer.addLast(alert);
+        return schedule();
+    }
+
+    /**
+     * Requests a keep-alive, returns <code>true</code> if a delivery must be scheduled.
+     */
+    synchronized boolean ping() {
+        if (closed) {
+            return false;
+        }
+        heartbeat = true;
+        return schedule();
+    }
+
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Hands the buffered alerts to the listener until the buffer stays empty; run by a writer thread of the topic.
+     */
+    void deliver() {
+        while (true) {
+            List<Alert> alerts;
+            synchronized (this) {
+                if (closed || buffer.isEmpty() && !heartbeat) {
+                    scheduled = false;
+                    return;
+                }
+                alerts = new ArrayList<>(buffer);
+                buffer.clear();
+                heartbeat = false;
+            }
+            try {
+                listener.onAlerts(alerts);
+                topic.delivered(alerts.size());
+            } catch (IOException | RuntimeException e) {
+                close();
+                synchronized (this) {
+                    scheduled = false;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Alerts dropped because the buffer was full.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        topic.unsubscribe(this);
+        synchronized (this) {
+            topic.dropped(buffer.size());
+            buffer.clear();
+        }
+    }
+}
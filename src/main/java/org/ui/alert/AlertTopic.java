@@ -0,0 +1,370 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.alert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process topic of the alerts about important pages, pushed to the subscribed connections.
+ * <p>
+ * {@link #publish(String, String, String)} only records the alert: saves of the same page within
+ * {@link #getCoalesceDelay()} make a single alert. The dispatcher then appends the pending alerts to a short history,
+ * used to resume streams, and offers them to the {@link AlertSubscription}s, which are written by a small pool of
+ * writer threads. Subscribers receive a keep-alive every {@link #getHeartbeatInterval()} so dead connections are
+ * detected; none of this touches the repository.
+ */
+@Singleton
+public class AlertTopic {
+
+    private static final Logger log = LoggerFactory.getLogger(AlertTopic.class);
+
+    private static final Alert[] EMPTY = new Alert[0];
+    private static final long SHUTDOWN_TIMEOUT = 2000;
+
+    private long coalesceDelay = 200;
+    private long heartbeatInterval = 25000;
+    private int bufferSize = 32;
+    private int historySize = 64;
+    private int maxSubscriptions = 10000;
+    private int writerThreads = 4;
+
+    private final Set<AlertSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Map<String, Alert> pending = new LinkedHashMap<>();
+    private volatile Alert[] history = EMPTY;
+    private long sequence;
+    private volatile boolean running;
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService writers;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Publishes an alert about the given page, returns <code>false</code> if the topic isn't running.
+     */
+    public boolean publish(String pageIdentifier, String pagePath, String title) {
+        if (!running) {
+            return false;
+        }
+        Alert alert = new Alert(0, pageIdentifier, pagePath, title, System.currentTimeMillis());
+        synchronized (pending) {
+            // the latest save wins, but keeps the position of the first one
+            if (pending.put(pageIdentifier, alert) != null) {
+                coalesced.increment();
+            }
+        }
+        published.increment();
+        return true;
+    }
+
+    /**
+     * Subscribes the given listener to the alerts accepted by the given filter, returns <code>null</code> if the topic
+     * isn't running or too many connections are subscribed. Alerts of the history following <code>lastId</code> are
+     * delivered first; pass <code>-1</code> for none.
+     */
+    public synchronized AlertSubscription subscribe(AlertSubscription.Listener listener, long lastId, Predicate<Alert> filter) {
+        if (!running || subscriptions.size() >= maxSubscriptions) {
+            rejected.increment();
+            return null;
+        }
+        AlertSubscription subscription = new AlertSubscription(this, listener, filter, bufferSize);
+        subscriptions.add(subscription);
+        boolean schedule = false;
+        if (lastId >= 0) {
+            for (Alert alert : history) {
+                if (alert.getId() > lastId) {
+                    schedule |= subscription.offer(alert);
+                }
+            }
+        }
+        if (schedule) {
+            submit(subscription);
+        }
+        return subscription;
+    }
+
+    void unsubscribe(AlertSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    void delivered(int count) {
+        delivered.add(count);
+    }
+
+    void dropped(long count) {
+        dropped.add(count);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        writers = Executors.newFixedThreadPool(writerThreads, newThreadFactory("ui-alert-writer"));
+        dispatcher = Executors.newSingleThreadScheduledExecutor(newThreadFactory("ui-alert-dispatcher"));
+        dispatcher.scheduleWithFixedDelay(this::dispatch, coalesceDelay, coalesceDelay, TimeUnit.MILLISECONDS);
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    /**
+     * Stops dispatching and closes all subscriptions; pending alerts are dropped.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        dispatcher.shutdownNow();
+        for (AlertSubscription subscription : new ArrayList<>(subscriptions)) {
+            subscription.close();
+        }
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                writers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (pending) {
+            pending.clear();
+        }
+        history = EMPTY;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the alerts of the history following the given id accepted by the given filter, oldest first.
+     */
+    public List<Alert> getHistory(long lastId, Predicate<Alert> filter) {
+        List<Alert> alerts = new ArrayList<>();
+        for (Alert alert : history) {
+            if (alert.getId() > lastId && filter.test(alert)) {
+                alerts.add(alert);
+            }
+        }
+        return alerts;
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * Publications merged into an alert already pending for the same page.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * Alerts dropped from full buffers of slow connections, or still buffered when their connection closed.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Subscriptions refused because the topic wasn't running or {@link #getMaxSubscriptions()} was reached.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Delay in milliseconds during which alerts about the same page are merged, only taken into account on next
+     * {@link #start()}.
+     */
+    public long getCoalesceDelay() {
+        return coalesceDelay;
+    }
+
+    public void setCoalesceDelay(long coalesceDelay) {
+        this.coalesceDelay = coalesceDelay;
+    }
+
+    /**
+     * Interval in milliseconds between keep-alives, only taken into account on next {@link #start()}.
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Alerts buffered per connection.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Last alerts kept to resume the streams of reconnecting clients.
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public int getMaxSubscriptions() {
+        return maxSubscriptions;
+    }
+
+    public void setMaxSubscriptions(int maxSubscriptions) {
+        this.maxSubscriptions = maxSubscriptions;
+    }
+
+    /**
+     * Only taken into account on next {@link #start()}.
+     */
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    private void dispatch() {
+        try {
+            List<Alert> alerts;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                alerts = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            List<Alert> numbered = new ArrayList<>(alerts.size());
+            synchronized (this) {
+                for (Alert alert : alerts) {
+                    numbered.add(new Alert(++sequence, alert.getPageIdentifier(), alert.getPagePath(), alert.getTitle(), alert.getTimestamp()));
+                }
+                Alert[] current = history;
+                Alert[] all = Arrays.copyOf(current, current.length + numbered.size());
+                for (int i = 0; i < numbered.size(); i++) {
+                    all[current.length + i] = numbered.get(i);
+                }
+                history = all.length > historySize ? Arrays.copyOfRange(all, all.length - historySize, all.length) : all;
+                // under the lock, so a new subscription gets each alert either from the history or from here
+                for (AlertSubscription subscription : subscriptions) {
+                    boolean schedule = false;
+                    for (Alert alert : numbered) {
+                        schedule |= subscription.offer(alert);
+                    }
+                    if (schedule) {
+                        submit(subscription);
+                    }
+                }
+            }
+            log.debug("Dispatched {} alerts to {} subscriptions.", numbered.size(), subscriptions.size());
+        } catch (RuntimeException e) {
+            log.error("Cannot dispatch alerts.", e);
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            for (AlertSubscription subscription : subscriptions) {
+                if (subscription.ping()) {
+                    submit(subscription);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Cannot send keep-alives.", e);
+        }
+    }
+
+    private void submit(AlertSubscription subscription) {
+        try {
+            writers.execute(subscription::deliver);
+        } catch (RejectedExecutionException e) {
+            subscription.close();
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.engagement;
+
+import info.magnolia.context.MgnlContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Engagement counters of the nodes of the <code>moderator</code> workspace.
+ * <p>
+ * Increments only add up in memory, in {@link LongAdder}s which don't contend between request threads. A background
+ * task flushes them every {@link #getFlushInterval()} milliseconds, saving up to {@link #getBatchSize()} nodes per
+ * session save. Counters are written as longs and the legacy <code>jcrInterations</code> percentage string as a double.
+ * Reads return the stored value plus the increments not flushed yet; stored values are cached until the next flush.
+ */
+@Singleton
+public class EngagementCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(EngagementCounters.class);
+
+    public static final String WORKSPACE = "moderator";
+    public static final String INTERACTIONS_PROPERTY = "jcrInterations";
+
+    private static final Engagement[] ENGAGEMENTS = Engagement.values();
+
+    private long flushInterval = 5000;
+    private int batchSize = 100;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder failedSaves = new LongAdder();
+
+    public void increment(String path, Engagement engagement) {
+        add(path, engagement, 1);
+    }
+
+    /**
+     * Is told about every increment, on the incrementing thread: must be cheap and must not block.
+     */
+    public interface Listener {
+        void added(String path, Engagement engagement, long delta);
+    }
+
+    /**
+     * Adds the given delta to the counter of the moderator node at the given path.
+     */
+    public void add(String path, Engagement engagement, long delta) {
+        counter(path).pending[engagement.ordinal()].add(delta);
+        increments.increment();
+        for (Listener listener : listeners) {
+            listener.added(path, engagement, delta);
+        }
+    }
+
+    /**
+     * Returns the increments of the counter which aren't flushed yet.
+     */
+    public long getPending(String path, Engagement engagement) {
+        Counter counter = counters.get(path);
+        return counter == null ? 0 : counter.pending[engagement.ordinal()].sum();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the stored value of the counter plus the increments which aren't flushed yet; 0 for paths which are
+     * neither counted nor stored, without keeping a counter for them.
+     */
+    public long get(String path, Engagement engagement) {
+        Counter counter = counters.get(path);
+        long[] stored = counter == null ? null : counter.stored;
+        if (stored == null) {
+            stored = load(path);
+            if (stored == null) {
+                return counter == null ? 0 : counter.pending[engagement.ordinal()].sum();
+            }
+            if (counter == null) {
+                counter = counter(path);
+            }
+            counter.stored = stored;
+        }
+        return stored[engagement.ordinal()] + counter.pending[engagement.ordinal()].sum();
+    }
+
+    /**
+     * Writes the pending increments to the moderator nodes. Increments of a batch which cannot be saved are kept for the next flush.
+     */
+    public synchronized void flush() {
+        final List<Map.Entry<String, Counter>> dirty = new ArrayList<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (entry.getValue().isDirty()) {
+                dirty.add(entry);
+            } else {
+                // re-read on next access, in case the node was edited meanwhile
+                entry.getValue().stored = null;
+            }
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        flushes.increment();
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                @Override
+                public void doExec() {
+                    try {
+                        write(MgnlContext.getJCRSession(WORKSPACE), dirty);
+                    } catch (RepositoryException e) {
+                        log.error("Cannot flush engagement counters of {} moderator nodes.", dirty.size(), e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Cannot flush engagement counters.", e);
+        }
+    }
+
+    /**
+     * Starts the periodic flush.
+     */
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ui-engagement-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic flush and writes the remaining increments.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (flusher == null) {
+                return;
+            }
+            flusher.shutdown();
+            flusher = null;
+        }
+        flush();
+    }
+
+    public long getIncrementCount() {
+        return increments.sum();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    /**
+     * Number of session saves, each covering up to {@link #getBatchSize()} nodes.
+     */
+    public long getSaveCount() {
+        return saves.sum();
+    }
+
+    public long getFailedSaveCount() {
+        return failedSaves.sum();
+    }
+
+    /**
+     * In milliseconds, only taken into account on next {@link #start()}.
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    private Counter counter(String path) {
+        return counters.computeIfAbsent(path, k -> new Counter());
+    }
+
+    private void write(Session session, List<Map.Entry<String, Counter>> dirty) throws RepositoryException {
+        List<Applied> batch = new ArrayList<>(batchSize);
+        for (Map.Entry<String, Counter> entry : dirty) {
+            final String path = entry.getKey();
+            final Counter counter = entry.getValue();
+            if (!session.nodeExists(path)) {
+                log.warn("Moderator node [{}] no longer exists, its engagement counters are dropped.", path);
+                counters.remove(path, counter);
+                continue;
+            }
+            Node node = session.getNode(path);
+            long[] deltas = new long[ENGAGEMENTS.length];
+            long[] values = new long[ENGAGEMENTS.length];
+            for (Engagement engagement : ENGAGEMENTS) {
+                int i = engagement.ordinal();
+                deltas[i] = counter.pending[i].sum();
+                values[i] = readCount(node, engagement.getPropertyName()) + deltas[i];
+                if (deltas[i] != 0 || !node.hasProperty(engagement.getPropertyName()) || node.getProperty(engagement.getPropertyName()).getType() != PropertyType.LONG) {
+                    node.setProperty(engagement.getPropertyName(), values[i]);
+                }
+            }
+            normalizeInteractions(node);
+            batch.add(new Applied(counter, deltas, values));
+            if (batch.size() >= batchSize) {
+                save(session, batch);
+            }
+        }
+        save(session, batch);
+    }
+
+    private void save(Session session, List<Applied> batch) throws RepositoryException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            session.save();
+            saves.increment();
+            for (Applied applied : batch) {
+                // written increments leave the pending counters before the stored values include them: readers may
+                // briefly see a lower value, never a count twice
+                for (int i = 0; i < applied.deltas.length; i++) {
+                    applied.counter.pending[i].add(-applied.deltas[i]);
+                }
+                applied.counter.stored = applied.values;
+            }
+        } catch (RepositoryException e) {
+            failedSaves.increment();
+            log.warn("Cannot save engagement counters of {} moderator nodes, they will be written on next flush.", batch.size(), e);
+            session.refresh(false);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Reads the stored counters with the system context, null if the node doesn't exist or cannot be read.
+     */
+    private long[] load(final String path) {
+        try {
+            return MgnlContext.doInSystemContext(new MgnlContext.Op<long[], RepositoryException>() {
+                @Override
+                public long[] exec() throws RepositoryException {
+                    Session session = MgnlContext.getJCRSession(WORKSPACE);
+                    if (!session.nodeExists(path)) {
+                        return null;
+                    }
+                    Node node = session.getNode(path);
+                    long[] values = new long[ENGAGEMENTS.length];
+                    for (Engagement engagement : ENGAGEMENTS) {
+                        values[engagement.ordinal()] = readCount(node, engagement.getPropertyName());
+                    }
+                    return values;
+                }
+            });
+        } catch (RepositoryException e) {
+            log.error("Cannot read engagement counters of moderator node [{}].", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a counter stored either as long or, for nodes not flushed yet, as string.
+     */
+    static long readCount(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return 0;
+        }
+        Property property = node.getProperty(propertyName);
+        if (property.getType() == PropertyType.LONG) {
+            return property.getLong();
+        }
+        return NumberUtils.toLong(StringUtils.trim(property.getString()), 0);
+    }
+
+    /**
+     * Reads an interaction rate stored either as double or, for nodes not flushed yet, as a string such as <code>85%</code>.
+     */
+    static double readInteractions(Node node) throws RepositoryException {
+        if (!node.hasProperty(INTERACTIONS_PROPERTY)) {
+            return 0;
+        }
+        Property property = node.getProperty(INTERACTIONS_PROPERTY);
+        if (property.getType() == PropertyType.DOUBLE || property.getType() == PropertyType.LONG) {
+            return property.getDouble();
+        }
+        return NumberUtils.toDouble(StringUtils.removeEnd(StringUtils.trim(property.getString()), "%"), 0);
+    }
+
+    private static void normalizeInteractions(Node node) throws RepositoryException {
+        if (node.hasProperty(INTERACTIONS_PROPERTY) && node.getProperty(INTERACTIONS_PROPERTY).getType() == PropertyType.STRING) {
+            node.setProperty(INTERACTIONS_PROPERTY, readInteractions(node));
+        }
+    }
+
+    /**
+     * Pending increments and cached stored values of one moderator node.
+     */
+    private static class Counter {
+        private final LongAdder[] pending = new LongAdder[ENGAGEMENTS.length];
+        private volatile long[] stored;
+
+        private Counter() {
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = new LongAdder();
+            }
+        }
+
+        private boolean isDirty() {
+            for (LongAdder adder : pending) {
+                if (adder.sum() != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Increments written to a node but not saved yet.
+     */
+    private static class Applied {
+        private final Counter counter;
+        private final long[] deltas;
+        private final long[] values;
+
+        private Applied(Counter counter, long[] deltas, long[] values) {
+            this.counter = counter;
+            this.deltas = deltas;
+            this.values = values;
+        }
+    }
+}
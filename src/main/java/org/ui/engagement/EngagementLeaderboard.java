@@ -0,0 +1,453 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.engagement;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ranked lists of the moderator nodes, e.g. most viewed of the last hour or highest interaction rate overall.
+ * <p>
+ * Stored counters are read once on start, then re-read for the nodes touched by observation events only; increments
+ * not flushed yet come from {@link EngagementCounters}, which also reports each of them to feed per minute and per
+ * hour buckets. Every {@link #getRefreshInterval()} milliseconds, if anything changed, a single task picks the top
+ * {@link #getSize()} nodes of each metric and window with a bounded heap and publishes them as immutable lists, so
+ * {@link #getTop(Metric, Window, int)} never computes anything.
+ */
+@Singleton
+public class EngagementLeaderboard implements EngagementCounters.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(EngagementLeaderboard.class);
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final Engagement[] ENGAGEMENTS = Engagement.values();
+
+    /**
+     * What moderators are ranked by.
+     */
+    public enum Metric {
+        VIEWS, LIKES, COMMENTS,
+        /**
+         * Stored <code>jcrInterations</code> rate overall, likes and comments per hundred views within a window.
+         */
+        INTERACTION
+    }
+
+    /**
+     * Period the counts are ranked over.
+     */
+    public enum Window {
+        TOTAL, LAST_HOUR, LAST_DAY
+    }
+
+    private int size = 10;
+    private long refreshInterval = 1000;
+
+    private final EngagementCounters engagementCounters;
+    private final ConcurrentMap<String, Moderator> moderators = new ConcurrentHashMap<>();
+    private volatile Map<Metric, Map<Window, List<LeaderboardEntry>>> rankings = emptyRankings();
+    private volatile boolean dirty;
+    private long lastRefresh;
+    private volatile WorkspaceEventListenerRegistration.Handle registration;
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    @Inject
+    public EngagementLeaderboard(EngagementCounters engagementCounters) {
+        this.engagementCounters = engagementCounters;
+    }
+
+    /**
+     * Returns at most <code>limit</code> (and at most {@link #getSize()}) moderators, best first.
+     */
+    public List<LeaderboardEntry> getTop(Metric metric, Window window, int limit) {
+        List<LeaderboardEntry> ranking = rankings.get(metric).get(window);
+        return limit >= ranking.size() ? ranking : ranking.subList(0, Math.max(0, limit));
+    }
+
+    @Override
+    public void added(String path, Engagement engagement, long delta) {
+        Moderator moderator = moderators.get(path);
+        if (moderator != null) {
+            moderator.recent[engagement.ordinal()].add(delta);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Reads all moderator nodes, then starts observing the workspace, listening to increments and refreshing the rankings.
+     */
+    public synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        reload();
+        try {
+            registration = WorkspaceEventListenerRegistration.observe(EngagementCounters.WORKSPACE, "/", this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the [{}] workspace, leaderboards will only follow increments of this instance.", EngagementCounters.WORKSPACE, e);
+        }
+        engagementCounters.addListener(this);
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ui-engagement-leaderboard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (refresher == null) {
+            return;
+        }
+        refresher.shutdownNow();
+        refresher = null;
+        engagementCounters.removeListener(this);
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", EngagementCounters.WORKSPACE, e);
+            }
+            registration = null;
+        }
+        moderators.clear();
+        rankings = emptyRankings();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    /**
+     * Maximum length of the rankings, only taken into account on next refresh.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * In milliseconds, only taken into account on next {@link #start()}.
+     */
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Moves the recent increments into the time buckets, then ranks again if anything changed or, as windows slide,
+     * if the last ranking is a minute old.
+     */
+    void refresh() {
+        try {
+            long now = System.currentTimeMillis();
+            if (!dirty && now - lastRefresh < MINUTE) {
+                return;
+            }
+            dirty = false;
+            lastRefresh = now;
+            for (Moderator moderator : moderators.values()) {
+                moderator.roll(now);
+            }
+            rankings = rank(now);
+            refreshes.increment();
+        } catch (RuntimeException e) {
+            // never let an exception cancel the scheduled refresh
+            log.error("Cannot refresh the moderator leaderboards.", e);
+        }
+    }
+
+    private Map<Metric, Map<Window, List<LeaderboardEntry>>> rank(long now) {
+        Map<Metric, Map<Window, List<LeaderboardEntry>>> ranked = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            Map<Window, List<LeaderboardEntry>> byWindow = new EnumMap<>(Window.class);
+            for (Window window : Window.values()) {
+                // min-heap of the best entries so far: the worst of them is the one to evict
+                PriorityQueue<LeaderboardEntry> heap = new PriorityQueue<>(size + 1, (a, b) -> Double.compare(a.getValue(), b.getValue()));
+                for (Map.Entry<String, Moderator> entry : moderators.entrySet()) {
+                    double value = value(entry.getKey(), entry.getValue(), metric, window, now);
+                    if (heap.size() < size) {
+                        heap.add(new LeaderboardEntry(entry.getKey(), value));
+                    } else if (size > 0 && value > heap.peek().getValue()) {
+                        heap.poll();
+                        heap.add(new LeaderboardEntry(entry.getKey(), value));
+                    }
+                }
+                List<LeaderboardEntry> ranking = new ArrayList<>(heap);
+                ranking.sort((a, b) -> a.getValue() != b.getValue() ? Double.compare(b.getValue(), a.getValue()) : a.getPath().compareTo(b.getPath()));
+                byWindow.put(window, Collections.unmodifiableList(ranking));
+            }
+            ranked.put(metric, byWindow);
+        }
+        return ranked;
+    }
+
+    private double value(String path, Moderator moderator, Metric metric, Window window, long now) {
+        if (window == Window.TOTAL) {
+            if (metric == Metric.INTERACTION) {
+                return moderator.interactions;
+            }
+            Engagement engagement = Engagement.valueOf(metric.name());
+            return moderator.stored[engagement.ordinal()] + engagementCounters.getPending(path, engagement);
+        }
+        if (metric == Metric.INTERACTION) {
+            long views = moderator.sum(Engagement.VIEWS, window, now);
+            long interactions = moderator.sum(Engagement.LIKES, window, now) + moderator.sum(Engagement.COMMENTS, window, now);
+            return views == 0 ? 0 : 100d * interactions / views;
+        }
+        return moderator.sum(Engagement.valueOf(metric.name()), window, now);
+    }
+
+    private void onEvent(EventIterator events) {
+        List<String> touched = new ArrayList<>();
+        boolean structural = false;
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            switch (event.getType()) {
+            case Event.NODE_REMOVED:
+            case Event.NODE_MOVED:
+                structural = true;
+                break;
+            default:
+                // for property events the identifier is the one of the parent node
+                try {
+                    touched.add(event.getIdentifier());
+                } catch (RepositoryException e) {
+                    structural = true;
+                }
+                break;
+            }
+        }
+        if (structural) {
+            reload();
+        } else {
+            update(touched);
+        }
+    }
+
+    /**
+     * Reads the stored values of all moderator nodes.
+     */
+    private void reload() {
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                @Override
+                public void doExec() {
+                    try {
+                        List<String> paths = new ArrayList<>();
+                        NodeIterator nodes = QueryUtil.search(EngagementCounters.WORKSPACE, "SELECT * FROM [" + EngagementCounters.WORKSPACE + "]");
+                        while (nodes.hasNext()) {
+                            Node node = nodes.nextNode();
+                            read(node);
+                            paths.add(node.getPath());
+                        }
+                        moderators.keySet().retainAll(paths);
+                    } catch (RepositoryException e) {
+                        log.error("Cannot read the moderator nodes.", e);
+                    }
+                }
+            });
+            reloads.increment();
+            dirty = true;
+        } catch (RuntimeException e) {
+            log.error("Cannot read the moderator nodes.", e);
+        }
+    }
+
+    /**
+     * Reads the stored values of the given nodes again.
+     */
+    private void update(final List<String> identifiers) {
+        MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+            @Override
+            public void doExec() {
+                try {
+                    Session session = MgnlContext.getJCRSession(EngagementCounters.WORKSPACE);
+                    for (String identifier : identifiers) {
+                        try {
+                            Node node = session.getNodeByIdentifier(identifier);
+                            if (node.isNodeType(EngagementCounters.WORKSPACE)) {
+                                read(node);
+                            }
+                        } catch (ItemNotFoundException e) {
+                            // removed meanwhile, the removal event will follow
+                        }
+                    }
+                } catch (RepositoryException e) {
+                    log.error("Cannot read changed moderator nodes.", e);
+                }
+            }
+        });
+        dirty = true;
+    }
+
+    private void read(Node node) throws RepositoryException {
+        long[] stored = new long[ENGAGEMENTS.length];
+        for (Engagement engagement : ENGAGEMENTS) {
+            stored[engagement.ordinal()] = EngagementCounters.readCount(node, engagement.getPropertyName());
+        }
+        Moderator moderator = moderators.computeIfAbsent(node.getPath(), k -> new Moderator());
+        moderator.stored = stored;
+        moderator.interactions = EngagementCounters.readInteractions(node);
+    }
+
+    private static Map<Metric, Map<Window, List<LeaderboardEntry>>> emptyRankings() {
+        Map<Metric, Map<Window, List<LeaderboardEntry>>> empty = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            Map<Window, List<LeaderboardEntry>> byWindow = new EnumMap<>(Window.class);
+            for (Window window : Window.values()) {
+                byWindow.put(window, Collections.<LeaderboardEntry>emptyList());
+            }
+            empty.put(metric, byWindow);
+        }
+        return empty;
+    }
+
+    /**
+     * Stored values of one moderator node, plus its increments by minute over the last hour and by hour over the last day.
+     * Buckets are only touched by the refreshing thread.
+     */
+    private static class Moderator {
+        private volatile long[] stored = new long[ENGAGEMENTS.length];
+        private volatile double interactions;
+        private final LongAdder[] recent = new LongAdder[ENGAGEMENTS.length];
+        private final Buckets[] minutes = new Buckets[ENGAGEMENTS.length];
+        private final Buckets[] hours = new Buckets[ENGAGEMENTS.length];
+
+        private Moderator() {
+            for (int i = 0; i < ENGAGEMENTS.length; i++) {
+                recent[i] = new LongAdder();
+                minutes[i] = new Buckets(60, MINUTE);
+                hours[i] = new Buckets(24, HOUR);
+            }
+        }
+
+        private void roll(long now) {
+            for (int i = 0; i < ENGAGEMENTS.length; i++) {
+                long delta = recent[i].sum();
+                if (delta != 0) {
+                    recent[i].add(-delta);
+                    minutes[i].add(now, delta);
+                    hours[i].add(now, delta);
+                }
+            }
+        }
+
+        private long sum(Engagement engagement, Window window, long now) {
+            return (window == Window.LAST_HOUR ? minutes : hours)[engagement.ordinal()].sum(now);
+        }
+    }
+
+    /**
+     * Ring of counts per period, each slot remembering the period it counts so that stale slots are skipped and reused.
+     */
+    private static class Buckets {
+        private final long period;
+        private final long[] counts;
+        private final long[] epochs;
+
+        private Buckets(int slots, long period) {
+            this.period = period;
+            this.counts = new long[slots];
+            this.epochs = new long[slots];
+        }
+
+        private void add(long now, long delta) {
+            long epoch = now / period;
+            int slot = (int) (epoch % counts.length);
+            if (epochs[slot] != epoch) {
+                epochs[slot] = epoch;
+                counts[slot] = 0;
+            }
+            counts[slot] += delta;
+        }
+
+        private long sum(long now) {
+            long epoch = now / period;
+            long sum = 0;
+            for (int slot = 0; slot < counts.length; slot++) {
+                if (epoch - epochs[slot] < counts.length) {
+                    sum += counts[slot];
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.feed;
+
+import java.util.Comparator;
+
+/**
+ * Immutable page of a tag feed. Entries are ordered newest first, ties broken by identifier.
+ */
+public final class FeedEntry {
+
+    static final Comparator<FeedEntry> NEWEST_FIRST = Comparator.comparingLong(FeedEntry::getLastModified).reversed()
+            .thenComparing(FeedEntry::getIdentifier);
+
+    private final String identifier;
+    private final String path;
+    private final String title;
+    private final long lastModified;
+
+    FeedEntry(String identifier, String path, String title, long lastModified) {
+        this.identifier = identifier;
+        this.path = path;
+        this.title = title;
+        this.lastModified = lastModified;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Last modification of the page, in milliseconds.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Position of the entry in a feed, to continue a feed after it.
+     */
+    String getCursor() {
+        return Long.toString(lastModified, 36) + "-" + identifier;
+    }
+}
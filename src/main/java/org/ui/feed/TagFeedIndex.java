@@ -0,0 +1,454 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.feed;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ui.field.AssignmentSnapshot;
+
+/**
+ * Inverted index from tag identifier to the pages assigned that tag, newest first, feeding personal homepages.
+ * <p>
+ * Each tag holds an immutable array of {@link FeedEntry}s, replaced on update, so feeds are read without locking. A
+ * feed over several tags is a k-way merge of their arrays starting at the cursor of the previous page: it costs the
+ * size of the page times the logarithm of the number of tags, whatever the number of pages. The index is built once at
+ * startup, then updated page by page from dialog saves and from the events of the <code>website</code> workspace: a
+ * moved or removed subtree only updates the pages indexed below it, and reordering pages changes nothing. Rebuilds
+ * fill a new index aside and swap it in, so feeds keep being served meanwhile.
+ * <p>
+ * The index is read with the system context; feeds only list the pages the session they are rendered with can read.
+ */
+@Singleton
+public class TagFeedIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TagFeedIndex.class);
+
+    public static final String TAGS = "tags";
+
+    private static final String QUERY = "SELECT * FROM [" + NodeTypes.ContentNode.NAME + "] WHERE NAME() = '" + TAGS + "'";
+    private static final FeedEntry[] EMPTY = new FeedEntry[0];
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+    private static final String SOURCE_PATH_INFO = "srcAbsPath";
+
+    // replaced as a whole by rebuilds, so that feeds keep reading the previous index meanwhile
+    private volatile ConcurrentMap<String, FeedEntry[]> postings = new ConcurrentHashMap<>();
+    private Map<String, Indexed> pages = new HashMap<>();
+    private volatile boolean ready;
+    private volatile WorkspaceEventListenerRegistration.Handle registration;
+
+    /**
+     * A page as indexed, to remove its postings when it changes.
+     */
+    private static final class Indexed {
+        private final FeedEntry entry;
+        private final Set<String> tags;
+
+        private Indexed(FeedEntry entry, Set<String> tags) {
+            this.entry = entry;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Position in the postings of one tag during a merge.
+     */
+    private static final class Cursor {
+        private final FeedEntry[] entries;
+        private int position;
+
+        private Cursor(FeedEntry[] entries, int position) {
+            this.entries = entries;
+            this.position = position;
+        }
+
+        private FeedEntry current() {
+            return entries[position];
+        }
+    }
+
+    /**
+     * Returns up to <code>limit</code> pages assigned any of the given tags, newest first, following the given cursor
+     * (<code>null</code> for the first page) and leaving out the given page, e.g. the homepage itself, and the pages
+     * the given session cannot read.
+     */
+    public FeedPage getFeed(Collection<String> tags, String cursor, int limit, String excludedIdentifier, Session session) {
+        if (limit <= 0) {
+            return new FeedPage(Collections.emptyList(), null);
+        }
+        FeedEntry after = parseCursor(cursor);
+        Map<String, FeedEntry[]> postings = this.postings;
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, tags.size()), (a, b) -> FeedEntry.NEWEST_FIRST.compare(a.current(), b.current()));
+        for (String tag : new LinkedHashSet<>(tags)) {
+            FeedEntry[] entries = postings.getOrDefault(tag, EMPTY);
+            int start = after == null ? 0 : firstAfter(entries, after);
+            if (start < entries.length) {
+                heap.add(new Cursor(entries, start));
+            }
+        }
+        List<FeedEntry> page = new ArrayList<>(limit + 1);
+        FeedEntry last = null;
+        while (!heap.isEmpty() && page.size() <= limit) {
+            Cursor head = heap.poll();
+            FeedEntry entry = head.current();
+            // a page of several subscribed tags comes out of each of their postings in a row
+            if ((last == null || !last.getIdentifier().equals(entry.getIdentifier())) && !entry.getIdentifier().equals(excludedIdentifier)
+                    && isReadable(session, entry)) {
+                page.add(entry);
+            }
+            last = entry;
+            if (++head.position < head.entries.length) {
+                heap.add(head);
+            }
+        }
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            return new FeedPage(new ArrayList<>(page), page.get(limit - 1).getCursor());
+        }
+        return new FeedPage(page, null);
+    }
+
+    private static boolean isReadable(Session session, FeedEntry entry) {
+        try {
+            return session.nodeExists(entry.getPath());
+        } catch (RepositoryException e) {
+            log.debug("Cannot check access to [{}], leaving it out of the feed.", entry.getPath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of pages assigned the given tag.
+     */
+    public int getCount(String tag) {
+        return postings.getOrDefault(tag, EMPTY).length;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indexes the given page again, e.g. right after it was saved.
+     */
+    public synchronized void update(Node page) throws RepositoryException {
+        if (!ready || !page.isNodeType(NodeTypes.Page.NAME)) {
+            return;
+        }
+        index(page);
+    }
+
+    /**
+     * Removes the page of the given identifier from the index.
+     */
+    public synchronized void remove(String identifier) {
+        Indexed indexed = pages.remove(identifier);
+        if (indexed != null) {
+            for (String tag : indexed.tags) {
+                removePosting(tag, indexed.entry);
+            }
+        }
+    }
+
+    /**
+     * Reads the tags of all pages again.
+     */
+    public synchronized void rebuild() {
+        ready = false;
+        final Map<String, Indexed> pages = new HashMap<>();
+        final ConcurrentMap<String, FeedEntry[]> postings = new ConcurrentHashMap<>();
+        MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+            @Override
+            public void doExec() {
+                try {
+                    Map<String, List<FeedEntry>> lists = new HashMap<>();
+                    NodeIterator tagNodes = QueryUtil.search(RepositoryConstants.WEBSITE, QUERY);
+                    while (tagNodes.hasNext()) {
+                        Node page = tagNodes.nextNode().getParent();
+                        if (page.isNodeType(NodeTypes.Page.NAME)) {
+                            Indexed indexed = read(page);
+                            pages.put(indexed.entry.getIdentifier(), indexed);
+                            for (String tag : indexed.tags) {
+                                lists.computeIfAbsent(tag, k -> new ArrayList<>()).add(indexed.entry);
+                            }
+                        }
+                    }
+                    for (Map.Entry<String, List<FeedEntry>> list : lists.entrySet()) {
+                        FeedEntry[] entries = list.getValue().toArray(EMPTY);
+                        Arrays.sort(entries, FeedEntry.NEWEST_FIRST);
+                        postings.put(list.getKey(), entries);
+                    }
+                    TagFeedIndex.this.pages = pages;
+                    TagFeedIndex.this.postings = postings;
+                    ready = true;
+                } catch (RepositoryException e) {
+                    log.warn("Cannot index the tags of the [{}] workspace, the tag feeds keep their previous pages.", RepositoryConstants.WEBSITE, e);
+                }
+            }
+        });
+        log.info("Indexed {} tagged pages under {} tags.", pages.size(), postings.size());
+    }
+
+    public synchronized void start() {
+        if (registration != null) {
+            return;
+        }
+        rebuild();
+        try {
+            registration = WorkspaceEventListenerRegistration.observe(RepositoryConstants.WEBSITE, "/", this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the [{}] workspace, the tag feeds will only follow dialog saves.", RepositoryConstants.WEBSITE, e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", RepositoryConstants.WEBSITE, e);
+            }
+            registration = null;
+        }
+        ready = false;
+        pages = new HashMap<>();
+        postings = new ConcurrentHashMap<>();
+    }
+
+    private void onEvent(EventIterator events) {
+        final List<Event> batch = new ArrayList<>();
+        while (events.hasNext()) {
+            batch.add(events.nextEvent());
+        }
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                @Override
+                public void doExec() {
+                    try {
+                        apply(MgnlContext.getJCRSession(RepositoryConstants.WEBSITE), batch);
+                    } catch (RepositoryException e) {
+                        log.warn("Cannot apply changes of the [{}] workspace to the tag feeds, rebuilding them.", RepositoryConstants.WEBSITE, e);
+                        rebuild();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Cannot update the tag feeds.", e);
+        }
+    }
+
+    private synchronized void apply(Session session, List<Event> events) throws RepositoryException {
+        if (!ready) {
+            return;
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        // a move tells the removal of its source before the addition of its destination: the pages indexed below a
+        // removed or moved node are looked up again by identifier once the whole batch is read
+        Set<String> displaced = new LinkedHashSet<>();
+        for (Event event : events) {
+            switch (event.getType()) {
+            case Event.NODE_MOVED:
+                // reorders tell child names instead, paths stay the same
+                Object source = event.getInfo().get(SOURCE_PATH_INFO);
+                if (source != null) {
+                    displaced.addAll(below(source.toString()));
+                }
+                break;
+            case Event.NODE_REMOVED:
+                // only the root of a removed subtree is told about
+                displaced.addAll(below(event.getPath()));
+                changed.add(StringUtils.substringBeforeLast(event.getPath(), "/"));
+                break;
+            case Event.NODE_ADDED:
+                changed.add(event.getPath());
+                break;
+            default:
+                changed.add(StringUtils.substringBeforeLast(event.getPath(), "/"));
+            }
+        }
+        for (String identifier : displaced) {
+            reindex(session, identifier);
+        }
+        for (String path : changed) {
+            // changes of the tags node are changes of its page
+            if (path.endsWith("/" + TAGS)) {
+                path = StringUtils.substringBeforeLast(path, "/");
+            }
+            if (StringUtils.isNotEmpty(path) && session.nodeExists(path)) {
+                Node node = session.getNode(path);
+                if (node.isNodeType(NodeTypes.Page.NAME)) {
+                    index(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the identifiers of the indexed pages at or below the given path.
+     */
+    private List<String> below(String path) {
+        String prefix = path + "/";
+        List<String> identifiers = new ArrayList<>();
+        for (Map.Entry<String, Indexed> page : pages.entrySet()) {
+            String pagePath = page.getValue().entry.getPath();
+            if (pagePath.equals(path) || pagePath.startsWith(prefix)) {
+                identifiers.add(page.getKey());
+            }
+        }
+        return identifiers;
+    }
+
+    private void reindex(Session session, String identifier) throws RepositoryException {
+        Node node;
+        try {
+            node = session.getNodeByIdentifier(identifier);
+        } catch (ItemNotFoundException e) {
+            remove(identifier);
+            return;
+        }
+        if (node.isNodeType(NodeTypes.Page.NAME)) {
+            index(node);
+        } else {
+            remove(identifier);
+        }
+    }
+
+    private void index(Node page) throws RepositoryException {
+        remove(page.getIdentifier());
+        Indexed indexed = read(page);
+        if (indexed.tags.isEmpty()) {
+            return;
+        }
+        pages.put(indexed.entry.getIdentifier(), indexed);
+        for (String tag : indexed.tags) {
+            addPosting(tag, indexed.entry);
+        }
+    }
+
+    private static Indexed read(Node page) throws RepositoryException {
+        Calendar lastModified = NodeTypes.LastModified.getLastModified(page);
+        FeedEntry entry = new FeedEntry(page.getIdentifier(), page.getPath(), PropertyUtil.getString(page, "title", page.getName()),
+                lastModified == null ? 0 : lastModified.getTimeInMillis());
+        return new Indexed(entry, new LinkedHashSet<>(AssignmentSnapshot.read(page, TAGS).getIdentifiers()));
+    }
+
+    private void addPosting(String tag, FeedEntry entry) {
+        FeedEntry[] entries = postings.getOrDefault(tag, EMPTY);
+        int index = Arrays.binarySearch(entries, entry, FeedEntry.NEWEST_FIRST);
+        int insertion = index >= 0 ? index : -index - 1;
+        FeedEntry[] updated = new FeedEntry[entries.length + 1];
+        System.arraycopy(entries, 0, updated, 0, insertion);
+        updated[insertion] = entry;
+        System.arraycopy(entries, insertion, updated, insertion + 1, entries.length - insertion);
+        postings.put(tag, updated);
+    }
+
+    private void removePosting(String tag, FeedEntry entry) {
+        FeedEntry[] entries = postings.getOrDefault(tag, EMPTY);
+        int index = Arrays.binarySearch(entries, entry, FeedEntry.NEWEST_FIRST);
+        if (index < 0) {
+            return;
+        }
+        if (entries.length == 1) {
+            postings.remove(tag);
+            return;
+        }
+        FeedEntry[] updated = new FeedEntry[entries.length - 1];
+        System.arraycopy(entries, 0, updated, 0, index);
+        System.arraycopy(entries, index + 1, updated, index, entries.length - index - 1);
+        postings.put(tag, updated);
+    }
+
+    /**
+     * Returns the index of the first entry coming after the given one.
+     */
+    private static int firstAfter(FeedEntry[] entries, FeedEntry after) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (FeedEntry.NEWEST_FIRST.compare(entries[mid], after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static FeedEntry parseCursor(String cursor) {
+        if (StringUtils.isBlank(cursor) || cursor.indexOf('-') < 1) {
+            return null;
+        }
+        try {
+            return new FeedEntry(StringUtils.substringAfter(cursor, "-"), null, null, Long.parseLong(StringUtils.substringBefore(cursor, "-"), 36));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
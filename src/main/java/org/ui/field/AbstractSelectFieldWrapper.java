@@ -0,0 +1,111 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+import com.vaadin.v7.data.Validator;
+import com.vaadin.v7.ui.AbstractSelect;
+import com.vaadin.v7.ui.CustomField;
+
+/**
+ * Wraps a selection field, whose items only hold part of the available options, with the controls needed to load
+ * other options into it. Value and validation are delegated to the wrapped field, which stays bound to the edited item.
+ */
+public abstract class AbstractSelectFieldWrapper extends CustomField<Object> {
+
+    private final AbstractSelect select;
+
+    protected AbstractSelectFieldWrapper(AbstractSelect select) {
+        this.select = select;
+        setCaption(select.getCaption());
+        select.setCaption(null);
+    }
+
+    /**
+     * Returns the controls to display along the wrapped field.
+     */
+    protected abstract Component createControls();
+
+    /**
+     * Whether the controls are displayed above the wrapped field rather than below.
+     */
+    protected abstract boolean isControlsFirst();
+
+    @Override
+    protected Component initContent() {
+        VerticalLayout layout = new VerticalLayout();
+        layout.setMargin(false);
+        if (isControlsFirst()) {
+            layout.addComponents(createControls(), select);
+        } else {
+            layout.addComponents(select, createControls());
+        }
+        return layout;
+    }
+
+    protected AbstractSelect getSelect() {
+        return select;
+    }
+
+    @Override
+    public Class<?> getType() {
+        return select.getType();
+    }
+
+    @Override
+    public Object getValue() {
+        return select.getValue();
+    }
+
+    @Override
+    public void setValue(Object newFieldValue) {
+        select.setValue(newFieldValue);
+    }
+
+    @Override
+    public boolean isValid() {
+        return select.isValid();
+    }
+
+    @Override
+    public void validate() throws Validator.InvalidValueException {
+        select.validate();
+    }
+
+    @Override
+    public boolean isRequired() {
+        return select.isRequired();
+    }
+}
@@ -0,0 +1,520 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.iterator.FilteringPropertyIterator;
+import info.magnolia.jcr.predicate.JCRMgnlPropertyHidingPredicate;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.v7.data.Item;
+
+/**
+ * Reverse index of the management field assignments: from an assigned user, group or tag identifier to the nodes of
+ * the <code>website</code> workspace referencing it.
+ * <p>
+ * The index is built once with the system context, then kept up to date by the {@link IndexingManagementFieldTransformer}s,
+ * whose written identifiers are committed when the dialog is saved, and by the observation of the workspace for any
+ * other change. Impact analysis ({@link #getReferences(String)}) and cleanup ({@link #removeReferences(String)}) cost the
+ * number of references, not the size of the workspace. Removing or moving a subtree updates every node indexed below
+ * it, found by path in the {@link AssignmentTable}.
+ * <p>
+ * When {@link #isCleanupOnRemoval()} is set, the references to nodes removed from the
+ * {@link #getTargetWorkspaces() target workspaces} are deleted from the assigning nodes as well. It is off by default:
+ * it writes to pages on behalf of whoever removed a user, group or tag.
+ */
+@Singleton
+public class AssignmentIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentIndex.class);
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+    private static final String SOURCE_PATH_INFO = "srcAbsPath";
+
+    private List<String> assignmentNodeNames = new ArrayList<>(Arrays.asList("users", "groups", "tags"));
+    private List<String> targetWorkspaces = new ArrayList<>(Arrays.asList("users", "usergroups", "tags"));
+    private boolean cleanupOnRemoval = false;
+
+    private final AssignmentTable table = new AssignmentTable();
+    private final Map<Item, Map<String, Set<String>>> staged = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<String, WorkspaceEventListenerRegistration.Handle> registrations = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder cleanups = new LongAdder();
+
+    /**
+     * Returns the nodes assigned the given identifier, e.g. to know which pages deleting a tag affects.
+     */
+    public List<AssignmentReference> getReferences(String identifier) {
+        return table.getReferences(identifier);
+    }
+
+    public int getReferenceCount(String identifier) {
+        return table.getReferenceCount(identifier);
+    }
+
+    /**
+     * Records the identifiers written by a management field into the given dialog item, until {@link #commit(Item, Node)}.
+     */
+    public void stage(Item item, String assignmentNodeName, Collection<?> identifiers) {
+        Set<String> values = new LinkedHashSet<>();
+        for (Object identifier : identifiers) {
+            values.add(String.valueOf(identifier));
+        }
+        synchronized (staged) {
+            staged.computeIfAbsent(item, k -> new LinkedHashMap<>()).put(assignmentNodeName, values);
+        }
+    }
+
+    /**
+     * Applies the identifiers staged for the given item, now saved as the given node.
+     */
+    public void commit(Item item, Node owner) throws RepositoryException {
+        Map<String, Set<String>> written = staged.remove(item);
+        if (written == null || !ready) {
+            return;
+        }
+        String identifier = owner.getIdentifier();
+        String path = owner.getPath();
+        synchronized (this) {
+            for (Map.Entry<String, Set<String>> assignment : written.entrySet()) {
+                apply(identifier, path, assignment.getKey(), assignment.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads the assignments of the given node again.
+     */
+    public void update(Node owner) throws RepositoryException {
+        if (!ready) {
+            return;
+        }
+        String identifier = owner.getIdentifier();
+        String path = owner.getPath();
+        Map<String, Set<String>> read = new HashMap<>();
+        for (String name : assignmentNodeNames) {
+            read.put(name, AssignmentSnapshot.read(owner, name).getIdentifiers());
+        }
+        synchronized (this) {
+            for (Map.Entry<String, Set<String>> assignment : read.entrySet()) {
+                apply(identifier, path, assignment.getKey(), assignment.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the given node and its assignments from the index.
+     */
+    public synchronized void remove(String ownerIdentifier) {
+        if (table.remove(ownerIdentifier)) {
+            updates.increment();
+        }
+    }
+
+    /**
+     * Removes the nodes at or below the given path and their assignments from the index.
+     */
+    public synchronized void removeBelow(String path) {
+        if (!table.removeBelow(path).isEmpty()) {
+            updates.increment();
+        }
+    }
+
+    /**
+     * Removes the given identifier from all the assignments referencing it, returns the number of references removed.
+     */
+    public int removeReferences(final String identifier) throws RepositoryException {
+        final List<AssignmentReference> referencing = getReferences(identifier);
+        if (referencing.isEmpty()) {
+            return 0;
+        }
+        int removed = MgnlContext.doInSystemContext(new MgnlContext.Op<Integer, RepositoryException>() {
+            @Override
+            public Integer exec() throws RepositoryException {
+                Session session = MgnlContext.getJCRSession(RepositoryConstants.WEBSITE);
+                int count = 0;
+                for (AssignmentReference reference : referencing) {
+                    try {
+                        Node owner = session.getNodeByIdentifier(reference.getOwnerIdentifier());
+                        if (owner.hasNode(reference.getAssignmentNodeName())) {
+                            count += removeValue(owner.getNode(reference.getAssignmentNodeName()), identifier);
+                        }
+                    } catch (ItemNotFoundException e) {
+                        log.debug("Node [{}] referencing [{}] doesn't exist anymore.", reference.getOwnerIdentifier(), identifier);
+                    }
+                }
+                session.save();
+                return count;
+            }
+        });
+        synchronized (this) {
+            table.removeTarget(identifier);
+            updates.increment();
+        }
+        cleanups.increment();
+        log.info("Removed {} references to [{}] from {} nodes.", removed, identifier, referencing.size());
+        return removed;
+    }
+
+    /**
+     * Reads all the assignments of the workspace again.
+     */
+    public synchronized void rebuild() {
+        ready = false;
+        table.clear();
+        final StringBuilder statement = new StringBuilder("SELECT * FROM [").append(NodeTypes.ContentNode.NAME).append("] WHERE ");
+        for (int i = 0; i < assignmentNodeNames.size(); i++) {
+            statement.append(i == 0 ? "" : " OR ").append("NAME() = '").append(assignmentNodeNames.get(i)).append("'");
+        }
+        MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+            @Override
+            public void doExec() {
+                try {
+                    NodeIterator nodes = QueryUtil.search(RepositoryConstants.WEBSITE, statement.toString());
+                    while (nodes.hasNext()) {
+                        Node assignmentNode = nodes.nextNode();
+                        Node owner = assignmentNode.getParent();
+                        apply(owner.getIdentifier(), owner.getPath(), assignmentNode.getName(), read(assignmentNode));
+                    }
+                    ready = true;
+                } catch (RepositoryException e) {
+                    log.warn("Cannot index the assignments of the [{}] workspace.", RepositoryConstants.WEBSITE, e);
+                }
+            }
+        });
+        log.info("Indexed the assignments of {} nodes to {} identifiers.", table.getOwnerCount(), table.getTargetCount());
+    }
+
+    public synchronized void start() {
+        if (!registrations.isEmpty()) {
+            return;
+        }
+        rebuild();
+        observe(RepositoryConstants.WEBSITE, this::onOwnerEvents);
+        if (cleanupOnRemoval) {
+            for (final String workspace : targetWorkspaces) {
+                observe(workspace, events -> onTargetEvents(workspace, events));
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        for (Map.Entry<String, WorkspaceEventListenerRegistration.Handle> registration : registrations.entrySet()) {
+            try {
+                registration.getValue().unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", registration.getKey(), e);
+            }
+        }
+        registrations.clear();
+        ready = false;
+        table.clear();
+        staged.clear();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Number of nodes holding assignments.
+     */
+    public int getOwnerCount() {
+        return table.getOwnerCount();
+    }
+
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    public long getCleanupCount() {
+        return cleanups.sum();
+    }
+
+    /**
+     * Names of the child nodes the management fields store their assignments in.
+     */
+    public List<String> getAssignmentNodeNames() {
+        return assignmentNodeNames;
+    }
+
+    public void setAssignmentNodeNames(List<String> assignmentNodeNames) {
+        this.assignmentNodeNames = assignmentNodeNames;
+    }
+
+    /**
+     * Workspaces of the assigned nodes, observed to clean up the references to removed nodes.
+     */
+    public List<String> getTargetWorkspaces() {
+        return targetWorkspaces;
+    }
+
+    public void setTargetWorkspaces(List<String> targetWorkspaces) {
+        this.targetWorkspaces = targetWorkspaces;
+    }
+
+    /**
+     * Whether to delete the references to removed users, groups and tags from the assigning nodes; off by default.
+     * Only taken into account on next {@link #start()}.
+     */
+    public boolean isCleanupOnRemoval() {
+        return cleanupOnRemoval;
+    }
+
+    public void setCleanupOnRemoval(boolean cleanupOnRemoval) {
+        this.cleanupOnRemoval = cleanupOnRemoval;
+    }
+
+    private void observe(String workspace, EventListener listener) {
+        try {
+            registrations.put(workspace, WorkspaceEventListenerRegistration.observe(workspace, "/", listener)
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register());
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the [{}] workspace, the assignment index won't follow its changes.", workspace, e);
+        }
+    }
+
+    private void onOwnerEvents(EventIterator events) {
+        final List<Event> batch = collect(events);
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                @Override
+                public void doExec() {
+                    try {
+                        applyOwnerEvents(MgnlContext.getJCRSession(RepositoryConstants.WEBSITE), batch);
+                    } catch (RepositoryException e) {
+                        log.warn("Cannot apply changes of the [{}] workspace to the assignment index, rebuilding it.", RepositoryConstants.WEBSITE, e);
+                        rebuild();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Cannot update the assignment index.", e);
+        }
+    }
+
+    private void applyOwnerEvents(Session session, List<Event> events) throws RepositoryException {
+        if (!ready) {
+            return;
+        }
+        Set<String> owners = new LinkedHashSet<>();
+        // a move tells the removal of its source, the addition of its destination, then the move itself
+        Map<String, String> removals = new LinkedHashMap<>();
+        Map<String, String> arrivals = new HashMap<>();
+        for (Event event : events) {
+            String path = event.getPath();
+            switch (event.getType()) {
+            case Event.NODE_REMOVED:
+                if (isAssignmentNode(path)) {
+                    owners.add(StringUtils.substringBeforeLast(path, "/"));
+                } else {
+                    // only the root of a removed subtree is told about
+                    removals.put(path, event.getIdentifier());
+                }
+                break;
+            case Event.NODE_MOVED:
+                // reorders tell child names instead, paths stay the same
+                Object source = event.getInfo().get(SOURCE_PATH_INFO);
+                if (source != null) {
+                    removals.putIfAbsent(source.toString(), event.getIdentifier());
+                    arrivals.put(event.getIdentifier(), path);
+                }
+                break;
+            case Event.NODE_ADDED:
+                if (isAssignmentNode(path)) {
+                    owners.add(StringUtils.substringBeforeLast(path, "/"));
+                } else {
+                    arrivals.put(event.getIdentifier(), path);
+                }
+                break;
+            case Event.PROPERTY_ADDED:
+            case Event.PROPERTY_CHANGED:
+            case Event.PROPERTY_REMOVED:
+                String parent = StringUtils.substringBeforeLast(path, "/");
+                if (isAssignmentNode(parent)) {
+                    owners.add(StringUtils.substringBeforeLast(parent, "/"));
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        if (!removals.isEmpty()) {
+            synchronized (this) {
+                table.reconcile(removals, arrivals);
+                // e.g. moved, then removed in the same batch
+                for (String identifier : removals.values()) {
+                    String destination = arrivals.get(identifier);
+                    if (destination != null && !session.nodeExists(destination)) {
+                        table.removeBelow(destination);
+                    }
+                }
+                updates.increment();
+            }
+        }
+        for (String path : owners) {
+            if (StringUtils.isNotEmpty(path) && session.nodeExists(path)) {
+                update(session.getNode(path));
+            }
+        }
+    }
+
+    private void onTargetEvents(final String workspace, EventIterator events) {
+        final Set<String> removed = new LinkedHashSet<>();
+        for (Event event : collect(events)) {
+            try {
+                if (event.getType() == Event.NODE_REMOVED && table.isReferenced(event.getIdentifier())) {
+                    removed.add(event.getIdentifier());
+                }
+            } catch (RepositoryException e) {
+                log.warn("Cannot read a removal event of the [{}] workspace.", workspace, e);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        try {
+            MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+                @Override
+                public void doExec() {
+                    for (String identifier : removed) {
+                        try {
+                            // e.g. imports replacing a node remove it, then add it again with the same identifier
+                            if (!nodeExists(MgnlContext.getJCRSession(workspace), identifier)) {
+                                removeReferences(identifier);
+                            }
+                        } catch (RepositoryException e) {
+                            log.warn("Cannot remove the references to [{}] removed from the [{}] workspace.", identifier, workspace, e);
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Cannot clean up the references to removed nodes.", e);
+        }
+    }
+
+    /**
+     * Replaces the identifiers the given node is assigned through the given assignment node; callers hold the lock.
+     */
+    private void apply(String ownerIdentifier, String ownerPath, String assignmentNodeName, Set<String> identifiers) {
+        table.apply(ownerIdentifier, ownerPath, assignmentNodeName, identifiers);
+        updates.increment();
+    }
+
+    private boolean isAssignmentNode(String path) {
+        return assignmentNodeNames.contains(StringUtils.substringAfterLast(path, "/"));
+    }
+
+    private static Set<String> read(Node assignmentNode) throws RepositoryException {
+        Set<String> identifiers = new HashSet<>();
+        for (PropertyIterator iter = new FilteringPropertyIterator(assignmentNode.getProperties(), new JCRMgnlPropertyHidingPredicate()); iter.hasNext(); ) {
+            identifiers.add(iter.nextProperty().getString());
+        }
+        return identifiers;
+    }
+
+    /**
+     * Removes the properties of the given assignment node holding the given identifier.
+     */
+    private static int removeValue(Node assignmentNode, String identifier) throws RepositoryException {
+        List<Property> matching = new ArrayList<>();
+        for (PropertyIterator iter = new FilteringPropertyIterator(assignmentNode.getProperties(), new JCRMgnlPropertyHidingPredicate()); iter.hasNext(); ) {
+            Property property = iter.nextProperty();
+            if (identifier.equals(property.getString())) {
+                matching.add(property);
+            }
+        }
+        for (Property property : matching) {
+            property.remove();
+        }
+        return matching.size();
+    }
+
+    private static boolean nodeExists(Session session, String identifier) throws RepositoryException {
+        try {
+            session.getNodeByIdentifier(identifier);
+            return true;
+        } catch (ItemNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static List<Event> collect(EventIterator events) {
+        List<Event> batch = new ArrayList<>();
+        while (events.hasNext()) {
+            batch.add(events.nextEvent());
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+/**
+ * Immutable reference of a node to an assigned identifier, through the given assignment node, e.g. <code>tags</code>.
+ */
+public final class AssignmentReference {
+
+    private final String ownerIdentifier;
+    private final String assignmentNodeName;
+
+    AssignmentReference(String ownerIdentifier, String assignmentNodeName) {
+        this.ownerIdentifier = ownerIdentifier;
+        this.assignmentNodeName = assignmentNodeName;
+    }
+
+    /**
+     * Identifier of the node holding the assignment, e.g. a page.
+     */
+    public String getOwnerIdentifier() {
+        return ownerIdentifier;
+    }
+
+    public String getAssignmentNodeName() {
+        return assignmentNodeName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AssignmentReference)) {
+            return false;
+        }
+        AssignmentReference other = (AssignmentReference) o;
+        return ownerIdentifier.equals(other.ownerIdentifier) && assignmentNodeName.equals(other.assignmentNodeName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ownerIdentifier.hashCode() + assignmentNodeName.hashCode();
+    }
+}
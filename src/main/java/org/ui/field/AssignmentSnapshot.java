@@ -0,0 +1,146 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.jcr.iterator.FilteringPropertyIterator;
+import info.magnolia.jcr.predicate.JCRMgnlPropertyHidingPredicate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+
+/**
+ * Identifiers assigned to a node by a management field, read once per field.
+ * <p>
+ * Besides the identifier set handed to the {@link info.magnolia.security.app.dialog.field.property.ManagementFieldTransformer},
+ * UUIDs are kept as sorted pairs of longs, so marking thousands of options as selected is a binary search over a
+ * primitive array instead of a string hash lookup per option.
+ */
+public final class AssignmentSnapshot {
+
+    private static final AssignmentSnapshot EMPTY = new AssignmentSnapshot(new HashSet<String>());
+
+    private final Set<String> identifiers;
+    private final long[] uuids;
+    private final boolean allUuids;
+
+    private AssignmentSnapshot(Set<String> identifiers) {
+        this.identifiers = identifiers;
+        UUID[] parsed = new UUID[identifiers.size()];
+        int count = 0;
+        for (String identifier : identifiers) {
+            UUID uuid = ManagementOption.parse(identifier);
+            if (uuid != null) {
+                parsed[count++] = uuid;
+            }
+        }
+        this.allUuids = count == parsed.length;
+        Arrays.sort(parsed, 0, count);
+        this.uuids = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            uuids[2 * i] = parsed[i].getMostSignificantBits();
+            uuids[2 * i + 1] = parsed[i].getLeastSignificantBits();
+        }
+    }
+
+    public static AssignmentSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Reads the identifiers stored as properties of the given child node of the edited node.
+     */
+    public static AssignmentSnapshot read(Node mainNode, String assignmentNodeName) throws RepositoryException {
+        if (mainNode == null || !mainNode.hasNode(assignmentNodeName)) {
+            return EMPTY;
+        }
+        Set<String> identifiers = new HashSet<String>();
+        Node assignmentNode = mainNode.getNode(assignmentNodeName);
+        for (PropertyIterator iter = new FilteringPropertyIterator(assignmentNode.getProperties(), new JCRMgnlPropertyHidingPredicate()); iter.hasNext(); ) {
+            Property p = iter.nextProperty();
+            identifiers.add(p.getString());
+        }
+        return new AssignmentSnapshot(identifiers);
+    }
+
+    public boolean contains(ManagementOption option) {
+        if (identifiers.isEmpty()) {
+            return false;
+        }
+        if (allUuids && option.hasUuidBits()) {
+            return indexOf(option.getMostSignificantBits(), option.getLeastSignificantBits()) >= 0;
+        }
+        return identifiers.contains(option.getUuid());
+    }
+
+    /**
+     * Read-only view of the assigned identifiers.
+     */
+    public Set<String> getIdentifiers() {
+        return Collections.unmodifiableSet(identifiers);
+    }
+
+    public int size() {
+        return identifiers.size();
+    }
+
+    /**
+     * Binary search in the sorted pairs, ordered like {@link UUID#compareTo(UUID)}.
+     */
+    private int indexOf(long most, long least) {
+        int low = 0;
+        int high = uuids.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midMost = uuids[2 * mid];
+            long midLeast = uuids[2 * mid + 1];
+            int cmp = midMost != most ? (midMost < most ? -1 : 1) : (midLeast < least ? -1 : (midLeast == least ? 0 : 1));
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
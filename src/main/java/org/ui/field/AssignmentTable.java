@@ -0,0 +1,252 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The state of the {@link AssignmentIndex}, apart from the repository: the identifiers each owner node is assigned
+ * through each of its assignment nodes, the reverse references from each assigned identifier, and the paths of the
+ * owners, so that removing or moving a subtree reaches every owner below it.
+ * <p>
+ * Writes are serialized on the table; references are read without locking.
+ */
+final class AssignmentTable {
+
+    private final ConcurrentMap<String, Set<AssignmentReference>> references = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Set<String>>> assignments = new HashMap<>();
+    private final Map<String, String> paths = new HashMap<>();
+    private final NavigableMap<String, String> owners = new TreeMap<>();
+
+    List<AssignmentReference> getReferences(String target) {
+        Set<AssignmentReference> referencing = references.get(target);
+        return referencing == null ? Collections.emptyList() : new ArrayList<>(referencing);
+    }
+
+    int getReferenceCount(String target) {
+        Set<AssignmentReference> referencing = references.get(target);
+        return referencing == null ? 0 : referencing.size();
+    }
+
+    boolean isReferenced(String target) {
+        return references.containsKey(target);
+    }
+
+    synchronized int getOwnerCount() {
+        return assignments.size();
+    }
+
+    synchronized int getTargetCount() {
+        return references.size();
+    }
+
+    /**
+     * Returns the path of the given owner, or <code>null</code> if it holds no assignment.
+     */
+    synchronized String getPath(String owner) {
+        return paths.get(owner);
+    }
+
+    /**
+     * Replaces the identifiers the given owner, at the given path, is assigned through the given assignment node.
+     */
+    synchronized void apply(String owner, String path, String assignmentNodeName, Set<String> targets) {
+        Map<String, Set<String>> owned = assignments.get(owner);
+        Set<String> previous = owned == null ? Collections.emptySet() : owned.getOrDefault(assignmentNodeName, Collections.emptySet());
+        AssignmentReference reference = new AssignmentReference(owner, assignmentNodeName);
+        for (String target : previous) {
+            if (!targets.contains(target)) {
+                unlink(target, reference);
+            }
+        }
+        for (String target : targets) {
+            if (!previous.contains(target)) {
+                references.computeIfAbsent(target, k -> ConcurrentHashMap.newKeySet()).add(reference);
+            }
+        }
+        if (targets.isEmpty()) {
+            if (owned != null) {
+                owned.remove(assignmentNodeName);
+                if (owned.isEmpty()) {
+                    assignments.remove(owner);
+                    forgetPath(owner);
+                }
+            }
+        } else {
+            assignments.computeIfAbsent(owner, k -> new HashMap<>()).put(assignmentNodeName, new HashSet<>(targets));
+            setPath(owner, path);
+        }
+    }
+
+    /**
+     * Removes the given owner and its assignments, returns whether it held any.
+     */
+    synchronized boolean remove(String owner) {
+        Map<String, Set<String>> owned = assignments.remove(owner);
+        if (owned == null) {
+            return false;
+        }
+        for (Map.Entry<String, Set<String>> assignment : owned.entrySet()) {
+            AssignmentReference reference = new AssignmentReference(owner, assignment.getKey());
+            for (String target : assignment.getValue()) {
+                unlink(target, reference);
+            }
+        }
+        forgetPath(owner);
+        return true;
+    }
+
+    /**
+     * Removes the owners at or below the given path, returns their identifiers.
+     */
+    synchronized List<String> removeBelow(String path) {
+        List<String> removed = new ArrayList<>(subtree(path).values());
+        for (String owner : removed) {
+            remove(owner);
+        }
+        return removed;
+    }
+
+    /**
+     * Moves the paths of the owners at or below the given source path below the given destination path.
+     */
+    synchronized void move(String source, String destination) {
+        Map<String, String> moved = subtree(source);
+        for (String owner : moved.values()) {
+            forgetPath(owner);
+        }
+        for (Map.Entry<String, String> owner : moved.entrySet()) {
+            setPath(owner.getValue(), destination + owner.getKey().substring(source.length()));
+        }
+    }
+
+    /**
+     * Applies a batch of subtrees removed from the given paths, to the identifiers of their roots: those arrived again at
+     * the given paths, by identifier, were moved there, the others are removed. Returns the identifiers of the owners
+     * removed.
+     */
+    synchronized List<String> reconcile(Map<String, String> removals, Map<String, String> arrivals) {
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, String> removal : removals.entrySet()) {
+            String destination = arrivals.get(removal.getValue());
+            if (destination != null) {
+                move(removal.getKey(), destination);
+            } else {
+                removed.addAll(removeBelow(removal.getKey()));
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the given identifier from all the assignments referencing it, returns the references removed.
+     */
+    synchronized List<AssignmentReference> removeTarget(String target) {
+        Set<AssignmentReference> referencing = references.remove(target);
+        if (referencing == null) {
+            return Collections.emptyList();
+        }
+        for (AssignmentReference reference : referencing) {
+            Map<String, Set<String>> owned = assignments.get(reference.getOwnerIdentifier());
+            Set<String> targets = owned == null ? null : owned.get(reference.getAssignmentNodeName());
+            if (targets != null) {
+                targets.remove(target);
+                if (targets.isEmpty()) {
+                    owned.remove(reference.getAssignmentNodeName());
+                }
+                if (owned.isEmpty()) {
+                    assignments.remove(reference.getOwnerIdentifier());
+                    forgetPath(reference.getOwnerIdentifier());
+                }
+            }
+        }
+        return new ArrayList<>(referencing);
+    }
+
+    synchronized void clear() {
+        references.clear();
+        assignments.clear();
+        paths.clear();
+        owners.clear();
+    }
+
+    /**
+     * Returns the owners at or below the given path, by path.
+     */
+    private Map<String, String> subtree(String path) {
+        Map<String, String> subtree = new HashMap<>();
+        String owner = owners.get(path);
+        if (owner != null) {
+            subtree.put(path, owner);
+        }
+        // '0' follows '/', so the range holds exactly the paths starting with path + "/"
+        subtree.putAll(owners.subMap(path + "/", true, path + "0", false));
+        return subtree;
+    }
+
+    private void setPath(String owner, String path) {
+        if (path == null) {
+            return;
+        }
+        String previous = paths.put(owner, path);
+        if (previous != null && !previous.equals(path)) {
+            owners.remove(previous, owner);
+        }
+        owners.put(path, owner);
+    }
+
+    private void forgetPath(String owner) {
+        String path = paths.remove(owner);
+        if (path != null) {
+            owners.remove(path, owner);
+        }
+    }
+
+    private void unlink(String target, AssignmentReference reference) {
+        references.computeIfPresent(target, (k, referencing) -> {
+            referencing.remove(reference);
+            return referencing.isEmpty() ? null : referencing;
+        });
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.context.MgnlContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.inject.Inject;
+import javax.jcr.AccessDeniedException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ManagementOptionSource} serving the options from the module wide {@link ManagementOptionCache}.
+ * Windows are cut from the cached index, so paging only saves the dialog from holding every option, and prefix
+ * searches are answered by the index without touching the repository.
+ * <p>
+ * The cache is read with the system context: every option served is checked against the session of the current user,
+ * so that access control on the users, groups and tags still applies. Offsets count the readable options only.
+ */
+public class CachedManagementOptionSource implements SearchableManagementOptionSource {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedManagementOptionSource.class);
+
+    private final ManagementOptionCache optionCache;
+
+    @Inject
+    public CachedManagementOptionSource(ManagementOptionCache optionCache) {
+        this.optionCache = optionCache;
+    }
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition) {
+        Predicate<ManagementOption> readable = readable(definition);
+        List<ManagementOption> options = new ArrayList<>();
+        for (ManagementOption option : getIndex(definition).getOptions()) {
+            if (readable.test(option)) {
+                options.add(option);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition, long offset, int limit) {
+        Predicate<ManagementOption> readable = readable(definition);
+        List<ManagementOption> options = new ArrayList<>(Math.max(0, limit));
+        long skipped = 0;
+        for (ManagementOption option : getIndex(definition).getOptions()) {
+            if (options.size() >= limit) {
+                break;
+            }
+            if (!readable.test(option)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                options.add(option);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition, Collection<String> identifiers) {
+        Predicate<ManagementOption> readable = readable(definition);
+        List<ManagementOption> options = new ArrayList<>(identifiers.size());
+        ManagementOptionIndex index = getIndex(definition);
+        for (String identifier : identifiers) {
+            ManagementOption option = index.get(identifier);
+            if (option != null && readable.test(option)) {
+                options.add(option);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public List<ManagementOption> search(ManagementFieldDefinition definition, String prefix, int limit) {
+        return getIndex(definition).search(prefix, limit, readable(definition));
+    }
+
+    private ManagementOptionIndex getIndex(ManagementFieldDefinition definition) {
+        return optionCache.getIndex(definition.getRepository(), definition.getNodeType(), definition.getLabelProperty());
+    }
+
+    /**
+     * Tells whether the current user can read the node of an option.
+     */
+    private static Predicate<ManagementOption> readable(ManagementFieldDefinition definition) {
+        final Session session;
+        try {
+            session = MgnlContext.getJCRSession(definition.getRepository());
+        } catch (RepositoryException e) {
+            log.error("Cannot read the [{}] workspace, no option will be offered.", definition.getRepository(), e);
+            return option -> false;
+        }
+        return option -> isReadable(session, option);
+    }
+
+    private static boolean isReadable(Session session, ManagementOption option) {
+        try {
+            if (option.getPath() != null) {
+                return session.nodeExists(option.getPath());
+            }
+            session.getNodeByIdentifier(option.getUuid());
+            return true;
+        } catch (ItemNotFoundException | AccessDeniedException e) {
+            return false;
+        } catch (RepositoryException e) {
+            log.debug("Cannot check access to [{}], leaving it out of the options.", option.getUuid(), e);
+            return false;
+        }
+    }
+}
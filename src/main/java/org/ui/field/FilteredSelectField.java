@@ -0,0 +1,75 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import com.vaadin.ui.Component;
+import com.vaadin.v7.ui.AbstractSelect;
+import com.vaadin.v7.ui.AbstractTextField;
+import com.vaadin.v7.ui.TextField;
+
+/**
+ * Wraps a selection field, whose items only hold the options matching a prefix, with a search box.
+ * The client only sends the prefix once the editor stopped typing for the given timeout.
+ */
+public class FilteredSelectField extends AbstractSelectFieldWrapper {
+
+    /**
+     * Loads the options matching a prefix into the wrapped field.
+     */
+    public interface Filter {
+        void filter(String prefix);
+    }
+
+    private final TextField search;
+
+    public FilteredSelectField(AbstractSelect select, Filter filter, String inputPrompt, int timeout) {
+        super(select);
+        this.search = new TextField();
+        search.setInputPrompt(inputPrompt);
+        search.setWidth(100, Unit.PERCENTAGE);
+        search.setTextChangeEventMode(AbstractTextField.TextChangeEventMode.LAZY);
+        search.setTextChangeTimeout(timeout);
+        search.addTextChangeListener(event -> filter.filter(event.getText()));
+    }
+
+    @Override
+    protected Component createControls() {
+        return search;
+    }
+
+    @Override
+    protected boolean isControlsFirst() {
+        return true;
+    }
+}
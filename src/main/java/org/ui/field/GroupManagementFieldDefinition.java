@@ -33,16 +33,13 @@
  */
 package org.ui.field;
 
-import info.magnolia.security.app.dialog.field.property.ManagementFieldTransformer;
-import info.magnolia.ui.form.field.definition.TwinColSelectFieldDefinition;
-import info.magnolia.ui.form.field.transformer.Transformer;
-
 /**
  * A definition for the Group Management field.
  */
-public class GroupManagementFieldDefinition extends TwinColSelectFieldDefinition {
-    @SuppressWarnings("unchecked")
+public class GroupManagementFieldDefinition extends ManagementFieldDefinition {
     public GroupManagementFieldDefinition() {
-        setTransformerClass((Class<? extends Transformer<?>>) (Object) ManagementFieldTransformer.class);
+        setRepository("usergroups");
+        setNodeType("mgnl:group");
+        setAssignmentNodeName("groups");
     }
 }
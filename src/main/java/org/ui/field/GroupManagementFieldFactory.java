@@ -33,62 +33,22 @@
  */
 package org.ui.field;
 
-import info.magnolia.cms.util.QueryUtil;
-import info.magnolia.jcr.iterator.FilteringPropertyIterator;
-import info.magnolia.jcr.predicate.JCRMgnlPropertyHidingPredicate;
 import info.magnolia.objectfactory.ComponentProvider;
 import info.magnolia.ui.api.context.UiContext;
 import info.magnolia.ui.api.i18n.I18NAuthoringSupport;
-import info.magnolia.ui.form.field.definition.SelectFieldOptionDefinition;
-import info.magnolia.ui.form.field.factory.TwinColSelectFieldFactory;
-import info.magnolia.ui.form.field.transformer.Transformer;
-import info.magnolia.ui.vaadin.integration.jcr.JcrNodeAdapter;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 import javax.inject.Inject;
-import javax.jcr.Node;
-import javax.jcr.NodeIterator;
-import javax.jcr.Property;
-import javax.jcr.PropertyIterator;
-import javax.jcr.RepositoryException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.vaadin.v7.data.Item;
-import com.vaadin.v7.ui.AbstractSelect;
-import com.vaadin.v7.ui.TwinColSelect;
 
 /**
  * GUI builder for the Group Management field.
  */
-public class GroupManagementFieldFactory extends TwinColSelectFieldFactory<GroupManagementFieldDefinition> {
-    /**
-     * Internal bean to represent basic group data.
-     */
-    private static class Group {
-        public String name;
-        public String uuid;
-
-        public Group(String name, String uuid) {
-            this.name = name;
-            this.uuid = uuid;
-        }
-    }
-
-    private static final Logger log = LoggerFactory.getLogger(GroupManagementFieldFactory.class);
-    private ComponentProvider componentProvider;
+public class GroupManagementFieldFactory extends ManagementFieldFactory<GroupManagementFieldDefinition> {
 
     @Inject
     public GroupManagementFieldFactory(GroupManagementFieldDefinition definition, Item relatedFieldItem, UiContext uiContext, I18NAuthoringSupport i18nAuthoringSupport, ComponentProvider componentProvider) {
         super(definition, relatedFieldItem, uiContext, i18nAuthoringSupport, componentProvider);
-
-        definition.setOptions(getOptions());
-        this.componentProvider = componentProvider;
     }
 
     /**
@@ -98,82 +58,4 @@ public class GroupManagementFieldFactory extends TwinColSelectFieldFactory<Group
     public GroupManagementFieldFactory(GroupManagementFieldDefinition definition, Item relatedFieldItem, ComponentProvider componentProvider) {
         this(definition, relatedFieldItem, null, componentProvider.getComponent(I18NAuthoringSupport.class), componentProvider);
     }
-
-    @Override
-    protected AbstractSelect createFieldComponent() {
-        super.createFieldComponent();
-        select.setMultiSelect(true);
-        select.setNullSelectionAllowed(true);
-        return select;
-    }
-
-    @Override
-    protected AbstractSelect createSelectionField() {
-        return new TwinColSelect();
-    }
-
-    /**
-     * Returns the available groups with those already assigned marked selected, according to the current node.
-     */
-    @Override
-    public List<SelectFieldOptionDefinition> getOptions() {
-        List<SelectFieldOptionDefinition> options = new ArrayList<SelectFieldOptionDefinition>();
-        List<Group> allGroups = getAllGroups(); // name,uuid
-        Set<String> assignedGroups = getAssignedGroups();
-        for (Group group : allGroups) {
-            SelectFieldOptionDefinition option = new SelectFieldOptionDefinition();
-            option.setValue(group.uuid);
-            option.setLabel(group.name);
-            if (assignedGroups.contains(group.uuid)) {
-                option.setSelected(true);
-            }
-            options.add(option);
-        }
-        return options;
-    }
-
-    private List<Group> getAllGroups() {
-        List<Group> groups = new ArrayList<Group>();
-        try {
-            NodeIterator ni = QueryUtil.search("usergroups", "SELECT * FROM [mgnl:group] ORDER BY name()");
-            while (ni.hasNext()) {
-                Node n = ni.nextNode();
-                String name = n.getName();
-                String uuid = n.getIdentifier();
-                groups.add(new Group(name, uuid));
-            }
-        } catch (RepositoryException e) {
-            log.error("Cannot read groups from the [usergroups] workspace.", e);
-        }
-        return groups;
-    }
-
-    private Set<String> getAssignedGroups() {
-        Set<String> groups = new HashSet<String>();
-        try {
-            Node mainNode = ((JcrNodeAdapter) item).getJcrItem();
-            if (mainNode.hasNode("groups")) {
-                Node groupsNode = mainNode.getNode("groups");
-                if (groupsNode == null) {
-                    // shouldn't happen, just in case
-                    return groups;
-                }
-                for (PropertyIterator iter = new FilteringPropertyIterator(groupsNode.getProperties(), new JCRMgnlPropertyHidingPredicate()); iter.hasNext(); ) {
-                    Property p = iter.nextProperty();
-                    groups.add(p.getString());
-                }
-            }
-        } catch (RepositoryException re) {
-            log.error("Cannot read assigned groups.", re);
-        }
-        return groups;
-    }
-
-    /**
-     * Create a new Instance of {@link Transformer}.
-     */
-    @Override
-    protected Transformer<?> initializeTransformer(Class<? extends Transformer<?>> transformerClass) {
-        return this.componentProvider.newInstance(transformerClass, item, definition, HashSet.class, getAssignedGroups(), "groups");
-    }
 }
@@ -0,0 +1,70 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.security.app.dialog.field.property.ManagementFieldTransformer;
+import info.magnolia.ui.form.field.definition.ConfiguredFieldDefinition;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import com.vaadin.v7.data.Item;
+
+/**
+ * Management field transformer which also stages the written identifiers in the {@link AssignmentIndex}, to be
+ * committed once the dialog is saved.
+ */
+public class IndexingManagementFieldTransformer extends ManagementFieldTransformer {
+
+    private final Item item;
+    private final String assignmentNodeName;
+    private final AssignmentIndex assignmentIndex;
+
+    @Inject
+    public IndexingManagementFieldTransformer(Item relatedFormItem, ConfiguredFieldDefinition definition, Class<HashSet> type, Set<String> assignedEntities,
+            String assignmentNodeName, AssignmentIndex assignmentIndex) {
+        super(relatedFormItem, definition, type, assignedEntities, assignmentNodeName);
+        this.item = relatedFormItem;
+        this.assignmentNodeName = assignmentNodeName;
+        this.assignmentIndex = assignmentIndex;
+    }
+
+    @Override
+    public void writeToItem(HashSet newValue) {
+        super.writeToItem(newValue);
+        assignmentIndex.stage(item, assignmentNodeName, newValue);
+    }
+}
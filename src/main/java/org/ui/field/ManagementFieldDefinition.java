@@ -0,0 +1,126 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.ui.form.field.definition.TwinColSelectFieldDefinition;
+import info.magnolia.ui.form.field.transformer.Transformer;
+
+/**
+ * A definition for a management field: a twin column selection of the nodes of a given type in a workspace,
+ * whose identifiers are stored as properties of a child node of the edited node.
+ * <p>
+ * The workspace is the inherited {@link #getRepository() repository}; when the nodes carry the configured
+ * {@link #getLabelProperty() label property} it is used as option label, otherwise the node name is.
+ * <p>
+ * With a positive {@link #getPageSize() page size} and a {@link PageableManagementOptionSource}, the field only
+ * loads the assigned nodes and one page of the others at a time. A {@link #isFiltered() filtered} field with a
+ * {@link SearchableManagementOptionSource} instead offers a search box and only loads the nodes matching its prefix.
+ */
+public class ManagementFieldDefinition extends TwinColSelectFieldDefinition {
+
+    private String nodeType;
+    private String assignmentNodeName;
+    private Class<? extends ManagementOptionSource> optionSourceClass = CachedManagementOptionSource.class;
+    private int pageSize;
+    private boolean filtered;
+    private int maxResults = 50;
+    private int filterTimeout = 300;
+
+    @SuppressWarnings("unchecked")
+    public ManagementFieldDefinition() {
+        setTransformerClass((Class<? extends Transformer<?>>) (Object) IndexingManagementFieldTransformer.class);
+    }
+
+    public String getNodeType() {
+        return nodeType;
+    }
+
+    public void setNodeType(String nodeType) {
+        this.nodeType = nodeType;
+    }
+
+    public String getAssignmentNodeName() {
+        return assignmentNodeName;
+    }
+
+    public void setAssignmentNodeName(String assignmentNodeName) {
+        this.assignmentNodeName = assignmentNodeName;
+    }
+
+    public Class<? extends ManagementOptionSource> getOptionSourceClass() {
+        return optionSourceClass;
+    }
+
+    public void setOptionSourceClass(Class<? extends ManagementOptionSource> optionSourceClass) {
+        this.optionSourceClass = optionSourceClass;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public boolean isFiltered() {
+        return filtered;
+    }
+
+    public void setFiltered(boolean filtered) {
+        this.filtered = filtered;
+    }
+
+    /**
+     * Maximum number of matches shown for a prefix in filtered mode.
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Milliseconds the client waits after the last key stroke before searching, in filtered mode.
+     */
+    public int getFilterTimeout() {
+        return filterTimeout;
+    }
+
+    public void setFilterTimeout(int filterTimeout) {
+        this.filterTimeout = filterTimeout;
+    }
+}
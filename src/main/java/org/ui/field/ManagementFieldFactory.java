@@ -0,0 +1,261 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.i18nsystem.SimpleTranslator;
+import info.magnolia.objectfactory.ComponentProvider;
+import info.magnolia.ui.api.context.UiContext;
+import info.magnolia.ui.api.i18n.I18NAuthoringSupport;
+import info.magnolia.ui.form.field.definition.SelectFieldOptionDefinition;
+import info.magnolia.ui.form.field.factory.TwinColSelectFieldFactory;
+import info.magnolia.ui.form.field.transformer.Transformer;
+import info.magnolia.ui.vaadin.integration.jcr.JcrNodeAdapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ui.metrics.MetricsRegistry;
+import org.ui.metrics.Timer;
+
+import com.vaadin.v7.data.Item;
+import com.vaadin.v7.ui.AbstractSelect;
+import com.vaadin.v7.ui.Field;
+import com.vaadin.v7.ui.TwinColSelect;
+
+/**
+ * GUI builder for management fields: lists the nodes provided by the configured {@link ManagementOptionSource}
+ * and stores the selected identifiers under the {@link ManagementFieldDefinition#getAssignmentNodeName() assignment node}.
+ * <p>
+ * In paged mode (see {@link ManagementFieldDefinition#getPageSize()}) the field only holds the assigned nodes plus one
+ * page of the available ones, and is wrapped in a {@link PagedSelectField} to navigate between pages. In filtered mode
+ * (see {@link ManagementFieldDefinition#isFiltered()}) it holds the assigned nodes plus those matching the prefix typed
+ * in the search box of a {@link FilteredSelectField}.
+ *
+ * @param <D> definition type
+ */
+public class ManagementFieldFactory<D extends ManagementFieldDefinition> extends TwinColSelectFieldFactory<D> {
+    private static final Logger log = LoggerFactory.getLogger(ManagementFieldFactory.class);
+
+    private ComponentProvider componentProvider;
+    private final ManagementOptionSource optionSource;
+    private final boolean filtered;
+    private final boolean paged;
+    private boolean hasNextPage;
+    private AbstractSelectFieldWrapper wrapper;
+    private AssignmentSnapshot assignment;
+    private final Timer optionsTimer;
+    private final Timer searchTimer;
+
+    @Inject
+    public ManagementFieldFactory(D definition, Item relatedFieldItem, UiContext uiContext, I18NAuthoringSupport i18nAuthoringSupport, ComponentProvider componentProvider) {
+        super(definition, relatedFieldItem, uiContext, i18nAuthoringSupport, componentProvider);
+
+        this.componentProvider = componentProvider;
+        MetricsRegistry metricsRegistry = componentProvider.getComponent(MetricsRegistry.class);
+        this.optionsTimer = metricsRegistry.timer("field.options");
+        this.searchTimer = metricsRegistry.timer("field.search");
+        this.optionSource = componentProvider.newInstance(definition.getOptionSourceClass());
+        this.filtered = definition.isFiltered() && optionSource instanceof SearchableManagementOptionSource;
+        this.paged = !filtered && definition.getPageSize() > 0 && optionSource instanceof PageableManagementOptionSource;
+        if (definition.isFiltered() && !filtered) {
+            log.warn("Option source [{}] of field [{}] cannot search, the field won't be filtered.", definition.getOptionSourceClass().getName(), definition.getName());
+        }
+        if (definition.getPageSize() > 0 && !paged && !filtered) {
+            log.warn("Option source [{}] of field [{}] cannot page, all options will be loaded.", definition.getOptionSourceClass().getName(), definition.getName());
+        }
+        definition.setOptions(getOptions());
+    }
+
+    @Override
+    protected AbstractSelect createFieldComponent() {
+        super.createFieldComponent();
+        select.setMultiSelect(true);
+        select.setNullSelectionAllowed(true);
+        if (paged || filtered) {
+            // items are added and removed on the fly, they can't rely on the container's label property
+            select.setItemCaptionMode(AbstractSelect.ItemCaptionMode.EXPLICIT_DEFAULTS_ID);
+            for (SelectFieldOptionDefinition option : definition.getOptions()) {
+                select.setItemCaption(option.getValue(), option.getLabel());
+            }
+        }
+        return select;
+    }
+
+    @Override
+    public Field<Object> createField() {
+        Field<Object> field = super.createField();
+        if (!paged && !filtered) {
+            return field;
+        }
+        if (wrapper == null) {
+            SimpleTranslator i18n = componentProvider.getComponent(SimpleTranslator.class);
+            if (filtered) {
+                wrapper = new FilteredSelectField(select, this::filter, i18n.translate("ui.managementField.search"), definition.getFilterTimeout());
+            } else {
+                PagedSelectField pagedField = new PagedSelectField(select, this::showPage, i18n.translate("ui.managementField.previousPage"), i18n.translate("ui.managementField.nextPage"));
+                pagedField.setPage(0, hasNextPage);
+                wrapper = pagedField;
+            }
+        }
+        return wrapper;
+    }
+
+    @Override
+    protected AbstractSelect createSelectionField() {
+        return new TwinColSelect();
+    }
+
+    /**
+     * Returns the available nodes with those already assigned marked selected, according to the current node.
+     */
+    @Override
+    public List<SelectFieldOptionDefinition> getOptions() {
+        long start = optionsTimer.start();
+        try {
+            List<SelectFieldOptionDefinition> options = new ArrayList<SelectFieldOptionDefinition>();
+            AssignmentSnapshot assigned = getAssignment();
+            for (ManagementOption managementOption : paged || filtered ? getFirstOptions(assigned) : optionSource.getOptions(definition)) {
+                SelectFieldOptionDefinition option = new SelectFieldOptionDefinition();
+                option.setValue(managementOption.getUuid());
+                option.setLabel(managementOption.getName());
+                if (assigned.contains(managementOption)) {
+                    option.setSelected(true);
+                }
+                options.add(option);
+            }
+            return options;
+        } finally {
+            optionsTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns the assigned options followed by the first page of options, or the first matches of an empty prefix.
+     */
+    private Collection<ManagementOption> getFirstOptions(AssignmentSnapshot assigned) {
+        Map<String, ManagementOption> options = new LinkedHashMap<>();
+        for (ManagementOption option : ((PageableManagementOptionSource) optionSource).getOptions(definition, assigned.getIdentifiers())) {
+            options.put(option.getUuid(), option);
+        }
+        List<ManagementOption> first = filtered ? ((SearchableManagementOptionSource) optionSource).search(definition, "", definition.getMaxResults()) : loadPage(0);
+        for (ManagementOption option : first) {
+            options.putIfAbsent(option.getUuid(), option);
+        }
+        return options.values();
+    }
+
+    /**
+     * Reads one page of options, plus one to know whether there is a next page.
+     */
+    private List<ManagementOption> loadPage(int page) {
+        int pageSize = definition.getPageSize();
+        List<ManagementOption> options = ((PageableManagementOptionSource) optionSource).getOptions(definition, (long) page * pageSize, pageSize + 1);
+        hasNextPage = options.size() > pageSize;
+        return hasNextPage ? options.subList(0, pageSize) : options;
+    }
+
+    /**
+     * Replaces the unselected items of the field by the options of the given page.
+     */
+    private void showPage(int page) {
+        long start = searchTimer.start();
+        try {
+            replaceUnselectedItems(loadPage(page));
+        } finally {
+            searchTimer.stop(start);
+        }
+        ((PagedSelectField) wrapper).setPage(page, hasNextPage);
+    }
+
+    /**
+     * Replaces the unselected items of the field by the options matching the given prefix.
+     */
+    private void filter(String prefix) {
+        long start = searchTimer.start();
+        try {
+            replaceUnselectedItems(((SearchableManagementOptionSource) optionSource).search(definition, StringUtils.trimToEmpty(prefix), definition.getMaxResults()));
+        } finally {
+            searchTimer.stop(start);
+        }
+    }
+
+    private void replaceUnselectedItems(List<ManagementOption> options) {
+        Collection<?> selected = select.getValue() instanceof Collection ? (Collection<?>) select.getValue() : Collections.emptySet();
+        for (Object itemId : new ArrayList<>(select.getItemIds())) {
+            if (!selected.contains(itemId)) {
+                select.removeItem(itemId);
+            }
+        }
+        for (ManagementOption option : options) {
+            if (!select.containsId(option.getUuid())) {
+                select.addItem(option.getUuid());
+            }
+            select.setItemCaption(option.getUuid(), option.getName());
+        }
+    }
+
+    /**
+     * Returns the identifiers assigned to the current node, read once for both option marking and the transformer.
+     */
+    private AssignmentSnapshot getAssignment() {
+        if (assignment == null) {
+            try {
+                assignment = AssignmentSnapshot.read(((JcrNodeAdapter) item).getJcrItem(), definition.getAssignmentNodeName());
+            } catch (RepositoryException re) {
+                log.error("Cannot read assigned {}.", definition.getAssignmentNodeName(), re);
+                assignment = AssignmentSnapshot.empty();
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Create a new Instance of {@link Transformer}.
+     */
+    @Override
+    protected Transformer<?> initializeTransformer(Class<? extends Transformer<?>> transformerClass) {
+        return this.componentProvider.newInstance(transformerClass, item, definition, HashSet.class, new HashSet<>(getAssignment().getIdentifiers()), definition.getAssignmentNodeName());
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import java.util.UUID;
+
+/**
+ * Immutable bean representing a selectable entity (user, group, tag) of a management field.
+ * Identifiers which are UUIDs are also kept as two longs, so they can be compared without hashing strings.
+ */
+public final class ManagementOption {
+
+    private final String name;
+    private final String uuid;
+    private final String path;
+    private final boolean uuidBits;
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    public ManagementOption(String name, String uuid) {
+        this(name, uuid, null);
+    }
+
+    public ManagementOption(String name, String uuid, String path) {
+        this.name = name;
+        this.uuid = uuid;
+        this.path = path;
+        UUID parsed = parse(uuid);
+        this.uuidBits = parsed != null;
+        this.mostSignificantBits = parsed == null ? 0 : parsed.getMostSignificantBits();
+        this.leastSignificantBits = parsed == null ? 0 : parsed.getLeastSignificantBits();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Path of the node in its workspace, if known.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Whether the identifier is a UUID, i.e. whether {@link #getMostSignificantBits()} and {@link #getLeastSignificantBits()} are meaningful.
+     */
+    public boolean hasUuidBits() {
+        return uuidBits;
+    }
+
+    public long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    /**
+     * Returns the given identifier as UUID, or <code>null</code> if it isn't one.
+     */
+    static UUID parse(String identifier) {
+        if (identifier == null || identifier.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(identifier);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Module wide cache of the options displayed by the management fields.
+ *
+ * The options are read once per workspace, node type and label property with the system context, then kept in a
+ * {@link ManagementOptionIndex} shared by all dialogs. The workspace query only runs on a cold start: a JCR observation
+ * listener on each observed workspace applies added, removed, moved and relabelled nodes to the cached indexes.
+ * Whenever an event batch cannot be applied, the indexes of the workspace are dropped and rebuilt on next access.
+ * Every cached index carries the workspace generation it was built for; one built while an invalidation happened
+ * is never served. The indexes hold every node regardless of access control: what is offered to a user is filtered by
+ * the session of that user, see {@link CachedManagementOptionSource}.
+ */
+@Singleton
+public class ManagementOptionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagementOptionCache.class);
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+    private static final String SOURCE_PATH_INFO = "srcAbsPath";
+
+    private List<String> workspaces = new ArrayList<>(Arrays.asList("users", "usergroups", "tags"));
+
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<String, WorkspaceEventListenerRegistration.Handle> registrations = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder incrementalUpdates = new LongAdder();
+
+    /**
+     * Returns the options of all nodes of the given type in the given workspace, ordered by label.
+     *
+     * @see QueryManagementOptionSource#query(String, String, String)
+     */
+    public List<ManagementOption> getOptions(String workspace, String nodeType, String labelProperty) {
+        return getIndex(workspace, nodeType, labelProperty).getOptions();
+    }
+
+    /**
+     * Returns at most <code>limit</code> options whose label starts with the given prefix, ignoring case.
+     */
+    public List<ManagementOption> search(String workspace, String nodeType, String labelProperty, String prefix, int limit) {
+        return getIndex(workspace, nodeType, labelProperty).search(prefix, limit);
+    }
+
+    /**
+     * Returns the index of all nodes of the given type in the given workspace.
+     */
+    public ManagementOptionIndex getIndex(String workspace, String nodeType, String labelProperty) {
+        final String key = workspace + "|" + nodeType + "|" + labelProperty;
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.generation == generation(workspace).get()) {
+            hits.increment();
+            return snapshot.index;
+        }
+        misses.increment();
+        if (!isObserved(workspace)) {
+            List<ManagementOption> options = load(workspace, nodeType, labelProperty);
+            return options == null ? ManagementOptionIndex.empty() : ManagementOptionIndex.of(options);
+        }
+        synchronized (generation(workspace)) {
+            // another dialog might have rebuilt the index while we were waiting
+            snapshot = snapshots.get(key);
+            final long generation = generation(workspace).get();
+            if (snapshot != null && snapshot.generation == generation) {
+                return snapshot.index;
+            }
+            List<ManagementOption> options = load(workspace, nodeType, labelProperty);
+            if (options == null) {
+                return ManagementOptionIndex.empty();
+            }
+            rebuilds.increment();
+            snapshot = new Snapshot(generation, nodeType, labelProperty, ManagementOptionIndex.of(options));
+            snapshots.put(key, snapshot);
+            return snapshot.index;
+        }
+    }
+
+    /**
+     * Drops all the cached indexes of the given workspace.
+     */
+    public void invalidate(String workspace) {
+        generation(workspace).incrementAndGet();
+        snapshots.keySet().removeIf(key -> key.startsWith(workspace + "|"));
+        invalidations.increment();
+    }
+
+    /**
+     * Applies a batch of observation events to the cached indexes of the given workspace.
+     */
+    public void update(final String workspace, final List<Event> events) {
+        synchronized (generation(workspace)) {
+            for (Map.Entry<String, Snapshot> entry : snapshots.entrySet()) {
+                if (!entry.getKey().startsWith(workspace + "|")) {
+                    continue;
+                }
+                final Snapshot snapshot = entry.getValue();
+                try {
+                    ManagementOptionIndex index = MgnlContext.doInSystemContext(new MgnlContext.Op<ManagementOptionIndex, RepositoryException>() {
+                        @Override
+                        public ManagementOptionIndex exec() throws RepositoryException {
+                            return apply(MgnlContext.getJCRSession(workspace), snapshot, events);
+                        }
+                    });
+                    entry.setValue(new Snapshot(snapshot.generation, snapshot.nodeType, snapshot.labelProperty, index));
+                    incrementalUpdates.increment();
+                } catch (RepositoryException e) {
+                    log.warn("Cannot apply changes of the [{}] workspace to the management field options, they will be read again.", workspace, e);
+                    invalidate(workspace);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the observation listeners on the configured workspaces.
+     */
+    public void start() {
+        for (final String workspace : workspaces) {
+            if (registrations.containsKey(workspace)) {
+                continue;
+            }
+            try {
+                registrations.put(workspace, WorkspaceEventListenerRegistration.observe(workspace, "/", new UpdatingListener(workspace))
+                        .withSubNodes(true)
+                        .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                        .register());
+            } catch (RepositoryException e) {
+                log.warn("Cannot observe the [{}] workspace, management field options of it won't be cached.", workspace, e);
+            }
+        }
+    }
+
+    /**
+     * Unregisters the observation listeners and empties the cache.
+     */
+    public void stop() {
+        for (Map.Entry<String, WorkspaceEventListenerRegistration.Handle> registration : registrations.entrySet()) {
+            try {
+                registration.getValue().unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", registration.getKey(), e);
+            }
+        }
+        registrations.clear();
+        for (String workspace : generations.keySet()) {
+            invalidate(workspace);
+        }
+    }
+
+    /**
+     * Indexes are only cached for observed workspaces, otherwise they could never be updated.
+     */
+    public boolean isObserved(String workspace) {
+        return registrations.containsKey(workspace);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getIncrementalUpdateCount() {
+        return incrementalUpdates.sum();
+    }
+
+    public List<String> getWorkspaces() {
+        return workspaces;
+    }
+
+    public void setWorkspaces(List<String> workspaces) {
+        this.workspaces = workspaces;
+    }
+
+    private AtomicLong generation(String workspace) {
+        return generations.computeIfAbsent(workspace, k -> new AtomicLong());
+    }
+
+    /**
+     * Reads the options with the system context, returns <code>null</code> if they cannot be read.
+     */
+    private List<ManagementOption> load(final String workspace, final String nodeType, final String labelProperty) {
+        try {
+            return MgnlContext.doInSystemContext(new MgnlContext.Op<List<ManagementOption>, RepositoryException>() {
+                @Override
+                public List<ManagementOption> exec() throws RepositoryException {
+                    return QueryManagementOptionSource.query(workspace, nodeType, labelProperty);
+                }
+            });
+        } catch (RepositoryException e) {
+            log.error("Cannot read [{}] nodes from the [{}] workspace.", nodeType, workspace, e);
+            return null;
+        }
+    }
+
+    /**
+     * Re-reads the nodes touched by the events and merges them into the index of the snapshot.
+     */
+    private ManagementOptionIndex apply(Session session, Snapshot snapshot, List<Event> events) throws RepositoryException {
+        ManagementOptionIndex index = snapshot.index;
+        Set<String> touched = new LinkedHashSet<>();
+        Set<String> removals = new HashSet<>();
+        for (Event event : events) {
+            final String identifier = event.getIdentifier();
+            switch (event.getType()) {
+            case Event.NODE_REMOVED:
+                if (index.get(identifier) != null) {
+                    removals.add(identifier);
+                } else {
+                    removals.addAll(index.getIdentifiersBelow(event.getPath()));
+                }
+                touched.remove(identifier);
+                break;
+            case Event.NODE_ADDED:
+                touched.add(identifier);
+                removals.remove(identifier);
+                break;
+            case Event.NODE_MOVED:
+                touched.add(identifier);
+                Object sourcePath = event.getInfo().get(SOURCE_PATH_INFO);
+                if (sourcePath != null) {
+                    touched.addAll(index.getIdentifiersBelow(sourcePath.toString()));
+                }
+                break;
+            case Event.PROPERTY_ADDED:
+            case Event.PROPERTY_CHANGED:
+            case Event.PROPERTY_REMOVED:
+                // for property events the identifier is the one of the parent node
+                if (index.get(identifier) != null && StringUtils.isNotBlank(snapshot.labelProperty)
+                        && StringUtils.substringAfterLast(event.getPath(), "/").equals(snapshot.labelProperty)) {
+                    touched.add(identifier);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        Map<String, ManagementOption> upserts = new LinkedHashMap<>();
+        for (String identifier : touched) {
+            try {
+                Node node = session.getNodeByIdentifier(identifier);
+                if (node.isNodeType(snapshot.nodeType)) {
+                    upserts.put(identifier, QueryManagementOptionSource.toOption(node, snapshot.labelProperty));
+                }
+            } catch (ItemNotFoundException e) {
+                removals.add(identifier);
+            }
+        }
+        removals.removeAll(upserts.keySet());
+        return index.update(upserts.values(), removals);
+    }
+
+    /**
+     * Options of one workspace, node type and label property, as built for a given workspace generation.
+     */
+    private static class Snapshot {
+        private final long generation;
+        private final String nodeType;
+        private final String labelProperty;
+        private final ManagementOptionIndex index;
+
+        private Snapshot(long generation, String nodeType, String labelProperty, ManagementOptionIndex index) {
+            this.generation = generation;
+            this.nodeType = nodeType;
+            this.labelProperty = labelProperty;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Applies the changes of a workspace to its cached indexes.
+     */
+    private class UpdatingListener implements EventListener {
+        private final String workspace;
+
+        private UpdatingListener(String workspace) {
+            this.workspace = workspace;
+        }
+
+        @Override
+        public void onEvent(EventIterator events) {
+            List<Event> batch = new ArrayList<>();
+            while (events.hasNext()) {
+                batch.add(events.nextEvent());
+            }
+            update(workspace, batch);
+        }
+    }
+}
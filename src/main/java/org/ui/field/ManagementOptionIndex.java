@@ -0,0 +1,185 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Immutable prefix index over management options.
+ * <p>
+ * Options are kept in an array sorted by lower cased label, so a prefix lookup is a binary search for the first
+ * candidate followed by a scan of at most <code>limit</code> entries. Changes produce a new index by merging the
+ * (few) changed options into the sorted array, without querying or sorting everything again.
+ */
+public final class ManagementOptionIndex {
+
+    private static final Comparator<ManagementOption> ORDER = Comparator.comparing((ManagementOption option) -> key(option.getName())).thenComparing(ManagementOption::getUuid);
+
+    private static final ManagementOptionIndex EMPTY = new ManagementOptionIndex(new ManagementOption[0]);
+
+    private final ManagementOption[] options;
+    private final String[] keys;
+    private final Map<String, ManagementOption> byUuid;
+    private final List<ManagementOption> list;
+
+    private ManagementOptionIndex(ManagementOption[] sortedOptions) {
+        this.options = sortedOptions;
+        this.keys = new String[sortedOptions.length];
+        this.byUuid = new HashMap<>(sortedOptions.length * 4 / 3 + 1);
+        for (int i = 0; i < sortedOptions.length; i++) {
+            keys[i] = key(sortedOptions[i].getName());
+            byUuid.put(sortedOptions[i].getUuid(), sortedOptions[i]);
+        }
+        this.list = Collections.unmodifiableList(Arrays.asList(sortedOptions));
+    }
+
+    public static ManagementOptionIndex empty() {
+        return EMPTY;
+    }
+
+    public static ManagementOptionIndex of(Collection<ManagementOption> options) {
+        ManagementOption[] sorted = options.toArray(new ManagementOption[options.size()]);
+        Arrays.sort(sorted, ORDER);
+        return new ManagementOptionIndex(sorted);
+    }
+
+    /**
+     * All the options, ordered by label.
+     */
+    public List<ManagementOption> getOptions() {
+        return list;
+    }
+
+    public ManagementOption get(String uuid) {
+        return byUuid.get(uuid);
+    }
+
+    public int size() {
+        return options.length;
+    }
+
+    /**
+     * Returns at most <code>limit</code> options whose label starts with the given prefix, ignoring case.
+     */
+    public List<ManagementOption> search(String prefix, int limit) {
+        return search(prefix, limit, option -> true);
+    }
+
+    /**
+     * Returns at most <code>limit</code> options accepted by the given filter whose label starts with the given prefix.
+     */
+    public List<ManagementOption> search(String prefix, int limit, Predicate<ManagementOption> filter) {
+        String key = key(prefix);
+        List<ManagementOption> matches = new ArrayList<>(Math.min(limit, 16));
+        for (int i = lowerBound(key); i < options.length && matches.size() < limit && keys[i].startsWith(key); i++) {
+            if (filter.test(options[i])) {
+                matches.add(options[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the identifiers of the options located below the given path.
+     */
+    public List<String> getIdentifiersBelow(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        List<String> identifiers = new ArrayList<>();
+        for (ManagementOption option : options) {
+            if (option.getPath() != null && option.getPath().startsWith(prefix)) {
+                identifiers.add(option.getUuid());
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns a new index with the given options added or replaced and the given identifiers removed.
+     */
+    public ManagementOptionIndex update(Collection<ManagementOption> upserts, Set<String> removals) {
+        if (upserts.isEmpty() && removals.isEmpty()) {
+            return this;
+        }
+        Map<String, ManagementOption> changed = new HashMap<>();
+        for (ManagementOption option : upserts) {
+            changed.put(option.getUuid(), option);
+        }
+        ManagementOption[] added = changed.values().toArray(new ManagementOption[changed.size()]);
+        Arrays.sort(added, ORDER);
+
+        List<ManagementOption> merged = new ArrayList<>(options.length + added.length);
+        int j = 0;
+        for (ManagementOption option : options) {
+            if (removals.contains(option.getUuid()) || changed.containsKey(option.getUuid())) {
+                continue;
+            }
+            while (j < added.length && ORDER.compare(added[j], option) < 0) {
+                merged.add(added[j++]);
+            }
+            merged.add(option);
+        }
+        while (j < added.length) {
+            merged.add(added[j++]);
+        }
+        return new ManagementOptionIndex(merged.toArray(new ManagementOption[merged.size()]));
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String key(String label) {
+        return label == null ? "" : label.toLowerCase(Locale.ROOT);
+    }
+}
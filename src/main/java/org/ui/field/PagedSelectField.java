@@ -0,0 +1,81 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.v7.ui.AbstractSelect;
+
+/**
+ * Wraps a selection field, whose items only hold one page of the available options, with page navigation buttons.
+ */
+public class PagedSelectField extends AbstractSelectFieldWrapper {
+
+    /**
+     * Loads the options of a page into the wrapped field.
+     */
+    public interface Pager {
+        void showPage(int page);
+    }
+
+    private final Button previous;
+    private final Button next;
+    private int page;
+
+    public PagedSelectField(AbstractSelect select, Pager pager, String previousCaption, String nextCaption) {
+        super(select);
+        this.previous = new Button(previousCaption, event -> pager.showPage(page - 1));
+        this.next = new Button(nextCaption, event -> pager.showPage(page + 1));
+    }
+
+    @Override
+    protected Component createControls() {
+        return new HorizontalLayout(previous, next);
+    }
+
+    @Override
+    protected boolean isControlsFirst() {
+        return false;
+    }
+
+    /**
+     * Called by the {@link Pager} once a page has been loaded.
+     */
+    public void setPage(int page, boolean hasNext) {
+        this.page = page;
+        previous.setEnabled(page > 0);
+        next.setEnabled(hasNext);
+    }
+}
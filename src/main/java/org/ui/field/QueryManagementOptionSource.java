@@ -0,0 +1,128 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.PropertyUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ManagementOptionSource} querying the workspace with the current context on every call.
+ * Windows are read with the query limit and offset, so only the requested nodes are loaded.
+ */
+public class QueryManagementOptionSource implements PageableManagementOptionSource {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryManagementOptionSource.class);
+
+    private static final String QUERY = "SELECT * FROM [%s] ORDER BY name()";
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition) {
+        try {
+            return query(definition.getRepository(), definition.getNodeType(), definition.getLabelProperty());
+        } catch (RepositoryException e) {
+            log.error("Cannot read [{}] nodes from the [{}] workspace.", definition.getNodeType(), definition.getRepository(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition, long offset, int limit) {
+        List<ManagementOption> options = new ArrayList<>();
+        try {
+            Session session = MgnlContext.getJCRSession(definition.getRepository());
+            Query query = session.getWorkspace().getQueryManager().createQuery(String.format(QUERY, definition.getNodeType()), Query.JCR_SQL2);
+            query.setOffset(offset);
+            query.setLimit(limit);
+            NodeIterator ni = query.execute().getNodes();
+            while (ni.hasNext()) {
+                options.add(toOption(ni.nextNode(), definition.getLabelProperty()));
+            }
+        } catch (RepositoryException e) {
+            log.error("Cannot read [{}] nodes from the [{}] workspace.", definition.getNodeType(), definition.getRepository(), e);
+        }
+        return options;
+    }
+
+    @Override
+    public List<ManagementOption> getOptions(ManagementFieldDefinition definition, Collection<String> identifiers) {
+        List<ManagementOption> options = new ArrayList<>(identifiers.size());
+        try {
+            Session session = MgnlContext.getJCRSession(definition.getRepository());
+            for (String identifier : identifiers) {
+                try {
+                    options.add(toOption(session.getNodeByIdentifier(identifier), definition.getLabelProperty()));
+                } catch (ItemNotFoundException e) {
+                    log.debug("Assigned node [{}] doesn't exist in the [{}] workspace anymore.", identifier, definition.getRepository());
+                }
+            }
+        } catch (RepositoryException e) {
+            log.error("Cannot read assigned nodes from the [{}] workspace.", definition.getRepository(), e);
+        }
+        return options;
+    }
+
+    /**
+     * Reads the (label, uuid) pairs of all nodes of the given type in the given workspace, ordered by name.
+     */
+    public static List<ManagementOption> query(String workspace, String nodeType, String labelProperty) throws RepositoryException {
+        List<ManagementOption> options = new ArrayList<>();
+        NodeIterator ni = QueryUtil.search(workspace, String.format(QUERY, nodeType));
+        while (ni.hasNext()) {
+            options.add(toOption(ni.nextNode(), labelProperty));
+        }
+        return options;
+    }
+
+    static ManagementOption toOption(Node node, String labelProperty) throws RepositoryException {
+        String label = StringUtils.isBlank(labelProperty) ? node.getName() : PropertyUtil.getString(node, labelProperty, node.getName());
+        return new ManagementOption(label, node.getIdentifier(), node.getPath());
+    }
+}
@@ -33,16 +33,13 @@
  */
 package org.ui.field;
 
-import info.magnolia.security.app.dialog.field.property.ManagementFieldTransformer;
-import info.magnolia.ui.form.field.definition.TwinColSelectFieldDefinition;
-import info.magnolia.ui.form.field.transformer.Transformer;
-
 /**
  * A definition for the Tag Management field.
  */
-public class TagManagementFieldDefinition extends TwinColSelectFieldDefinition {
-    @SuppressWarnings("unchecked")
+public class TagManagementFieldDefinition extends ManagementFieldDefinition {
     public TagManagementFieldDefinition() {
-        setTransformerClass((Class<? extends Transformer<?>>) (Object) ManagementFieldTransformer.class);
+        setRepository("tags");
+        setNodeType("mgnl:tag");
+        setAssignmentNodeName("tags");
     }
 }
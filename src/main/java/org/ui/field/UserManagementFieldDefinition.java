@@ -33,16 +33,13 @@
  */
 package org.ui.field;
 
-import info.magnolia.security.app.dialog.field.property.ManagementFieldTransformer;
-import info.magnolia.ui.form.field.definition.TwinColSelectFieldDefinition;
-import info.magnolia.ui.form.field.transformer.Transformer;
-
 /**
  * A definition for the User Management field.
  */
-public class UserManagementFieldDefinition extends TwinColSelectFieldDefinition {
-    @SuppressWarnings("unchecked")
+public class UserManagementFieldDefinition extends ManagementFieldDefinition {
     public UserManagementFieldDefinition() {
-        setTransformerClass((Class<? extends Transformer<?>>) (Object) ManagementFieldTransformer.class);
+        setRepository("users");
+        setNodeType("mgnl:user");
+        setAssignmentNodeName("users");
     }
 }
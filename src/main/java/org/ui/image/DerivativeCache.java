@@ -0,0 +1,161 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory of image derivatives bounded by total size, evicting the least recently served files first.
+ * Files found at startup are taken over in the order of their last modification.
+ * <p>
+ * Files are handed out already opened, under the same lock as eviction: a file evicted while it is being served is
+ * only unlinked, and remains readable through its open stream.
+ */
+class DerivativeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DerivativeCache.class);
+
+    private final File directory;
+    private final long maxSize;
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+
+    DerivativeCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                delete(file);
+            } else {
+                sizes.put(file.getName(), file.length());
+                size += file.length();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Opens the cached file of the given name, marking it as recently used; <code>null</code> if it isn't cached.
+     * The caller must close the stream.
+     */
+    synchronized FileInputStream open(String name) {
+        Long length = sizes.get(name);
+        if (length == null) {
+            return null;
+        }
+        try {
+            return new FileInputStream(new File(directory, name));
+        } catch (FileNotFoundException e) {
+            sizes.remove(name);
+            size -= length;
+            return null;
+        }
+    }
+
+    /**
+     * Returns a new temporary file to write a derivative to, before {@link #put(String, File) putting} it.
+     */
+    File createTempFile() throws IOException {
+        return File.createTempFile("derivative", ".tmp", directory);
+    }
+
+    /**
+     * Moves the given temporary file to the cache under the given name, evicts old files if the cache is full, and
+     * opens the cached file. The caller must close the stream.
+     */
+    synchronized FileInputStream put(String name, File temp) throws IOException {
+        File file = new File(directory, name);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long previous = sizes.put(name, file.length());
+        size += file.length() - (previous == null ? 0 : previous);
+        FileInputStream in = new FileInputStream(file);
+        evict();
+        return in;
+    }
+
+    synchronized void clear() {
+        for (String name : sizes.keySet()) {
+            delete(new File(directory, name));
+        }
+        sizes.clear();
+        size = 0;
+    }
+
+    synchronized int getCount() {
+        return sizes.size();
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        // keeps the newest file even if it alone exceeds the bound, it is about to be served
+        while (size > maxSize && sizes.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            size -= entry.getValue();
+            delete(new File(directory, entry.getKey()));
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            log.warn("Cannot delete image derivative [{}].", file);
+        }
+    }
+}
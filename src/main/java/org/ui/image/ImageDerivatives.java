@@ -0,0 +1,516 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.image;
+
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.init.MagnoliaConfigurationProperties;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.resourceloader.Resource;
+import info.magnolia.resourceloader.ResourceOrigin;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resized, recompressed variants of the images of the module, generated on first request and kept in a
+ * {@link DerivativeCache} on disk.
+ * <p>
+ * Sources are either web resources below {@link #RESOURCES_ROOT}, named <code>resources/ui/webresources/img/header.jpg</code>,
+ * or DAM assets, named <code>dam/&lt;identifier&gt;</code> and read with the session of the current user; derivatives
+ * of assets served to authenticated users are marked as not {@link Derivative#isShared() shared}. Requested
+ * widths are rounded up to the next of the configured buckets, and never exceed the width of the source. WebP is
+ * written to clients accepting it when an ImageIO WebP writer is installed, JPEG otherwise; PNG and GIF sources stay PNG.
+ * <p>
+ * Configured by the <code>ui.images.cacheDirectory</code>, <code>ui.images.cacheSize</code> (MB),
+ * <code>ui.images.widths</code> and <code>ui.images.quality</code> Magnolia properties.
+ */
+@Singleton
+public class ImageDerivatives {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageDerivatives.class);
+
+    public static final String RESOURCES = "resources";
+    public static final String DAM = "dam";
+    public static final String RESOURCES_ROOT = "/ui/webresources/";
+
+    private static final String DAM_WORKSPACE = "dam";
+    private static final String JCR_ASSET_PREFIX = "jcr:";
+    private static final String WEBP_MIME_TYPE = "image/webp";
+    private static final String[] IMAGE_EXTENSIONS = { "jpg", "jpeg", "png", "gif" };
+
+    private final int[] widths;
+    private final float quality;
+    private final DerivativeCache cache;
+    private final boolean webpSupported;
+    private final Semaphore generating = new Semaphore(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> sourceWidths = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A derivative on disk, opened for serving; it must be closed.
+     */
+    public static final class Derivative implements Closeable {
+        private final FileInputStream in;
+        private final long length;
+        private final String contentType;
+        private final String version;
+        private final boolean shared;
+
+        private Derivative(FileInputStream in, String contentType, Source source) throws IOException {
+            this.in = in;
+            this.length = in.getChannel().size();
+            this.contentType = contentType;
+            this.version = source.version;
+            this.shared = source.shared;
+        }
+
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Current version of the source, as passed in the <code>v</code> parameter of derivative urls.
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Whether anonymous visitors may read the source too, so that shared caches may keep the derivative.
+         */
+        public boolean isShared() {
+            return shared;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    @Inject
+    public ImageDerivatives(MagnoliaConfigurationProperties properties) {
+        this.widths = parseWidths(StringUtils.defaultIfBlank(properties.getProperty("ui.images.widths"), "320,640,960,1280,1920"));
+        this.quality = NumberUtils.toFloat(properties.getProperty("ui.images.quality"), 0.8f);
+        String directory = properties.getProperty("ui.images.cacheDirectory");
+        if (StringUtils.isBlank(directory)) {
+            String cacheRoot = StringUtils.defaultIfBlank(properties.getProperty("magnolia.cache.startdir"), System.getProperty("java.io.tmpdir"));
+            directory = new File(cacheRoot, "ui-images").getPath();
+        }
+        this.cache = new DerivativeCache(new File(directory), NumberUtils.toLong(properties.getProperty("ui.images.cacheSize"), 256) * 1024 * 1024);
+        this.webpSupported = ImageIO.getImageWritersByMIMEType(WEBP_MIME_TYPE).hasNext();
+    }
+
+    public void start() {
+        try {
+            cache.open();
+        } catch (IOException e) {
+            log.error("Cannot open the image derivative cache, images won't be resized.", e);
+        }
+    }
+
+    public void stop() {
+        sourceWidths.clear();
+    }
+
+    /**
+     * Returns the derivative of the given source for the given width, generating it if needed; <code>null</code> if there is no such image.
+     */
+    public Derivative get(String sourceName, int width, boolean acceptsWebp) throws IOException, RepositoryException {
+        Source source = resolve(sourceName);
+        if (source == null) {
+            return null;
+        }
+        String format = acceptsWebp && webpSupported ? "webp" : source.format;
+        String name = name(sourceName, source.version, bucket(width), format);
+        FileInputStream in = cache.open(name);
+        if (in != null) {
+            hits.increment();
+            return derivative(in, format, source);
+        }
+        misses.increment();
+        Object lock = locks.computeIfAbsent(name, k -> new Object());
+        try {
+            synchronized (lock) {
+                // generated by another request meanwhile
+                in = cache.open(name);
+                if (in == null) {
+                    in = generate(source, bucket(width), format, name);
+                }
+            }
+        } finally {
+            locks.remove(name, lock);
+        }
+        return in == null ? null : derivative(in, format, source);
+    }
+
+    /**
+     * Returns the url of the derivative of the given source for the given width, including the version of the source.
+     */
+    public String url(String sourceName, int width) {
+        Source source = resolveQuietly(sourceName);
+        String url = MgnlContext.getContextPath() + ImageServlet.PATH + bucket(width) + "/" + sourceName;
+        return source == null ? url : url + "?v=" + source.version;
+    }
+
+    /**
+     * Returns the <code>srcset</code> attribute value listing the derivatives of the given source, up to its own width.
+     */
+    public String srcset(String sourceName) {
+        Source source = resolveQuietly(sourceName);
+        if (source == null) {
+            return null;
+        }
+        int sourceWidth = sourceWidth(sourceName, source);
+        StringBuilder srcset = new StringBuilder();
+        for (int width : widths) {
+            if (srcset.length() > 0) {
+                srcset.append(", ");
+            }
+            int served = sourceWidth > 0 ? Math.min(width, sourceWidth) : width;
+            srcset.append(MgnlContext.getContextPath()).append(ImageServlet.PATH).append(width).append('/').append(sourceName)
+                    .append("?v=").append(source.version).append(' ').append(served).append('w');
+            if (sourceWidth > 0 && width >= sourceWidth) {
+                break;
+            }
+        }
+        return srcset.toString();
+    }
+
+    /**
+     * Returns the source name of a DAM asset from its item key, e.g. <code>jcr:&lt;identifier&gt;</code>; <code>null</code> for other providers.
+     */
+    public static String damSource(String itemKey) {
+        return StringUtils.startsWith(itemKey, JCR_ASSET_PREFIX) ? DAM + "/" + itemKey.substring(JCR_ASSET_PREFIX.length()) : null;
+    }
+
+    /**
+     * Returns the source name of a web resource, e.g. <code>/ui/webresources/img/header.jpg</code>.
+     */
+    public static String resourceSource(String path) {
+        return RESOURCES + (path.startsWith("/") ? path : "/" + path);
+    }
+
+    /**
+     * Rounds the given width up to the next bucket, or down to the largest one.
+     */
+    public int bucket(int width) {
+        for (int bucket : widths) {
+            if (width <= bucket) {
+                return bucket;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int getCachedCount() {
+        return cache.getCount();
+    }
+
+    public long getCachedSize() {
+        return cache.getSize();
+    }
+
+    public boolean isWebpSupported() {
+        return webpSupported;
+    }
+
+    private static Derivative derivative(FileInputStream in, String format, Source source) throws IOException {
+        try {
+            return new Derivative(in, contentType(format), source);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private FileInputStream generate(Source source, int width, String format, String name) throws IOException, RepositoryException {
+        generating.acquireUninterruptibly();
+        try {
+            BufferedImage image;
+            try (InputStream in = source.open()) {
+                image = ImageIO.read(in);
+            }
+            if (image == null) {
+                return null;
+            }
+            BufferedImage scaled = scale(image, Math.min(width, image.getWidth()), !"png".equals(format));
+            File temp = cache.createTempFile();
+            try {
+                write(scaled, format, temp);
+                return cache.put(name, temp);
+            } finally {
+                if (temp.exists() && !temp.delete()) {
+                    log.debug("Cannot delete [{}].", temp);
+                }
+            }
+        } finally {
+            generating.release();
+        }
+    }
+
+    /**
+     * Halves the image until it is less than twice the target width, then scales it to the target width: bilinear
+     * steps of at most one half keep the quality of a bicubic downscale at a fraction of its cost.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            int nextWidth = Math.max(width, currentWidth / 2);
+            int nextHeight = Math.max(1, (int) Math.round((double) currentHeight * nextWidth / currentWidth));
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, opaque ? Color.WHITE : null, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+        } while (currentWidth > width);
+        return current;
+    }
+
+    private void write(BufferedImage image, String format, File file) throws IOException {
+        Iterator<ImageWriter> writers = "webp".equals(format) ? ImageIO.getImageWritersByMIMEType(WEBP_MIME_TYPE) : ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + format + ".");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && !"png".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private Source resolveQuietly(String sourceName) {
+        try {
+            return resolve(sourceName);
+        } catch (RepositoryException | RuntimeException e) {
+            log.debug("Cannot resolve image [{}].", sourceName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the source of the given name, or <code>null</code> if it doesn't exist, isn't an image or isn't readable.
+     */
+    private Source resolve(String sourceName) throws RepositoryException {
+        String type = StringUtils.substringBefore(sourceName, "/");
+        String path = "/" + StringUtils.substringAfter(sourceName, "/");
+        if (RESOURCES.equals(type)) {
+            final String extension = StringUtils.lowerCase(StringUtils.substringAfterLast(path, "."));
+            ResourceOrigin<?> origin = Components.getComponent(ResourceOrigin.class);
+            if (!path.startsWith(RESOURCES_ROOT) || path.contains("..") || !Arrays.asList(IMAGE_EXTENSIONS).contains(extension) || !origin.hasPath(path)) {
+                return null;
+            }
+            final Resource resource = origin.getByPath(path);
+            return new Source(Long.toString(resource.getLastModified(), 36), extension, true, resource::openStream);
+        }
+        if (DAM.equals(type)) {
+            Session session = MgnlContext.getJCRSession(DAM_WORKSPACE);
+            String identifier = path.substring(1);
+            Node asset;
+            try {
+                asset = session.getNodeByIdentifier(identifier);
+            } catch (RepositoryException e) {
+                return null;
+            }
+            if (!asset.hasNode(JcrConstants.JCR_CONTENT) || !asset.getNode(JcrConstants.JCR_CONTENT).hasProperty(JcrConstants.JCR_DATA)) {
+                return null;
+            }
+            final Node resource = asset.getNode(JcrConstants.JCR_CONTENT);
+            String extension = StringUtils.lowerCase(StringUtils.defaultIfBlank(resource.hasProperty("extension") ? resource.getProperty("extension").getString() : null,
+                    StringUtils.substringAfterLast(asset.getName(), ".")));
+            Calendar lastModified = NodeTypes.LastModified.getLastModified(asset);
+            String version = Long.toString(lastModified == null ? 0 : lastModified.getTimeInMillis(), 36);
+            // read with the session of the current user: only what anonymous visitors read may be kept by shared caches
+            return new Source(version, extension, isAnonymous(), () -> resource.getProperty(JcrConstants.JCR_DATA).getBinary().getStream());
+        }
+        return null;
+    }
+
+    private static boolean isAnonymous() {
+        User user = MgnlContext.getUser();
+        return user == null || UserManager.ANONYMOUS_USER.equals(user.getName());
+    }
+
+    private interface Opener {
+        InputStream open() throws IOException, RepositoryException;
+    }
+
+    /**
+     * An image to derive variants of.
+     */
+    private static final class Source {
+        private final String version;
+        private final String format;
+        private final boolean shared;
+        private final Opener opener;
+
+        private Source(String version, String extension, boolean shared, Opener opener) {
+            this.version = version;
+            this.format = "png".equals(extension) || "gif".equals(extension) ? "png" : "jpg";
+            this.shared = shared;
+            this.opener = opener;
+        }
+
+        private InputStream open() throws IOException, RepositoryException {
+            return opener.open();
+        }
+    }
+
+    /**
+     * Reads the width of the source from its header, without decoding it; 0 if it cannot be read.
+     */
+    private int sourceWidth(String sourceName, Source source) {
+        return sourceWidths.computeIfAbsent(sourceName + "|" + source.version, key -> {
+            try (InputStream in = source.open(); ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+                if (!readers.hasNext()) {
+                    return 0;
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(stream);
+                    return reader.getWidth(0);
+                } finally {
+                    reader.dispose();
+                }
+            } catch (IOException | RepositoryException e) {
+                log.debug("Cannot read the width of [{}].", sourceName, e);
+                return 0;
+            }
+        });
+    }
+
+    private static String name(String sourceName, String version, int width, String format) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest((sourceName + "|" + version).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return name.append('-').append(width).append('.').append(format).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String contentType(String format) {
+        return "webp".equals(format) ? WEBP_MIME_TYPE : "png".equals(format) ? "image/png" : "image/jpeg";
+    }
+
+    private static int[] parseWidths(String widths) {
+        int[] parsed = Arrays.stream(StringUtils.split(widths, ", ")).mapToInt(NumberUtils::toInt).filter(width -> width > 0).sorted().distinct().toArray();
+        return parsed.length == 0 ? new int[] { 1280 } : parsed;
+    }
+}
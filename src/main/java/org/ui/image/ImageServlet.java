@@ -0,0 +1,100 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.image;
+
+import info.magnolia.objectfactory.Components;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves {@link ImageDerivatives} under <code>/.ui/images/&lt;width&gt;/&lt;source&gt;</code>, mapped by the module descriptor.
+ * Urls carrying the current version of the source (<code>?v=</code>) are cacheable for a year, others for an hour.
+ * Derivatives of sources anonymous visitors may not read are only cacheable by the browser.
+ */
+public class ImageServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageServlet.class);
+
+    public static final String PATH = "/.ui/images/";
+
+    private static final String IMMUTABLE = ", max-age=" + TimeUnit.DAYS.toSeconds(365) + ", immutable";
+    private static final String REVALIDATE = ", max-age=" + TimeUnit.HOURS.toSeconds(1);
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = StringUtils.substringAfter(request.getRequestURI(), PATH);
+        int width = NumberUtils.toInt(StringUtils.substringBefore(path, "/"));
+        String source = StringUtils.substringAfter(path, "/");
+        if (width <= 0 || StringUtils.isEmpty(source)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ImageDerivatives derivatives = Components.getComponent(ImageDerivatives.class);
+        ImageDerivatives.Derivative derivative;
+        try {
+            derivative = derivatives.get(source, width, StringUtils.contains(request.getHeader("Accept"), "image/webp"));
+        } catch (RepositoryException | IOException e) {
+            log.error("Cannot generate the {}px derivative of [{}].", width, source, e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        if (derivative == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            // an outdated version must not be pinned for a year to the current derivative
+            boolean current = derivative.getVersion().equals(request.getParameter("v"));
+            response.setHeader("Cache-Control", (derivative.isShared() ? "public" : "private") + (current ? IMMUTABLE : REVALIDATE));
+            response.setHeader("Vary", "Accept");
+            response.setContentType(derivative.getContentType());
+            response.setContentLength((int) derivative.getLength());
+            IOUtils.copy(derivative.getInputStream(), response.getOutputStream());
+        } finally {
+            derivative.close();
+        }
+    }
+}
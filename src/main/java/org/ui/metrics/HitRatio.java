@@ -0,0 +1,76 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Hit ratio of a cache, read from the counters the cache already keeps.
+ */
+public final class HitRatio implements HitRatioMXBean {
+
+    private final String name;
+    private final LongSupplier hits;
+    private final LongSupplier misses;
+
+    HitRatio(String name, LongSupplier hits, LongSupplier misses) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.getAsLong();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.getAsLong();
+    }
+
+    /**
+     * Returns the fraction of lookups which were hits, or 1 if there was no lookup yet.
+     */
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.getAsLong();
+        long lookups = hitCount + misses.getAsLong();
+        return lookups == 0 ? 1 : (double) hitCount / lookups;
+    }
+}
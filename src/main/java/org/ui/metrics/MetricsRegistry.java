@@ -0,0 +1,229 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timers, counters and cache hit ratios of the hot paths of the module.
+ * <p>
+ * Metrics are created on first use and kept for the lifetime of the registry, so callers look them up once and keep
+ * them in a field. While started, each metric is registered as an MXBean named <code>org.ui:type=&lt;Type&gt;,name=&lt;name&gt;</code>,
+ * and timer percentiles move to a new window every {@link #getWindow()} milliseconds. {@link #writeText(Appendable)}
+ * renders all of them in the Prometheus text format, for the {@link MetricsServlet}.
+ */
+@Singleton
+public class MetricsRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final String DOMAIN = "org.ui";
+    private static final String PREFIX = "ui_";
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+    private long window = 60000;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HitRatio> hitRatios = new ConcurrentHashMap<>();
+    private ScheduledExecutorService rotator;
+    private MBeanServer mbeanServer;
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> register("Timer", key, new Timer(key)));
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter(key)));
+    }
+
+    /**
+     * Exposes the hit ratio of a cache from its hit and miss counters. A ratio registered again under the same name replaces the previous one.
+     */
+    public HitRatio hitRatio(String name, LongSupplier hits, LongSupplier misses) {
+        HitRatio hitRatio = new HitRatio(name, hits, misses);
+        synchronized (this) {
+            if (hitRatios.put(name, hitRatio) != null) {
+                unregister("HitRatio", name);
+            }
+            register("HitRatio", name, hitRatio);
+        }
+        return hitRatio;
+    }
+
+    /**
+     * Registers the MXBeans and starts rotating the timer windows.
+     */
+    public synchronized void start() {
+        if (rotator != null) {
+            return;
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        timers.forEach((name, timer) -> register("Timer", name, timer));
+        counters.forEach((name, counter) -> register("Counter", name, counter));
+        hitRatios.forEach((name, hitRatio) -> register("HitRatio", name, hitRatio));
+        rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ui-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rotator.scheduleAtFixedRate(this::rotate, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Unregisters the MXBeans. Metrics keep counting, so they are exposed again on the next start.
+     */
+    public synchronized void stop() {
+        if (rotator == null) {
+            return;
+        }
+        rotator.shutdownNow();
+        rotator = null;
+        timers.keySet().forEach(name -> unregister("Timer", name));
+        counters.keySet().forEach(name -> unregister("Counter", name));
+        hitRatios.keySet().forEach(name -> unregister("HitRatio", name));
+        mbeanServer = null;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format, durations in seconds.
+     */
+    public void writeText(Appendable out) throws IOException {
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            String name = PREFIX + sanitize(timer.getName()) + "_seconds";
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(Double.toString(quantile)).append("\"} ")
+                        .append(seconds(timer.getPercentile(quantile))).append('\n');
+            }
+            out.append(name).append("_sum ").append(seconds(timer.getTotalNanos())).append('\n');
+            out.append(name).append("_count ").append(Long.toString(timer.getCount())).append('\n');
+            // a family of its own, not a series of the summary
+            writeCounter(out, PREFIX + sanitize(timer.getName()) + "_errors_total", timer.getErrorCount());
+        }
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            writeCounter(out, PREFIX + sanitize(counter.getName()) + "_total", counter.getCount());
+        }
+        for (Map.Entry<String, HitRatio> entry : new TreeMap<>(hitRatios).entrySet()) {
+            String name = PREFIX + sanitize(entry.getKey());
+            HitRatio hitRatio = entry.getValue();
+            writeCounter(out, name + "_hits_total", hitRatio.getHitCount());
+            writeCounter(out, name + "_misses_total", hitRatio.getMissCount());
+            out.append("# TYPE ").append(name).append("_hit_ratio gauge\n");
+            out.append(name).append("_hit_ratio ").append(Double.toString(hitRatio.getHitRatio())).append('\n');
+        }
+    }
+
+    private static void writeCounter(Appendable out, String name, long count) throws IOException {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(Long.toString(count)).append('\n');
+    }
+
+    /**
+     * Length of the windows timer percentiles are computed over, in milliseconds.
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    private void rotate() {
+        try {
+            timers.values().forEach(Timer::rotate);
+        } catch (RuntimeException e) {
+            log.error("Cannot rotate the timer windows.", e);
+        }
+    }
+
+    private synchronized <T> T register(String type, String name, T metric) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName objectName = objectName(type, name);
+                if (!mbeanServer.isRegistered(objectName)) {
+                    mbeanServer.registerMBean(metric, objectName);
+                }
+            } catch (JMException e) {
+                log.warn("Cannot register {} [{}] in JMX.", type, name, e);
+            }
+        }
+        return metric;
+    }
+
+    private synchronized void unregister(String type, String name) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName objectName = objectName(type, name);
+                if (mbeanServer.isRegistered(objectName)) {
+                    mbeanServer.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                log.warn("Cannot unregister {} [{}] from JMX.", type, name, e);
+            }
+        }
+    }
+
+    private static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count and latency distribution of an operation. Meant to be used without allocating on the timed path:
+ *
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ *
+ * Counts and totals cover the lifetime of the timer. Percentiles cover the last complete window of the
+ * {@link MetricsRegistry}, so they follow recent latencies rather than the average since startup.
+ */
+public final class Timer implements TimerMXBean {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final LatencyHistogram[] histograms = { new LatencyHistogram(), new LatencyHistogram() };
+    private volatile int current;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since the given {@link #start()}.
+     */
+    public void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    public void record(long nanos) {
+        histograms[current].record(nanos);
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Counts a failed call, on top of its duration.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Starts a new window: the histogram of the one just finished is kept for the percentiles, the older one is reused.
+     */
+    void rotate() {
+        int next = 1 - current;
+        histograms[next].reset();
+        current = next;
+    }
+
+    /**
+     * Returns the given percentile (0 to 1) of the last complete window, in nanoseconds.
+     */
+    public long getPercentile(double fraction) {
+        return histograms[1 - current].getValueAtPercentile(fraction);
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getTotalTime() {
+        return total.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanTime() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : total.sum() / NANOS_PER_MILLI / calls;
+    }
+
+    @Override
+    public double getMaxTime() {
+        return max.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get50thPercentile() {
+        return getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get95thPercentile() {
+        return getPercentile(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentile() {
+        return getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+}
@@ -47,6 +47,11 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.ui.metrics.MetricsRegistry;
+import org.ui.metrics.Timer;
+import org.ui.site.SiteResolver;
 
 /**
  * Resolver of user (profile, registration pages) links.
@@ -62,17 +67,26 @@ public class DefaultUserLinksResolver implements UserLinksResolver {
     private final Provider<WebContext> webContextProvider;
     private final Provider<AggregationState> aggregationStateProvider;
     private final TemplatingFunctions templatingFunctions;
+    private final PageLinkCache pageLinkCache;
+    private final TemplatePageIndex templatePageIndex;
+    private final SiteResolver siteResolver;
+    private final Timer resolveTimer;
 
     @Inject
-    public DefaultUserLinksResolver(Provider<WebContext> webContextProvider, Provider<AggregationState> aggregationStateProvider, TemplatingFunctions templatingFunctions) {
+    public DefaultUserLinksResolver(Provider<WebContext> webContextProvider, Provider<AggregationState> aggregationStateProvider, TemplatingFunctions templatingFunctions, PageLinkCache pageLinkCache, TemplatePageIndex templatePageIndex, MetricsRegistry metricsRegistry,
+            SiteResolver siteResolver) {
         this.webContextProvider = webContextProvider;
         this.aggregationStateProvider = aggregationStateProvider;
         this.templatingFunctions = templatingFunctions;
+        this.pageLinkCache = pageLinkCache;
+        this.templatePageIndex = templatePageIndex;
+        this.siteResolver = siteResolver;
+        this.resolveTimer = metricsRegistry.timer("links.resolve");
     }
 
     @Override
     public boolean useForCurrentPage() throws RepositoryException {
-        return this.findPage(loginPageTemplateId) != null;
+        return this.findPageLink(loginPageTemplateId).exists();
     }
 
     @Override
@@ -83,17 +97,17 @@ public class DefaultUserLinksResolver implements UserLinksResolver {
 
     @Override
     public String getProfilePageLink() throws RepositoryException {
-        return profilePageTemplateId == null ? null : templatingFunctions.link(this.findPage(profilePageTemplateId));
+        return profilePageTemplateId == null ? null : this.findPageLink(profilePageTemplateId).getLink();
     }
 
     @Override
     public String getRegistrationPageLink() throws RepositoryException {
-        return registrationPageTemplateId == null ? null : templatingFunctions.link(this.findPage(registrationPageTemplateId));
+        return registrationPageTemplateId == null ? null : this.findPageLink(registrationPageTemplateId).getLink();
     }
 
     @Override
     public String getLoginPageLink() throws RepositoryException {
-        return templatingFunctions.link(this.findPage(loginPageTemplateId));
+        return this.findPageLink(loginPageTemplateId).getLink();
     }
 
     @Override
@@ -102,8 +116,43 @@ public class DefaultUserLinksResolver implements UserLinksResolver {
     }
 
     protected Node findPage(String templateId) throws RepositoryException {
-        List<javax.jcr.Node> profilePages = templatingFunctions.contentListByTemplateIds(templatingFunctions.siteRoot(aggregationStateProvider.get().getMainContentNode(), rootTemplateType), Collections.singleton(templateId), 1, null, null);
-        return profilePages.size() == 0 ? null : profilePages.get(0);
+        PageLink pageLink = this.findPageLink(templateId);
+        if (!pageLink.exists()) {
+            return null;
+        }
+        Session session = aggregationStateProvider.get().getMainContentNode().getSession();
+        return session.nodeExists(pageLink.getPath()) ? session.getNode(pageLink.getPath()) : null;
+    }
+
+    /**
+     * Returns the page of the given template in the current site readable by the current user, from the
+     * {@link PageLinkCache} once it has been looked up.
+     */
+    protected PageLink findPageLink(final String templateId) throws RepositoryException {
+        long start = resolveTimer.start();
+        try {
+            final Node siteRoot = findSiteRoot(aggregationStateProvider.get().getMainContentNode());
+            return pageLinkCache.get(siteRoot, templateId, templatingFunctions.language(), root -> {
+                if (templatePageIndex.isReady()) {
+                    return templatePageIndex.findPage(root, templateId);
+                }
+                List<javax.jcr.Node> profilePages = templatingFunctions.contentListByTemplateIds(root, Collections.singleton(templateId), 1, null, null);
+                return profilePages.size() == 0 ? null : profilePages.get(0);
+            }, templatingFunctions::link);
+        } catch (RepositoryException | RuntimeException e) {
+            resolveTimer.error();
+            throw e;
+        } finally {
+            resolveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns the root of the site mapping the given page, or the closest ancestor of the {@link #getRootTemplateType() root template type}.
+     */
+    protected Node findSiteRoot(Node page) throws RepositoryException {
+        Node siteRoot = DefaultTemplateTypes.SITE_ROOT.equals(rootTemplateType) ? siteResolver.getSiteRoot(page) : null;
+        return siteRoot != null ? siteRoot : templatingFunctions.siteRoot(page, rootTemplateType);
     }
 
     public String getProfilePageTemplateId() {
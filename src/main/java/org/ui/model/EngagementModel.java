@@ -0,0 +1,115 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ui.engagement.Engagement;
+import org.ui.engagement.EngagementCounters;
+
+/**
+ * Model exposing the engagement counters of a moderator node to templates, and counting a view on each render.
+ *
+ * The moderator is named by the <code>moderator</code> property of the content, or else by the <code>moderator</code>
+ * parameter of the definition, e.g. <code>Tax</code> for <code>moderator:/Tax</code>.
+ */
+public class EngagementModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private static final String MODERATOR = "moderator";
+
+    private final EngagementCounters engagementCounters;
+    private final String moderatorPath;
+
+    @Inject
+    public EngagementModel(Node content, RD definition, RenderingModel<?> parent, EngagementCounters engagementCounters) {
+        super(content, definition, parent);
+
+        this.engagementCounters = engagementCounters;
+        Object parameter = definition.getParameters().get(MODERATOR);
+        this.moderatorPath = toPath(PropertyUtil.getString(content, MODERATOR, parameter == null ? null : parameter.toString()));
+    }
+
+    @Override
+    public String execute() {
+        if (moderatorPath != null) {
+            engagementCounters.increment(moderatorPath, Engagement.VIEWS);
+        }
+        return super.execute();
+    }
+
+    public String getModerator() {
+        return moderatorPath == null ? null : StringUtils.substringAfterLast(moderatorPath, "/");
+    }
+
+    public long getViews() {
+        return getCount(getModerator(), Engagement.VIEWS.name());
+    }
+
+    public long getLikes() {
+        return getCount(getModerator(), Engagement.LIKES.name());
+    }
+
+    public long getComments() {
+        return getCount(getModerator(), Engagement.COMMENTS.name());
+    }
+
+    /**
+     * Returns a counter of any moderator, e.g. <code>model.getCount("Careers", "LIKES")</code>; 0 if either is unknown.
+     */
+    public long getCount(String moderator, String engagement) {
+        String path = toPath(moderator);
+        if (path == null || StringUtils.isBlank(engagement)) {
+            return 0;
+        }
+        try {
+            return engagementCounters.get(path, Engagement.valueOf(StringUtils.upperCase(engagement)));
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private static String toPath(String moderator) {
+        if (StringUtils.isBlank(moderator)) {
+            return null;
+        }
+        return moderator.startsWith("/") ? moderator : "/" + moderator;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+import info.magnolia.templating.functions.TemplatingFunctions;
+
+import java.util.Collections;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ui.feed.FeedPage;
+import org.ui.feed.TagFeedIndex;
+import org.ui.field.AssignmentSnapshot;
+
+/**
+ * Model serving the personal feed of a homepage from the {@link TagFeedIndex}: the pages sharing any of the tags
+ * assigned to the rendered page and readable by its session, newest first.
+ *
+ * The page size is given by the <code>size</code> parameter of the definition, the following pages by the
+ * <code>feedAfter</code> request parameter, set to the {@link FeedPage#getNextCursor() cursor} of the previous page.
+ */
+public class FeedModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedModel.class);
+
+    public static final String CURSOR_PARAMETER = "feedAfter";
+
+    private static final int DEFAULT_SIZE = 10;
+    private static final int MAX_SIZE = 100;
+
+    private final TemplatingFunctions templatingFunctions;
+    private final TagFeedIndex feedIndex;
+    private FeedPage feed;
+
+    @Inject
+    public FeedModel(Node content, RD definition, RenderingModel<?> parent, TemplatingFunctions templatingFunctions, TagFeedIndex feedIndex) {
+        super(content, definition, parent);
+
+        this.templatingFunctions = templatingFunctions;
+        this.feedIndex = feedIndex;
+    }
+
+    /**
+     * Returns the page of the feed following the cursor of the request.
+     */
+    public FeedPage getFeed() {
+        if (feed == null) {
+            Object size = getDefinition().getParameters().get("size");
+            int limit = Math.min(MAX_SIZE, Math.max(1, NumberUtils.toInt(size == null ? null : size.toString(), DEFAULT_SIZE)));
+            Node page = templatingFunctions.page(content);
+            Session session = getSession();
+            // no session, no subscriptions: nothing can be checked for access
+            Set<String> tags = session == null ? Collections.<String>emptySet() : getSubscriptions(page);
+            feed = feedIndex.getFeed(tags, MgnlContext.getParameter(CURSOR_PARAMETER), limit, getIdentifier(page), session);
+        }
+        return feed;
+    }
+
+    public String getCursorParameter() {
+        return CURSOR_PARAMETER;
+    }
+
+    /**
+     * Returns the identifiers of the tags the feed is subscribed to.
+     */
+    private Set<String> getSubscriptions(Node page) {
+        if (page == null) {
+            return Collections.emptySet();
+        }
+        try {
+            return AssignmentSnapshot.read(page, TagFeedIndex.TAGS).getIdentifiers();
+        } catch (RepositoryException e) {
+            log.warn("Cannot read the tags of the feed page.", e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Returns the session the page is rendered with, which the entries of the feed must be readable by.
+     */
+    private Session getSession() {
+        try {
+            return content.getSession();
+        } catch (RepositoryException e) {
+            log.warn("Cannot get the session of the feed page.", e);
+            return null;
+        }
+    }
+
+    private static String getIdentifier(Node page) {
+        try {
+            return page == null ? null : page.getIdentifier();
+        } catch (RepositoryException e) {
+            return null;
+        }
+    }
+}
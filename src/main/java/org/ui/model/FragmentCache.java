@@ -0,0 +1,295 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rendered markup of component subtrees, keyed by component identifier, last modification and locale.
+ * <p>
+ * A fragment holds the output of its component and of all components below it, so a change anywhere in the subtree
+ * drops it: events of the <code>website</code> workspace drop the fragments of every ancestor of the changed item.
+ * The cache holds at most {@link #getMaxSize()} characters and evicts the least recently used fragments first. Keys
+ * have no user dimension: only markup rendered for anonymous visitors is stored, see {@link FragmentCacheModel}.
+ */
+@Singleton
+public class FragmentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FragmentCache.class);
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+
+    private long maxSize = 4000000;
+
+    private final LinkedHashMap<Key, Fragment> fragments = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Set<Key>> keysByPath = new HashMap<>();
+    private long size;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile WorkspaceEventListenerRegistration.Handle registration;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Returns the markup cached for the given component, or <code>null</code>.
+     */
+    public String get(String identifier, long lastModified, String locale) {
+        if (registration == null) {
+            misses.increment();
+            return null;
+        }
+        Fragment fragment;
+        synchronized (this) {
+            fragment = fragments.get(new Key(identifier, lastModified, locale));
+        }
+        if (fragment == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return fragment.markup;
+    }
+
+    /**
+     * Caches the markup of the component at the given path, unless its subtree changed since the given {@link #getGeneration() generation}.
+     */
+    public void put(String identifier, long lastModified, String locale, String path, String markup, long generation) {
+        if (registration == null || markup.length() > maxSize) {
+            return;
+        }
+        Key key = new Key(identifier, lastModified, locale);
+        synchronized (this) {
+            // rendered while the site changed, the markup might be stale
+            if (generation != this.generation.get()) {
+                return;
+            }
+            remove(key);
+            fragments.put(key, new Fragment(path, markup));
+            keysByPath.computeIfAbsent(path, k -> new HashSet<>()).add(key);
+            size += markup.length();
+            Iterator<Map.Entry<Key, Fragment>> eldest = fragments.entrySet().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                Map.Entry<Key, Fragment> entry = eldest.next();
+                eldest.remove();
+                unindex(entry.getKey(), entry.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the fragments of the item at the given path and of all its ancestors.
+     */
+    public synchronized void invalidate(String path) {
+        generation.incrementAndGet();
+        for (String ancestor = path; StringUtils.isNotEmpty(ancestor); ancestor = StringUtils.substringBeforeLast(ancestor, "/")) {
+            Set<Key> keys = keysByPath.remove(ancestor);
+            if (keys != null) {
+                for (Key key : keys) {
+                    Fragment fragment = fragments.remove(key);
+                    if (fragment != null) {
+                        size -= fragment.markup.length();
+                    }
+                }
+            }
+        }
+        invalidations.increment();
+    }
+
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        fragments.clear();
+        keysByPath.clear();
+        size = 0;
+        invalidations.increment();
+    }
+
+    /**
+     * Starts observing the <code>website</code> workspace; until then nothing is cached.
+     */
+    public synchronized void start() {
+        if (registration != null) {
+            return;
+        }
+        try {
+            registration = WorkspaceEventListenerRegistration.observe(RepositoryConstants.WEBSITE, "/", this::onEvent)
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the [{}] workspace, fragments won't be cached.", RepositoryConstants.WEBSITE, e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", RepositoryConstants.WEBSITE, e);
+            }
+            registration = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Incremented on every invalidation; read before rendering a fragment and passed to {@link #put}.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public synchronized int getCount() {
+        return fragments.size();
+    }
+
+    /**
+     * Characters of markup currently cached.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            try {
+                invalidate(events.nextEvent().getPath());
+            } catch (RepositoryException e) {
+                log.warn("Cannot read the path of a [{}] event, dropping all fragments.", RepositoryConstants.WEBSITE, e);
+                invalidate();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Fragment previous = fragments.remove(key);
+        if (previous != null) {
+            unindex(key, previous);
+        }
+    }
+
+    private void unindex(Key key, Fragment fragment) {
+        size -= fragment.markup.length();
+        Set<Key> keys = keysByPath.get(fragment.path);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByPath.remove(fragment.path);
+        }
+    }
+
+    private static final class Fragment {
+        private final String path;
+        private final String markup;
+
+        private Fragment(String path, String markup) {
+            this.path = path;
+            this.markup = markup;
+        }
+    }
+
+    private static final class Key {
+        private final String identifier;
+        private final long lastModified;
+        private final String locale;
+
+        private Key(String identifier, long lastModified, String locale) {
+            this.identifier = identifier;
+            this.lastModified = lastModified;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return lastModified == key.lastModified && identifier.equals(key.identifier) && Objects.equals(locale, key.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identifier, lastModified, locale);
+        }
+    }
+}
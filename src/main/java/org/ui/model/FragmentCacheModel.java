@@ -0,0 +1,132 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.cms.security.User;
+import info.magnolia.cms.security.UserManager;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+import info.magnolia.templating.functions.TemplatingFunctions;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+
+/**
+ * Model of components whose rendered subtree is kept in the {@link FragmentCache}. The template wraps its markup,
+ * areas included, in <code>[@model.fragment]...[/@model.fragment]</code>: nested components of the same kind are then
+ * cached both on their own and as part of their parent. Nothing is cached in edit mode, where areas render editor markup.
+ * <p>
+ * Fragments are only cached and served for anonymous visitors: the markup holds whatever the rendering session could
+ * read, so the subtree rendered for an authenticated user, whose roles may grant more, is never shared. Authenticated
+ * users render the subtree themselves.
+ */
+public class FragmentCacheModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private static final Logger log = LoggerFactory.getLogger(FragmentCacheModel.class);
+
+    private final FragmentCache fragmentCache;
+    private final TemplatingFunctions templatingFunctions;
+
+    @Inject
+    public FragmentCacheModel(Node content, RD definition, RenderingModel<?> parent, FragmentCache fragmentCache, TemplatingFunctions templatingFunctions) {
+        super(content, definition, parent);
+
+        this.fragmentCache = fragmentCache;
+        this.templatingFunctions = templatingFunctions;
+    }
+
+    public TemplateDirectiveModel getFragment() {
+        return new FragmentDirective();
+    }
+
+    private static boolean isAnonymous() {
+        User user = MgnlContext.getUser();
+        return user != null && UserManager.ANONYMOUS_USER.equals(user.getName());
+    }
+
+    private class FragmentDirective implements TemplateDirectiveModel {
+
+        @Override
+        public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body) throws TemplateException, IOException {
+            if (body == null) {
+                return;
+            }
+            if (templatingFunctions.isEditMode() || !isAnonymous()) {
+                body.render(env.getOut());
+                return;
+            }
+            String identifier;
+            String path;
+            long lastModified;
+            try {
+                identifier = content.getIdentifier();
+                path = content.getPath();
+                Calendar modified = NodeTypes.LastModified.getLastModified(content);
+                lastModified = modified == null ? 0 : modified.getTimeInMillis();
+            } catch (RepositoryException e) {
+                log.warn("Cannot read the component to render, it won't be cached.", e);
+                body.render(env.getOut());
+                return;
+            }
+            String locale = templatingFunctions.language();
+            String markup = fragmentCache.get(identifier, lastModified, locale);
+            if (markup == null) {
+                long generation = fragmentCache.getGeneration();
+                StringWriter writer = new StringWriter();
+                body.render(writer);
+                markup = writer.toString();
+                fragmentCache.put(identifier, lastModified, locale, path, markup, generation);
+            }
+            env.getOut().write(markup);
+        }
+    }
+}
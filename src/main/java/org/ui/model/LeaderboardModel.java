@@ -0,0 +1,94 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.ui.engagement.EngagementLeaderboard;
+import org.ui.engagement.LeaderboardEntry;
+
+/**
+ * Model serving the precomputed moderator rankings of the {@link EngagementLeaderboard}.
+ *
+ * The default ranking is given by the <code>metric</code> (views, likes, comments, interaction), <code>window</code>
+ * (total, last_hour, last_day) and <code>size</code> parameters of the definition.
+ */
+public class LeaderboardModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private static final int DEFAULT_SIZE = 5;
+
+    private final EngagementLeaderboard leaderboard;
+
+    @Inject
+    public LeaderboardModel(Node content, RD definition, RenderingModel<?> parent, EngagementLeaderboard leaderboard) {
+        super(content, definition, parent);
+
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Returns the ranking configured by the definition parameters.
+     */
+    public List<LeaderboardEntry> getEntries() {
+        return getTop(getParameter("metric"), getParameter("window"), NumberUtils.toInt(getParameter("size"), DEFAULT_SIZE));
+    }
+
+    /**
+     * Returns any ranking, e.g. <code>model.getTop("likes", "last_day", 3)</code>; empty if the metric or window is unknown.
+     */
+    public List<LeaderboardEntry> getTop(String metric, String window, int size) {
+        EngagementLeaderboard.Metric m = EnumUtils.getEnum(EngagementLeaderboard.Metric.class, StringUtils.upperCase(StringUtils.defaultIfBlank(metric, "views")));
+        EngagementLeaderboard.Window w = EnumUtils.getEnum(EngagementLeaderboard.Window.class, StringUtils.upperCase(StringUtils.defaultIfBlank(window, "total")));
+        if (m == null || w == null) {
+            return Collections.emptyList();
+        }
+        return leaderboard.getTop(m, w, size);
+    }
+
+    private String getParameter(String name) {
+        Object value = getDefinition().getParameters().get(name);
+        return value == null ? null : value.toString();
+    }
+}
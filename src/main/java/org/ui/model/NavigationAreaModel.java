@@ -33,6 +33,7 @@
  */
 package org.ui.model;
 
+import info.magnolia.jcr.util.NodeTypes;
 import info.magnolia.rendering.model.RenderingModel;
 import info.magnolia.rendering.model.RenderingModelImpl;
 import info.magnolia.rendering.template.AreaDefinition;
@@ -46,9 +47,10 @@ import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
-import org.apache.commons.lang3.LocaleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ui.site.LocaleResolver;
+import org.ui.site.SiteResolver;
 
 /**
  * Model for the navigation area of the travel demo.
@@ -63,28 +65,33 @@ public class NavigationAreaModel extends RenderingModelImpl<AreaDefinition> {
     private static final String DEMO_ABOUT_TEMPLATE_SUBTYPE = "demo-about";
 
     private UserLinksResolver userLinksResolver;
+    private NavigationLinks links;
 
     private final TemplatingFunctions templatingFunctions;
+    private final NavigationLinksCache navigationLinksCache;
+    private final TemplatePageIndex templatePageIndex;
+    private final SiteResolver siteResolver;
+    private final LocaleResolver localeResolver;
 
     @Inject
-    public NavigationAreaModel(Node content, AreaDefinition definition, RenderingModel<?> parent, TemplatingFunctions templatingFunctions) {
+    public NavigationAreaModel(Node content, AreaDefinition definition, RenderingModel<?> parent, TemplatingFunctions templatingFunctions, NavigationLinksCache navigationLinksCache, TemplatePageIndex templatePageIndex,
+            SiteResolver siteResolver, LocaleResolver localeResolver) {
         super(content, definition, parent);
 
         this.templatingFunctions = templatingFunctions;
+        this.navigationLinksCache = navigationLinksCache;
+        this.templatePageIndex = templatePageIndex;
+        this.siteResolver = siteResolver;
+        this.localeResolver = localeResolver;
     }
 
     public String getAboutDemoLink() {
-        Node siteRoot = templatingFunctions.siteRoot(content);
-        String link = null;
         try {
-            List<Node> nodes = templatingFunctions.contentListByTemplateType(siteRoot, DefaultTemplateTypes.FEATURE, DEMO_ABOUT_TEMPLATE_SUBTYPE);
-            if (nodes.size() > 0) {
-                link = templatingFunctions.link(nodes.get(0));
-            }
+            return this.getLinks().getAboutDemoLink();
         } catch (RepositoryException e) {
-            log.error("Could not get the '{}' page.", DEMO_ABOUT_TEMPLATE_SUBTYPE, e);
+            log.error("Could not resolve the navigation links.", e);
+            return null;
         }
-        return link;
     }
 
     public String getUsername() throws RepositoryException {
@@ -95,31 +102,71 @@ public class NavigationAreaModel extends RenderingModelImpl<AreaDefinition> {
     }
 
     public String getLogoutLink() throws RepositoryException {
-        if (this.getUserLinksResolver() != null) {
-            return this.getUserLinksResolver().getLogoutLink();
-        }
-        return null;
+        return this.getLinks().getLogoutLink();
     }
 
     public String getLoginPageLink() throws RepositoryException {
-        if (this.getUserLinksResolver() != null) {
-            return this.getUserLinksResolver().getLoginPageLink();
-        }
-        return null;
+        return this.getLinks().getLoginPageLink();
     }
 
     public String getRegistrationPageLink() throws RepositoryException {
-        if (this.getUserLinksResolver() != null) {
-            return this.getUserLinksResolver().getRegistrationPageLink();
-        }
-        return null;
+        return this.getLinks().getRegistrationPageLink();
     }
 
     public String getProfilePageLink() throws RepositoryException {
-        if (this.getUserLinksResolver() != null) {
-            return this.getUserLinksResolver().getProfilePageLink();
+        return this.getLinks().getProfilePageLink();
+    }
+
+    /**
+     * Returns the links of the current site, resolved once per model. The about page is shared by all renders of the
+     * same area, site and locale, the user links are resolved from the {@link PageLinkCache}.
+     */
+    public NavigationLinks getLinks() throws RepositoryException {
+        if (links == null) {
+            String aboutDemoLink = this.findAboutDemoLink(this.findSiteRoot());
+            UserLinksResolver resolver = this.getUserLinksResolver();
+            if (resolver == null) {
+                links = new NavigationLinks(aboutDemoLink, null, null, null, null);
+            } else {
+                links = new NavigationLinks(aboutDemoLink, resolver.getLoginPageLink(), resolver.getLogoutLink(), resolver.getRegistrationPageLink(), resolver.getProfilePageLink());
+            }
         }
-        return null;
+        return links;
+    }
+
+    /**
+     * Returns the root of the site mapping the current page, or else its closest site root template ancestor.
+     */
+    private Node findSiteRoot() throws RepositoryException {
+        Node siteRoot = siteResolver.getSiteRoot(content);
+        return siteRoot != null ? siteRoot : templatingFunctions.siteRoot(content);
+    }
+
+    private String findAboutDemoLink(Node siteRoot) {
+        try {
+            if (siteRoot == null) {
+                return null;
+            }
+            return navigationLinksCache.get(this.getAreaKey(), siteRoot, templatingFunctions.language(), this::findAboutDemoPage, templatingFunctions::link).getLink();
+        } catch (RepositoryException e) {
+            log.error("Could not get the '{}' page.", DEMO_ABOUT_TEMPLATE_SUBTYPE, e);
+            return null;
+        }
+    }
+
+    private Node findAboutDemoPage(Node siteRoot) throws RepositoryException {
+        if (templatePageIndex.isReady()) {
+            return templatePageIndex.findPageByType(siteRoot, DefaultTemplateTypes.FEATURE, DEMO_ABOUT_TEMPLATE_SUBTYPE);
+        }
+        List<Node> nodes = templatingFunctions.contentListByTemplateType(siteRoot, DefaultTemplateTypes.FEATURE, DEMO_ABOUT_TEMPLATE_SUBTYPE);
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    /**
+     * Template of the current page and name of the area, as area definitions don't necessarily have an id.
+     */
+    private String getAreaKey() throws RepositoryException {
+        return NodeTypes.Renderable.getTemplate(content) + "/" + this.getDefinition().getName();
     }
 
     private UserLinksResolver getUserLinksResolver() throws RepositoryException {
@@ -136,7 +183,29 @@ public class NavigationAreaModel extends RenderingModelImpl<AreaDefinition> {
         return userLinksResolver;
     }
 
+    /**
+     * Returns the locale of the given language supported by the current site, or else the fallback locale of the site.
+     */
     public Locale getLocale(String language) {
-        return LocaleUtils.toLocale(language);
+        try {
+            return localeResolver.getLocale(content, language);
+        } catch (RepositoryException e) {
+            log.error("Could not resolve the site of the current page.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the locales to look content up in for the given language, most specific first.
+     */
+    public List<Locale> getFallbackLocales(String language) throws RepositoryException {
+        return localeResolver.getFallbackChain(content, language);
+    }
+
+    /**
+     * Returns the locales of the current site.
+     */
+    public List<Locale> getLocales() throws RepositoryException {
+        return localeResolver.getLocales(content);
     }
 }
@@ -0,0 +1,74 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+/**
+ * Immutable snapshot of the links displayed by the navigation area, resolved together once.
+ */
+public final class NavigationLinks {
+
+    private final String aboutDemoLink;
+    private final String loginPageLink;
+    private final String logoutLink;
+    private final String registrationPageLink;
+    private final String profilePageLink;
+
+    public NavigationLinks(String aboutDemoLink, String loginPageLink, String logoutLink, String registrationPageLink, String profilePageLink) {
+        this.aboutDemoLink = aboutDemoLink;
+        this.loginPageLink = loginPageLink;
+        this.logoutLink = logoutLink;
+        this.registrationPageLink = registrationPageLink;
+        this.profilePageLink = profilePageLink;
+    }
+
+    public String getAboutDemoLink() {
+        return aboutDemoLink;
+    }
+
+    public String getLoginPageLink() {
+        return loginPageLink;
+    }
+
+    public String getLogoutLink() {
+        return logoutLink;
+    }
+
+    public String getRegistrationPageLink() {
+        return registrationPageLink;
+    }
+
+    public String getProfilePageLink() {
+        return profilePageLink;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * Site wide cache of the pages linked by navigation areas for every user, keyed by area, site root and locale.
+ * Entries are tied to the {@link PageLinkCache#getGeneration() generation} of the {@link PageLinkCache}, so they
+ * become stale with it whenever the <code>website</code> workspace changes.
+ * <p>
+ * Like the {@link PageLinkCache}, pages are looked up with the system context and only returned when the current
+ * session can read them. The user links depend on the visitor and come from the {@link PageLinkCache} itself.
+ */
+@Singleton
+public class NavigationLinksCache {
+
+    private final PageLinkCache pageLinkCache;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Inject
+    public NavigationLinksCache(PageLinkCache pageLinkCache) {
+        this.pageLinkCache = pageLinkCache;
+    }
+
+    /**
+     * Returns the page found by the given loader below the given site root, for the area of the given key.
+     */
+    public PageLink get(String areaKey, Node siteRoot, String locale, PageLinkCache.Loader loader, PageLinkCache.LinkFunction linkFunction) throws RepositoryException {
+        final String key = areaKey + "|" + siteRoot.getIdentifier() + "|" + locale;
+        final long generation = pageLinkCache.getGeneration();
+        Entry entry = entries.get(key);
+        PageLink link;
+        if (entry != null && entry.generation == generation) {
+            hits.increment();
+            link = entry.link;
+        } else {
+            misses.increment();
+            link = PageLinkCache.loadShared(siteRoot, loader, linkFunction);
+            if (pageLinkCache.isObserving() && generation == pageLinkCache.getGeneration()) {
+                entries.put(key, new Entry(generation, link));
+            }
+        }
+        return PageLinkCache.readable(link, siteRoot, loader, linkFunction);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private static class Entry {
+        private final long generation;
+        private final PageLink link;
+
+        private Entry(long generation, PageLink link) {
+            this.generation = generation;
+            this.link = link;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.context.MgnlContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Site wide cache of the pages (and their links) found by template, so that link resolution doesn't scan the site
+ * tree on every render. Entries are keyed by site root, template id and language, pages which don't exist are
+ * cached too. Any change in the <code>website</code> workspace drops the whole cache, once the {@link TemplatePageIndex}
+ * has applied it: the cache is invalidated from the index's own listener, so it is never reloaded from an index which
+ * is behind. Nothing is cached while the index isn't {@link TemplatePageIndex#isReady() ready}.
+ * <p>
+ * Entries are looked up with the system context, so they don't depend on the visitor who missed them first. A cached
+ * page is only returned if the session of the site root can read it; otherwise the page is looked up again, uncached,
+ * with that session.
+ */
+@Singleton
+public class PageLinkCache {
+
+    private final TemplatePageIndex templatePageIndex;
+    private final ConcurrentMap<String, PageLink> links = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean started;
+    private boolean listening;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @Inject
+    public PageLinkCache(TemplatePageIndex templatePageIndex) {
+        this.templatePageIndex = templatePageIndex;
+    }
+
+    /**
+     * Looks a page up.
+     */
+    public interface Loader {
+        /**
+         * Returns the page below the given site root, read with the session of the root, or <code>null</code> if there is none.
+         */
+        Node load(Node siteRoot) throws RepositoryException;
+    }
+
+    /**
+     * Computes the link of a page.
+     */
+    public interface LinkFunction {
+        String link(Node page) throws RepositoryException;
+    }
+
+    /**
+     * Returns the page of the given template below the given site root, loading it on a cache miss.
+     */
+    public PageLink get(Node siteRoot, String templateId, String language, Loader loader, LinkFunction linkFunction) throws RepositoryException {
+        if (siteRoot == null || !isObserving()) {
+            misses.increment();
+            return PageLink.of(loader.load(siteRoot), linkFunction);
+        }
+        final String key = siteRoot.getIdentifier() + "|" + templateId + "|" + language;
+        PageLink link = links.get(key);
+        if (link != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            final long current = generation.get();
+            link = loadShared(siteRoot, loader, linkFunction);
+            // don't cache what was looked up while the site changed; an invalidation bumps the generation before
+            // clearing, so one racing the put either clears the entry or is seen here and the entry taken back
+            if (current == generation.get() && links.putIfAbsent(key, link) == null && current != generation.get()) {
+                links.remove(key, link);
+            }
+        }
+        return readable(link, siteRoot, loader, linkFunction);
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        links.clear();
+        invalidations.increment();
+    }
+
+    /**
+     * Starts following the changes applied to the {@link TemplatePageIndex}; until then nothing is cached.
+     */
+    public synchronized void start() {
+        if (!listening) {
+            templatePageIndex.addChangeListener(this::invalidate);
+            listening = true;
+        }
+        started = true;
+    }
+
+    public synchronized void stop() {
+        started = false;
+        invalidate();
+    }
+
+    /**
+     * Returns the given shared link if the session of the site root can read its page, otherwise looks the page up
+     * again with that session.
+     */
+    static PageLink readable(PageLink link, Node siteRoot, Loader loader, LinkFunction linkFunction) throws RepositoryException {
+        Session session = siteRoot.getSession();
+        if (!link.exists() || session.itemExists(link.getPath())) {
+            return link;
+        }
+        // hidden from the current user, who may still read another page
+        return PageLink.of(loader.load(siteRoot), linkFunction);
+    }
+
+    /**
+     * Looks the page up below the site root read with the system session.
+     */
+    static PageLink loadShared(final Node siteRoot, final Loader loader, final LinkFunction linkFunction) throws RepositoryException {
+        final String workspace = siteRoot.getSession().getWorkspace().getName();
+        final String identifier = siteRoot.getIdentifier();
+        return MgnlContext.doInSystemContext(new MgnlContext.Op<PageLink, RepositoryException>() {
+            @Override
+            public PageLink exec() throws RepositoryException {
+                return PageLink.of(loader.load(MgnlContext.getJCRSession(workspace).getNodeByIdentifier(identifier)), linkFunction);
+            }
+        });
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Whether the cache follows the changes of the <code>website</code> workspace, i.e. whether anything is cached.
+     */
+    public boolean isObserving() {
+        return started && templatePageIndex.isReady();
+    }
+
+    /**
+     * Incremented on every invalidation, lets dependent caches detect stale entries without observing the workspace again.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public int getSize() {
+        return links.size();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.Context;
+import info.magnolia.context.MgnlContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request scoped memo of the nodes referenced by identifier from rendered content.
+ * <p>
+ * Identifiers are {@link #prefetch(String, Collection) prefetched} in batches, with one query per workspace and
+ * {@link #BATCH_SIZE} identifiers, and both found and missing nodes are remembered until the end of the request. Nodes
+ * are read with the session of the current context, so references the visitor cannot read resolve to <code>null</code>.
+ */
+public final class ReferenceResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceResolver.class);
+
+    private static final String ATTRIBUTE = ReferenceResolver.class.getName();
+    private static final int BATCH_SIZE = 100;
+    private static final Object MISSING = new Object();
+
+    private final Map<String, Map<String, Object>> nodes = new HashMap<>();
+    private final Map<String, Object> values = new HashMap<>();
+    private final Set<String> scanned = new HashSet<>();
+
+    /**
+     * Returns the resolver of the current request, creating it on first use.
+     */
+    public static ReferenceResolver current() {
+        Context context = MgnlContext.getInstance();
+        ReferenceResolver resolver = context.getAttribute(ATTRIBUTE, Context.LOCAL_SCOPE);
+        if (resolver == null) {
+            resolver = new ReferenceResolver();
+            context.setAttribute(ATTRIBUTE, resolver, Context.LOCAL_SCOPE);
+        }
+        return resolver;
+    }
+
+    /**
+     * Marks the given key (e.g. a page and template) as scanned for references, returns <code>false</code> if it already was.
+     */
+    public boolean scan(String key) {
+        return scanned.add(key);
+    }
+
+    /**
+     * Resolves the given identifiers which aren't known yet, with one query per {@link #BATCH_SIZE} of them.
+     */
+    public void prefetch(String workspace, Collection<String> identifiers) {
+        Map<String, Object> known = nodes.computeIfAbsent(workspace, k -> new HashMap<>());
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String identifier : identifiers) {
+            if (StringUtils.isNotBlank(identifier) && !known.containsKey(identifier)) {
+                distinct.add(identifier);
+            }
+        }
+        List<String> unknown = new ArrayList<>(distinct);
+        for (int from = 0; from < unknown.size(); from += BATCH_SIZE) {
+            List<String> batch = unknown.subList(from, Math.min(from + BATCH_SIZE, unknown.size()));
+            try {
+                NodeIterator found = QueryUtil.search(workspace, query(batch));
+                while (found.hasNext()) {
+                    Node node = found.nextNode();
+                    known.put(node.getIdentifier(), node);
+                }
+            } catch (RepositoryException e) {
+                log.warn("Cannot resolve {} references to the [{}] workspace.", batch.size(), workspace, e);
+            }
+            for (String identifier : batch) {
+                known.putIfAbsent(identifier, MISSING);
+            }
+        }
+    }
+
+    /**
+     * Returns the node of the given identifier, resolving it if it wasn't prefetched; <code>null</code> if there is none.
+     */
+    public Node get(String workspace, String identifier) {
+        if (StringUtils.isBlank(identifier)) {
+            return null;
+        }
+        Map<String, Object> known = nodes.get(workspace);
+        Object node = known == null ? null : known.get(identifier);
+        if (node == null) {
+            prefetch(workspace, Collections.singleton(identifier));
+            node = nodes.get(workspace).get(identifier);
+        }
+        return node == MISSING ? null : (Node) node;
+    }
+
+    /**
+     * Returns the value remembered under the given key, computing it on first use; <code>null</code> values are remembered too.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T remember(String key, Supplier<T> supplier) {
+        Object value = values.get(key);
+        if (value == null) {
+            T computed = supplier.get();
+            values.put(key, computed == null ? MISSING : computed);
+            return computed;
+        }
+        return value == MISSING ? null : (T) value;
+    }
+
+    private static String query(List<String> identifiers) {
+        StringBuilder query = new StringBuilder("SELECT * FROM [nt:base] WHERE ");
+        for (int i = 0; i < identifiers.size(); i++) {
+            if (i > 0) {
+                query.append(" OR ");
+            }
+            query.append("[jcr:uuid] = '").append(identifiers.get(i).replace("'", "''")).append('\'');
+        }
+        return query.toString();
+    }
+}
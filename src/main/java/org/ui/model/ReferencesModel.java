@@ -0,0 +1,206 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.dam.api.Asset;
+import info.magnolia.dam.templating.functions.DamTemplatingFunctions;
+import info.magnolia.jcr.util.ContentMap;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+import info.magnolia.repository.RepositoryConstants;
+import info.magnolia.templating.functions.TemplatingFunctions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.ui.image.ImageDerivatives;
+
+/**
+ * Model resolving the category, page and asset references of a component through the {@link ReferenceResolver} of the request.
+ * <p>
+ * The first component of a page to render collects the category and page references of all components of the same
+ * template on the page and resolves them with one query per workspace; the others, and repeated references, are then
+ * memo lookups. Assets are resolved by the DAM provider, once per item key and request.
+ */
+public class ReferencesModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferencesModel.class);
+
+    public static final String CATEGORY_WORKSPACE = "category";
+
+    private static final String CATEGORIES = "categories";
+    private static final String INTERNAL_LINK = "internalLink";
+    private static final String IMAGE = "image";
+
+    private final TemplatingFunctions templatingFunctions;
+    private final DamTemplatingFunctions damTemplatingFunctions;
+    private final ImageDerivatives imageDerivatives;
+    private final ReferenceResolver resolver;
+
+    @Inject
+    public ReferencesModel(Node content, RD definition, RenderingModel<?> parent, TemplatingFunctions templatingFunctions, DamTemplatingFunctions damTemplatingFunctions,
+            ImageDerivatives imageDerivatives) {
+        super(content, definition, parent);
+
+        this.templatingFunctions = templatingFunctions;
+        this.damTemplatingFunctions = damTemplatingFunctions;
+        this.imageDerivatives = imageDerivatives;
+        this.resolver = ReferenceResolver.current();
+    }
+
+    @Override
+    public String execute() {
+        try {
+            List<Node> components = new ArrayList<>();
+            Node page = templatingFunctions.page(content);
+            String template = NodeTypes.Renderable.getTemplate(content);
+            if (page != null && template != null && resolver.scan(page.getIdentifier() + "|" + template)) {
+                collect(page, template, components);
+            }
+            // the component might not be below the page, e.g. when inherited
+            components.add(content);
+            prefetch(components);
+        } catch (RepositoryException e) {
+            log.warn("Cannot collect the references of the page, they will be resolved one by one.", e);
+        }
+        return super.execute();
+    }
+
+    /**
+     * Returns the categories of the component, in order, skipping those which don't exist.
+     */
+    public List<ContentMap> getCategories() {
+        List<ContentMap> categories = new ArrayList<>();
+        for (String identifier : values(content, CATEGORIES)) {
+            Node category = resolver.get(CATEGORY_WORKSPACE, identifier);
+            if (category != null) {
+                categories.add(templatingFunctions.asContentMap(category));
+            }
+        }
+        return categories;
+    }
+
+    /**
+     * Returns the linked page, or <code>null</code>.
+     */
+    public ContentMap getInternalLink() {
+        Node page = resolver.get(RepositoryConstants.WEBSITE, PropertyUtil.getString(content, INTERNAL_LINK));
+        return page == null ? null : templatingFunctions.asContentMap(page);
+    }
+
+    /**
+     * Returns the image asset, or <code>null</code>.
+     */
+    public Asset getImage() {
+        final String itemKey = PropertyUtil.getString(content, IMAGE);
+        if (StringUtils.isBlank(itemKey)) {
+            return null;
+        }
+        return resolver.remember("asset|" + itemKey, () -> damTemplatingFunctions.getAsset(itemKey));
+    }
+
+    /**
+     * Returns the <code>srcset</code> of the resized variants of the image, or <code>null</code> if it isn't a JCR asset.
+     */
+    public String getImageSrcset() {
+        final String source = ImageDerivatives.damSource(PropertyUtil.getString(content, IMAGE));
+        return source == null ? null : resolver.remember("srcset|" + source, () -> imageDerivatives.srcset(source));
+    }
+
+    private void prefetch(List<Node> components) {
+        List<String> categories = new ArrayList<>();
+        List<String> pages = new ArrayList<>();
+        for (Node component : components) {
+            categories.addAll(values(component, CATEGORIES));
+            pages.add(PropertyUtil.getString(component, INTERNAL_LINK));
+        }
+        resolver.prefetch(CATEGORY_WORKSPACE, categories);
+        resolver.prefetch(RepositoryConstants.WEBSITE, pages);
+    }
+
+    /**
+     * Collects the components of the given template in the areas below the given node, without descending into sub pages.
+     */
+    private static void collect(Node node, String template, List<Node> components) throws RepositoryException {
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            Node child = children.nextNode();
+            if (child.isNodeType(NodeTypes.Component.NAME)) {
+                if (template.equals(NodeTypes.Renderable.getTemplate(child))) {
+                    components.add(child);
+                }
+                collect(child, template, components);
+            } else if (child.isNodeType(NodeTypes.Area.NAME)) {
+                collect(child, template, components);
+            }
+        }
+    }
+
+    /**
+     * Returns the values of a single or multi-valued property.
+     */
+    private static List<String> values(Node node, String name) {
+        try {
+            if (!node.hasProperty(name)) {
+                return Collections.emptyList();
+            }
+            Property property = node.getProperty(name);
+            if (!property.isMultiple()) {
+                return Collections.singletonList(property.getString());
+            }
+            List<String> values = new ArrayList<>();
+            for (Value value : property.getValues()) {
+                values.add(value.getString());
+            }
+            return values;
+        } catch (RepositoryException e) {
+            log.warn("Cannot read the [{}] references of [{}].", name, NodeUtil.getPathIfPossible(node), e);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.model;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import info.magnolia.rendering.template.TemplateDefinition;
+import info.magnolia.rendering.template.registry.TemplateDefinitionRegistry;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.AccessDeniedException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the pages of the <code>website</code> workspace by template id, so that finding the page of a given
+ * template (or template type and subtype) in a site doesn't walk the site tree.
+ * <p>
+ * The index is built with the system context when the module starts and kept up to date by an observation listener;
+ * added, removed, moved and re-templated pages are applied incrementally. Pages found through the index are read with
+ * the current session, so access control still applies. Callers should fall back to a tree lookup while the index
+ * isn't {@link #isReady() ready}.
+ */
+@Singleton
+public class TemplatePageIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplatePageIndex.class);
+
+    private static final String QUERY = "SELECT * FROM [" + NodeTypes.Page.NAME + "]";
+    private static final String TEMPLATE_PROPERTY = NodeTypes.Renderable.TEMPLATE;
+    private static final String SOURCE_PATH_INFO = "srcAbsPath";
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+
+    private final TemplateDefinitionRegistry templateDefinitionRegistry;
+
+    private volatile Map<String, PageRef> pagesById = new ConcurrentHashMap<>();
+    private volatile Map<String, List<PageRef>> pagesByTemplate = new ConcurrentHashMap<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean ready;
+    private WorkspaceEventListenerRegistration.Handle registration;
+
+    @Inject
+    public TemplatePageIndex(TemplateDefinitionRegistry templateDefinitionRegistry) {
+        this.templateDefinitionRegistry = templateDefinitionRegistry;
+    }
+
+    /**
+     * Whether the index has been built and is observing the workspace.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the first page using the given template below the given root, read with the session of the root.
+     */
+    public Node findPage(Node root, String templateId) throws RepositoryException {
+        return first(root, Collections.singleton(templateId));
+    }
+
+    /**
+     * Returns the first page whose template is of the given type and subtype below the given root, read with the
+     * session of the root.
+     */
+    public Node findPageByType(Node root, String type, String subtype) throws RepositoryException {
+        Set<String> templateIds = new HashSet<>();
+        for (TemplateDefinition templateDefinition : templateDefinitionRegistry.getAllDefinitions()) {
+            if (StringUtils.equals(type, templateDefinition.getType()) && (subtype == null || StringUtils.equals(subtype, templateDefinition.getSubtype()))) {
+                templateIds.add(templateDefinition.getId());
+            }
+        }
+        return first(root, templateIds);
+    }
+
+    public int getSize() {
+        return pagesById.size();
+    }
+
+    /**
+     * Registers a callback run once a batch of changes has been applied to the index, and whenever the index is
+     * rebuilt or dropped; caches derived from the index invalidate themselves there, never ahead of it.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    private Node first(Node root, Collection<String> templateIds) throws RepositoryException {
+        if (root == null) {
+            return null;
+        }
+        final String prefix = "/".equals(root.getPath()) ? "/" : root.getPath() + "/";
+        final Session session = root.getSession();
+        for (String templateId : templateIds) {
+            for (PageRef page : pagesByTemplate.getOrDefault(templateId, Collections.<PageRef>emptyList())) {
+                if (!page.path.startsWith(prefix)) {
+                    continue;
+                }
+                try {
+                    return session.getNodeByIdentifier(page.identifier);
+                } catch (ItemNotFoundException | AccessDeniedException e) {
+                    // not readable by the current user (or just removed), try the next one
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the index and starts observing the <code>website</code> workspace.
+     */
+    public synchronized void start() {
+        if (registration != null) {
+            return;
+        }
+        try {
+            registration = WorkspaceEventListenerRegistration.observe(RepositoryConstants.WEBSITE, "/", new UpdatingListener())
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the [{}] workspace, template lookups will walk the site tree.", RepositoryConstants.WEBSITE, e);
+            return;
+        }
+        rebuild();
+    }
+
+    public synchronized void stop() {
+        ready = false;
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the [{}] workspace.", RepositoryConstants.WEBSITE, e);
+            }
+            registration = null;
+        }
+        pagesById = new ConcurrentHashMap<>();
+        pagesByTemplate = new ConcurrentHashMap<>();
+        fireChanged();
+    }
+
+    /**
+     * Reads all pages again into new maps, swapped in once complete; lookups keep using the previous ones meanwhile.
+     */
+    public synchronized void rebuild() {
+        final Map<String, PageRef> byId = new ConcurrentHashMap<>();
+        final Map<String, List<PageRef>> byTemplate = new ConcurrentHashMap<>();
+        boolean built = MgnlContext.doInSystemContext(new MgnlContext.Op<Boolean, RuntimeException>() {
+            @Override
+            public Boolean exec() {
+                try {
+                    NodeIterator pages = QueryUtil.search(RepositoryConstants.WEBSITE, QUERY);
+                    while (pages.hasNext()) {
+                        index(pages.nextNode(), byId, byTemplate);
+                    }
+                    return true;
+                } catch (RepositoryException e) {
+                    log.warn("Cannot index the pages of the [{}] workspace.", RepositoryConstants.WEBSITE, e);
+                    return false;
+                }
+            }
+        });
+        if (built) {
+            pagesById = byId;
+            pagesByTemplate = byTemplate;
+            log.info("Indexed {} pages of the [{}] workspace by template.", byId.size(), RepositoryConstants.WEBSITE);
+        }
+        // the previous maps missed changes, they can't be trusted anymore
+        ready = built;
+        fireChanged();
+    }
+
+    private synchronized void update(final List<Event> events) {
+        if (!ready) {
+            return;
+        }
+        MgnlContext.doInSystemContext(new MgnlContext.VoidOp() {
+            @Override
+            public void doExec() {
+                try {
+                    Session session = MgnlContext.getJCRSession(RepositoryConstants.WEBSITE);
+                    // a move tells the removal of its source before the addition of its destination: the pages
+                    // below a removed or moved node are looked up again by identifier once the whole batch is read
+                    Set<String> displaced = new LinkedHashSet<>();
+                    for (Event event : events) {
+                        apply(session, event, displaced);
+                    }
+                    for (String identifier : displaced) {
+                        refresh(session, identifier);
+                    }
+                } catch (RepositoryException e) {
+                    log.warn("Cannot apply changes of the [{}] workspace to the template index, rebuilding it.", RepositoryConstants.WEBSITE, e);
+                    rebuild();
+                    return;
+                }
+                fireChanged();
+            }
+        });
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("Cannot notify a change of the template index.", e);
+            }
+        }
+    }
+
+    private void apply(Session session, Event event, Set<String> displaced) throws RepositoryException {
+        switch (event.getType()) {
+        case Event.NODE_ADDED:
+            refresh(session, event.getIdentifier());
+            break;
+        case Event.NODE_REMOVED:
+            if (pagesById.containsKey(event.getIdentifier())) {
+                displaced.add(event.getIdentifier());
+            }
+            displaced.addAll(below(event.getPath()));
+            break;
+        case Event.NODE_MOVED:
+            Object sourcePath = event.getInfo().get(SOURCE_PATH_INFO);
+            refresh(session, event.getIdentifier());
+            if (sourcePath != null) {
+                displaced.addAll(below(sourcePath.toString()));
+            }
+            break;
+        case Event.PROPERTY_ADDED:
+        case Event.PROPERTY_CHANGED:
+        case Event.PROPERTY_REMOVED:
+            // for property events the identifier is the one of the parent node
+            if (event.getPath().endsWith("/" + TEMPLATE_PROPERTY)) {
+                refresh(session, event.getIdentifier());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void refresh(Session session, String identifier) throws RepositoryException {
+        remove(identifier);
+        try {
+            Node node = session.getNodeByIdentifier(identifier);
+            if (NodeTypes.Page.NAME.equals(node.getPrimaryNodeType().getName())) {
+                index(node, pagesById, pagesByTemplate);
+            }
+        } catch (ItemNotFoundException e) {
+            // removed in the meantime
+        }
+    }
+
+    private static void index(Node page, Map<String, PageRef> byId, Map<String, List<PageRef>> byTemplate) throws RepositoryException {
+        String templateId = NodeTypes.Renderable.getTemplate(page);
+        if (templateId == null) {
+            return;
+        }
+        PageRef ref = new PageRef(page.getIdentifier(), page.getPath(), templateId);
+        byId.put(ref.identifier, ref);
+        byTemplate.computeIfAbsent(templateId, k -> new CopyOnWriteArrayList<>()).add(ref);
+    }
+
+    private void remove(String identifier) {
+        PageRef ref = pagesById.remove(identifier);
+        if (ref != null) {
+            List<PageRef> pages = pagesByTemplate.get(ref.templateId);
+            if (pages != null) {
+                pages.remove(ref);
+            }
+        }
+    }
+
+    private List<String> below(String path) {
+        String prefix = path + "/";
+        List<String> identifiers = new ArrayList<>();
+        for (PageRef ref : pagesById.values()) {
+            if (ref.path.startsWith(prefix)) {
+                identifiers.add(ref.identifier);
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Identifier, path and template of an indexed page.
+     */
+    private static class PageRef {
+        private final String identifier;
+        private final String path;
+        private final String templateId;
+
+        private PageRef(String identifier, String path, String templateId) {
+            this.identifier = identifier;
+            this.path = path;
+            this.templateId = templateId;
+        }
+    }
+
+    /**
+     * Applies the changes of the <code>website</code> workspace to the index.
+     */
+    private class UpdatingListener implements EventListener {
+        @Override
+        public void onEvent(EventIterator events) {
+            List<Event> batch = new ArrayList<>();
+            while (events.hasNext()) {
+                batch.add(events.nextEvent());
+            }
+            update(batch);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.notification;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the users and of the group membership of a whole instance.
+ * <p>
+ * Users are numbered densely, so the users of any number of groups expand into a {@link BitSet}: overlapping groups
+ * and users selected both directly and through a group are de-duplicated for free.
+ */
+public final class GroupMembership {
+
+    private static final int[] NO_MEMBERS = new int[0];
+
+    private final String[] userIds;
+    private final String[] emails;
+    private final Map<String, Integer> userIndexes;
+    private final Map<String, int[]> members;
+    private final Map<String, String[]> subgroups;
+
+    GroupMembership(String[] userIds, String[] emails, Map<String, Integer> userIndexes, Map<String, int[]> members, Map<String, String[]> subgroups) {
+        this.userIds = userIds;
+        this.emails = emails;
+        this.userIndexes = userIndexes;
+        this.members = members;
+        this.subgroups = subgroups;
+    }
+
+    /**
+     * Returns the indexes of the given users plus those of the direct and indirect members of the given groups.
+     * Unknown identifiers are ignored.
+     */
+    public BitSet expand(Collection<String> userIds, Collection<String> groupIds) {
+        BitSet expanded = new BitSet(this.userIds.length);
+        for (String userId : userIds) {
+            Integer index = userIndexes.get(userId);
+            if (index != null) {
+                expanded.set(index);
+            }
+        }
+        // walk subgroups breadth first, each group once even if reached through several paths
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(groupIds);
+        while (!pending.isEmpty()) {
+            String groupId = pending.poll();
+            if (!visited.add(groupId)) {
+                continue;
+            }
+            for (int index : members.getOrDefault(groupId, NO_MEMBERS)) {
+                expanded.set(index);
+            }
+            String[] children = subgroups.get(groupId);
+            if (children != null) {
+                Collections.addAll(pending, children);
+            }
+        }
+        return expanded;
+    }
+
+    public String getUserId(int index) {
+        return userIds[index];
+    }
+
+    /**
+     * E-mail address of the user, <code>null</code> if the user is disabled or has none.
+     */
+    public String getEmail(int index) {
+        return emails[index];
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    public int getGroupCount() {
+        return members.size();
+    }
+}
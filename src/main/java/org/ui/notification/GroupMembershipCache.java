@@ -0,0 +1,258 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.notification;
+
+import info.magnolia.cms.util.QueryUtil;
+import info.magnolia.context.MgnlContext;
+import info.magnolia.jcr.iterator.FilteringPropertyIterator;
+import info.magnolia.jcr.predicate.JCRMgnlPropertyHidingPredicate;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Module wide cache of the {@link GroupMembership}, read with one query over all users and one over all groups.
+ * It is dropped, and read again on next use, when users or groups are added, removed or moved, or when their group
+ * and role assignments, e-mail address or enabled flag change; other writes, like the last access time stored on
+ * every login, leave it alone.
+ */
+@Singleton
+public class GroupMembershipCache {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupMembershipCache.class);
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+    private static final String GROUPS_NODE = "groups";
+    private static final String ROLES_NODE = "roles";
+    private static final String ENABLED_PROPERTY = "enabled";
+
+    private final AtomicLong generation = new AtomicLong();
+    private final List<WorkspaceEventListenerRegistration.Handle> registrations = new ArrayList<>();
+    private volatile GroupMembership membership;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Returns the current membership, reading it with the system context if it isn't cached.
+     */
+    public GroupMembership get() throws RepositoryException {
+        GroupMembership current = membership;
+        if (current != null) {
+            hits.increment();
+            return current;
+        }
+        synchronized (generation) {
+            if (membership != null) {
+                return membership;
+            }
+            final long expected = generation.get();
+            current = MgnlContext.doInSystemContext(new MgnlContext.Op<GroupMembership, RepositoryException>() {
+                @Override
+                public GroupMembership exec() throws RepositoryException {
+                    return load();
+                }
+            });
+            rebuilds.increment();
+            // don't cache what was read while users or groups changed
+            if (expected == generation.get() && isObserving()) {
+                membership = current;
+            }
+            return current;
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        membership = null;
+        invalidations.increment();
+    }
+
+    /**
+     * Starts observing the <code>users</code> and <code>usergroups</code> workspaces; until then nothing is cached.
+     */
+    public synchronized void start() {
+        if (!registrations.isEmpty()) {
+            return;
+        }
+        for (String workspace : new String[] { RecipientResolver.USERS_WORKSPACE, RecipientResolver.GROUPS_WORKSPACE }) {
+            try {
+                registrations.add(WorkspaceEventListenerRegistration.observe(workspace, "/", this::onEvent)
+                        .withSubNodes(true)
+                        .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                        .register());
+            } catch (RepositoryException e) {
+                log.warn("Cannot observe the [{}] workspace, group membership won't be cached.", workspace, e);
+                stop();
+                return;
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        for (WorkspaceEventListenerRegistration.Handle registration : registrations) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing users or groups.", e);
+            }
+        }
+        registrations.clear();
+        invalidate();
+    }
+
+    /**
+     * Whether both workspaces are observed, i.e. whether the membership is cached.
+     */
+    public boolean isObserving() {
+        return registrations.size() == 2;
+    }
+
+    private void onEvent(EventIterator events) {
+        try {
+            while (events.hasNext()) {
+                if (affectsMembership(events.nextEvent())) {
+                    invalidate();
+                    return;
+                }
+            }
+        } catch (RepositoryException | RuntimeException e) {
+            log.warn("Cannot read a change of users or groups, dropping the group membership.", e);
+            invalidate();
+        }
+    }
+
+    private static boolean affectsMembership(Event event) throws RepositoryException {
+        switch (event.getType()) {
+        case Event.NODE_ADDED:
+        case Event.NODE_REMOVED:
+        case Event.NODE_MOVED:
+            return true;
+        case Event.PROPERTY_ADDED:
+        case Event.PROPERTY_CHANGED:
+        case Event.PROPERTY_REMOVED:
+            String path = event.getPath();
+            String name = StringUtils.substringAfterLast(path, "/");
+            String parent = StringUtils.substringAfterLast(StringUtils.substringBeforeLast(path, "/"), "/");
+            return GROUPS_NODE.equals(parent) || ROLES_NODE.equals(parent) || RecipientResolver.EMAIL_PROPERTY.equals(name) || ENABLED_PROPERTY.equals(name);
+        default:
+            return false;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    private GroupMembership load() throws RepositoryException {
+        List<String> userIds = new ArrayList<>();
+        List<String> emails = new ArrayList<>();
+        Map<String, Integer> userIndexes = new HashMap<>();
+        Map<String, List<Integer>> directMembers = new HashMap<>();
+        NodeIterator users = QueryUtil.search(RecipientResolver.USERS_WORKSPACE, "SELECT * FROM [" + NodeTypes.User.NAME + "]");
+        while (users.hasNext()) {
+            Node user = users.nextNode();
+            int index = userIds.size();
+            String email = StringUtils.trimToNull(PropertyUtil.getString(user, RecipientResolver.EMAIL_PROPERTY));
+            userIds.add(user.getIdentifier());
+            emails.add(PropertyUtil.getBoolean(user, ENABLED_PROPERTY, true) ? email : null);
+            userIndexes.put(user.getIdentifier(), index);
+            for (String groupId : getGroupIds(user)) {
+                directMembers.computeIfAbsent(groupId, k -> new ArrayList<>()).add(index);
+            }
+        }
+
+        Map<String, List<String>> children = new HashMap<>();
+        NodeIterator groups = QueryUtil.search(RecipientResolver.GROUPS_WORKSPACE, "SELECT * FROM [" + NodeTypes.Group.NAME + "]");
+        while (groups.hasNext()) {
+            Node group = groups.nextNode();
+            for (String parentId : getGroupIds(group)) {
+                children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(group.getIdentifier());
+            }
+        }
+
+        Map<String, int[]> members = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : directMembers.entrySet()) {
+            members.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        Map<String, String[]> subgroups = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : children.entrySet()) {
+            subgroups.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+        log.debug("Read membership of {} users in {} groups.", userIds.size(), members.size());
+        return new GroupMembership(userIds.toArray(new String[0]), emails.toArray(new String[0]), userIndexes, members, subgroups);
+    }
+
+    /**
+     * Identifiers of the groups a user or group is a direct member of.
+     */
+    private static List<String> getGroupIds(Node node) throws RepositoryException {
+        List<String> groupIds = new ArrayList<>();
+        if (node.hasNode(GROUPS_NODE)) {
+            for (PropertyIterator iter = new FilteringPropertyIterator(node.getNode(GROUPS_NODE).getProperties(), new JCRMgnlPropertyHidingPredicate()); iter.hasNext(); ) {
+                groupIds.add(iter.nextProperty().getString());
+            }
+        }
+        return groupIds;
+    }
+}
@@ -0,0 +1,404 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.notification;
+
+import info.magnolia.cms.beans.config.ServerConfiguration;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, batching outbound notification queue.
+ * <p>
+ * {@link #submit(Notification)} never blocks the calling UI thread: a full queue rejects the notification instead.
+ * A single worker drains the queue by batches, expands the recipients with the {@link RecipientResolver} and hands
+ * the messages of a whole batch to the {@link NotificationSender}. Messages which could not be sent because of a
+ * transient failure are queued again with an exponential backoff, until {@link #getMaxAttempts()} is reached.
+ */
+@Singleton
+public class NotificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    private static final long POLL_TIMEOUT = 500;
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    private int capacity = 1000;
+    private int batchSize = 50;
+    private int maxAttempts = 5;
+    private long retryDelay = 2000;
+
+    private final RecipientResolver recipientResolver;
+    private final NotificationSender sender;
+    private final ServerConfiguration serverConfiguration;
+
+    private volatile BlockingQueue<Delivery> queue;
+    private volatile boolean running;
+    private ExecutorService worker;
+    private ScheduledExecutorService retries;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    @Inject
+    public NotificationService(RecipientResolver recipientResolver, NotificationSender sender, ServerConfiguration serverConfiguration) {
+        this.recipientResolver = recipientResolver;
+        this.sender = sender;
+        this.serverConfiguration = serverConfiguration;
+    }
+
+    /**
+     * Queues the given notification, returns <code>false</code> if the service isn't running or the queue is full.
+     */
+    public boolean submit(Notification notification) {
+        BlockingQueue<Delivery> queue = this.queue;
+        if (!running || queue == null) {
+            log.warn("Notification service is not running, notification about [{}] is dropped.", notification.getPagePath());
+            rejected.increment();
+            return false;
+        }
+        if (!queue.offer(new Delivery(notification, null, 1))) {
+            log.warn("Notification queue is full ({} entries), notification about [{}] is dropped.", capacity, notification.getPagePath());
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        highWaterMark.accumulateAndGet(queue.size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Starts the worker thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        worker = Executors.newSingleThreadExecutor(runnable -> newThread(runnable, "ui-notification-worker"));
+        retries = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, "ui-notification-retries"));
+        worker.execute(this::drain);
+    }
+
+    /**
+     * Stops accepting notifications, lets the worker empty the queue for a while, then stops it.
+     * Pending retries are abandoned.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        retries.shutdownNow();
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("{} notifications were still queued and are dropped.", queue.size());
+            dropped.add(queue.size());
+            queue.clear();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Number of notifications and retries waiting for the worker.
+     */
+    public int getQueueDepth() {
+        BlockingQueue<Delivery> queue = this.queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public int getRemainingCapacity() {
+        BlockingQueue<Delivery> queue = this.queue;
+        return queue == null ? 0 : queue.remainingCapacity();
+    }
+
+    /**
+     * Highest queue depth observed so far.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * Notifications rejected because the queue was full or the service not running.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * Messages permanently refused by the mail server.
+     */
+    public long getRefusedCount() {
+        return refused.sum();
+    }
+
+    /**
+     * Failed attempts to expand the recipients of, or send, a batch.
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRetryCount() {
+        return retried.sum();
+    }
+
+    /**
+     * Messages and notifications given up after {@link #getMaxAttempts()} or on shutdown.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Only taken into account on next {@link #start()}.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Delay before the first retry in milliseconds, doubled on each further attempt.
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Delivery first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Delivery> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, Math.max(0, batchSize - 1));
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while sending notifications.", e);
+            }
+        }
+    }
+
+    /**
+     * Expands the recipients of the batch and sends all of its messages at once.
+     */
+    private void dispatch(List<Delivery> batch) {
+        batches.increment();
+        Map<OutboundMessage, Delivery> origins = new IdentityHashMap<>();
+        List<OutboundMessage> messages = new ArrayList<>();
+        for (Delivery delivery : batch) {
+            List<OutboundMessage> expanded = delivery.messages;
+            if (expanded == null) {
+                try {
+                    expanded = compose(delivery.notification);
+                } catch (RepositoryException e) {
+                    log.warn("Cannot resolve recipients of notification about [{}].", delivery.notification.getPagePath(), e);
+                    failures.increment();
+                    retry(delivery, null);
+                    continue;
+                }
+            }
+            for (OutboundMessage message : expanded) {
+                origins.put(message, delivery);
+                messages.add(message);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            int accepted = sender.send(messages);
+            delivered.add(accepted);
+            refused.add(messages.size() - accepted);
+        } catch (DeliveryException e) {
+            log.warn("{} of {} notification messages could not be sent.", e.getUndelivered().size(), messages.size(), e);
+            failures.increment();
+            delivered.add(e.getDelivered());
+            refused.add(messages.size() - e.getUndelivered().size() - e.getDelivered());
+            Map<Delivery, List<OutboundMessage>> undelivered = new LinkedHashMap<>();
+            for (OutboundMessage message : e.getUndelivered()) {
+                undelivered.computeIfAbsent(origins.get(message), k -> new ArrayList<>()).add(message);
+            }
+            for (Map.Entry<Delivery, List<OutboundMessage>> entry : undelivered.entrySet()) {
+                retry(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Queues the given messages, or the whole notification if they are <code>null</code>, again after a backoff delay.
+     */
+    private void retry(Delivery delivery, List<OutboundMessage> messages) {
+        final int size = messages == null ? 1 : messages.size();
+        if (delivery.attempt >= maxAttempts) {
+            log.error("Giving up notification about [{}] after {} attempts.", delivery.notification.getPagePath(), delivery.attempt);
+            dropped.add(size);
+            return;
+        }
+        final Delivery next = new Delivery(delivery.notification, messages, delivery.attempt + 1);
+        long delay = retryDelay << Math.min(delivery.attempt - 1, 16);
+        try {
+            retries.schedule(() -> {
+                if (!running || !queue.offer(next)) {
+                    log.warn("Cannot queue retry of notification about [{}], it is dropped.", next.notification.getPagePath());
+                    dropped.add(size);
+                    return;
+                }
+                retried.increment();
+                highWaterMark.accumulateAndGet(queue.size(), Math::max);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            dropped.add(size);
+        }
+    }
+
+    private List<OutboundMessage> compose(Notification notification) throws RepositoryException {
+        RecipientExpansion expansion = recipientResolver.resolve(notification);
+        List<String> tags = recipientResolver.resolveTagNames(notification);
+        String title = StringUtils.defaultIfBlank(notification.getTitle(), StringUtils.substringAfterLast(notification.getPagePath(), "/"));
+        String subject = notification.isImportant() ? "[Important] " + title : title;
+        StringBuilder body = new StringBuilder(title).append("\n\n")
+                .append(StringUtils.removeEnd(serverConfiguration.getDefaultBaseUrl(), "/")).append(notification.getPagePath()).append(".html\n");
+        if (!tags.isEmpty()) {
+            body.append("\nTags: ").append(StringUtils.join(tags, ", ")).append('\n');
+        }
+        List<OutboundMessage> messages = new ArrayList<>(expansion.getRecipients().size());
+        for (String recipient : expansion.getRecipients()) {
+            messages.add(new OutboundMessage(recipient, subject, body.toString()));
+        }
+        return messages;
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * A notification to send, or some of its messages to send again.
+     */
+    private static class Delivery {
+        private final Notification notification;
+        private final List<OutboundMessage> messages;
+        private final int attempt;
+
+        private Delivery(Notification notification, List<OutboundMessage> messages, int attempt) {
+            this.notification = notification;
+            this.messages = messages;
+            this.attempt = attempt;
+        }
+    }
+}
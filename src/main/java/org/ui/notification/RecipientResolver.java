@@ -0,0 +1,152 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.notification;
+
+import info.magnolia.context.MgnlContext;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expands the users and groups of a {@link Notification} to the e-mail addresses of enabled users.
+ * All selected groups are expanded at once against the cached {@link GroupMembership}, so a save costs a single pass
+ * however many groups overlap. Meant to be called from the notification worker, never from a UI thread.
+ */
+@Singleton
+public class RecipientResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(RecipientResolver.class);
+
+    static final String USERS_WORKSPACE = "users";
+    static final String GROUPS_WORKSPACE = "usergroups";
+    static final String TAGS_WORKSPACE = "tags";
+    static final String EMAIL_PROPERTY = "email";
+
+    private final GroupMembershipCache membershipCache;
+
+    private final LongAdder expansions = new LongAdder();
+    private final LongAdder expandedUsers = new LongAdder();
+    private final AtomicInteger largestFanOut = new AtomicInteger();
+
+    @Inject
+    public RecipientResolver(GroupMembershipCache membershipCache) {
+        this.membershipCache = membershipCache;
+    }
+
+    /**
+     * Returns the distinct e-mail addresses of the notified users and of the direct and indirect members of the notified groups.
+     */
+    public RecipientExpansion resolve(Notification notification) throws RepositoryException {
+        GroupMembership membership = membershipCache.get();
+        BitSet users = membership.expand(notification.getUserIds(), notification.getGroupIds());
+        // distinct users may still share an address
+        Set<String> recipients = new LinkedHashSet<>();
+        for (int index = users.nextSetBit(0); index >= 0; index = users.nextSetBit(index + 1)) {
+            String email = membership.getEmail(index);
+            if (email != null) {
+                recipients.add(email);
+            } else {
+                log.debug("User [{}] is disabled or has no e-mail address and won't be notified.", membership.getUserId(index));
+            }
+        }
+        int fanOut = users.cardinality();
+        expansions.increment();
+        expandedUsers.add(fanOut);
+        largestFanOut.accumulateAndGet(fanOut, Math::max);
+        log.debug("Notification about [{}] for {} users and {} groups expanded to {} users, {} recipients.",
+                notification.getPagePath(), notification.getUserIds().size(), notification.getGroupIds().size(), fanOut, recipients.size());
+        return new RecipientExpansion(new ArrayList<>(recipients), notification.getUserIds().size(), notification.getGroupIds().size(), fanOut);
+    }
+
+    /**
+     * Returns the names of the tags of the notification, skipping those which no longer exist.
+     */
+    public List<String> resolveTagNames(final Notification notification) throws RepositoryException {
+        if (notification.getTagIds().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return MgnlContext.doInSystemContext(new MgnlContext.Op<List<String>, RepositoryException>() {
+            @Override
+            public List<String> exec() throws RepositoryException {
+                Session tags = MgnlContext.getJCRSession(TAGS_WORKSPACE);
+                List<String> names = new ArrayList<>();
+                for (String tagId : notification.getTagIds()) {
+                    String name = getName(tags, tagId);
+                    if (name != null) {
+                        names.add(name);
+                    }
+                }
+                return names;
+            }
+        });
+    }
+
+    public long getExpansionCount() {
+        return expansions.sum();
+    }
+
+    /**
+     * Total number of users reached by all expansions.
+     */
+    public long getExpandedUserCount() {
+        return expandedUsers.sum();
+    }
+
+    public int getLargestFanOut() {
+        return largestFanOut.get();
+    }
+
+    private String getName(Session session, String identifier) throws RepositoryException {
+        try {
+            return session.getNodeByIdentifier(identifier).getName();
+        } catch (ItemNotFoundException e) {
+            log.debug("Node [{}] of the [{}] workspace no longer exists.", identifier, session.getWorkspace().getName());
+            return null;
+        }
+    }
+}
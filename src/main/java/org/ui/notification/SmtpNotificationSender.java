@@ -0,0 +1,242 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.notification;
+
+import info.magnolia.init.MagnoliaConfigurationProperties;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal SMTP client sending a whole batch over one connection, without authentication nor TLS: it is meant to
+ * relay through a local MTA, or to be pointed at a local SMTP stand-in while developing.
+ * <p>
+ * Configured with the <code>ui.notification.smtp.host</code>, <code>ui.notification.smtp.port</code>,
+ * <code>ui.notification.smtp.from</code> and <code>ui.notification.smtp.timeout</code> (in milliseconds)
+ * Magnolia properties.
+ */
+@Singleton
+public class SmtpNotificationSender implements NotificationSender {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpNotificationSender.class);
+
+    private static final String CRLF = "\r\n";
+    private static final String DEFAULT_FROM = "noreply@localhost";
+    // bytes of text per encoded word, so that each word stays below 76 characters
+    private static final int ENCODED_WORD_BYTES = 45;
+
+    private final String host;
+    private final int port;
+    private final String from;
+    private final int timeout;
+
+    @Inject
+    public SmtpNotificationSender(MagnoliaConfigurationProperties properties) {
+        this.host = StringUtils.defaultIfBlank(properties.getProperty("ui.notification.smtp.host"), "localhost");
+        this.port = NumberUtils.toInt(properties.getProperty("ui.notification.smtp.port"), 25);
+        String from = StringUtils.defaultIfBlank(properties.getProperty("ui.notification.smtp.from"), DEFAULT_FROM);
+        if (!isValidAddress(from)) {
+            log.error("Invalid sender address [{}], using [{}].", StringEscapeUtils.escapeJava(from), DEFAULT_FROM);
+            from = DEFAULT_FROM;
+        }
+        this.from = from;
+        this.timeout = NumberUtils.toInt(properties.getProperty("ui.notification.smtp.timeout"), 10000);
+    }
+
+    @Override
+    public int send(List<OutboundMessage> messages) throws DeliveryException {
+        int processed = 0;
+        int delivered = 0;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            expect(in, 220);
+            command(out, in, "HELO " + InetAddress.getLocalHost().getHostName(), 250);
+            for (OutboundMessage message : messages) {
+                if (!isValidAddress(message.getRecipient())) {
+                    // never written to the connection, it could inject commands
+                    log.warn("Invalid recipient address [{}], message is dropped.", StringEscapeUtils.escapeJava(message.getRecipient()));
+                    processed++;
+                    continue;
+                }
+                command(out, in, "MAIL FROM:<" + from + ">", 250);
+                int reply = command(out, in, "RCPT TO:<" + message.getRecipient() + ">");
+                if (reply >= 400 && reply < 500) {
+                    throw new IOException("SMTP server temporarily refused recipient with code " + reply);
+                }
+                if (reply != 250 && reply != 251) {
+                    // permanently refused recipient: reset the transaction and carry on with the next message
+                    log.warn("SMTP server refused recipient [{}] with code {}.", message.getRecipient(), reply);
+                    command(out, in, "RSET", 250);
+                    processed++;
+                    continue;
+                }
+                command(out, in, "DATA", 354);
+                write(out, message);
+                expect(in, 250);
+                processed++;
+                delivered++;
+            }
+            command(out, in, "QUIT", 221);
+        } catch (IOException e) {
+            throw new DeliveryException("Cannot send notifications through " + host + ":" + port, e, delivered, new ArrayList<>(messages.subList(processed, messages.size())));
+        }
+        return delivered;
+    }
+
+    private void write(Writer out, OutboundMessage message) throws IOException {
+        out.write("From: " + from + CRLF);
+        out.write("To: " + message.getRecipient() + CRLF);
+        out.write("Subject: " + encode(message.getSubject()) + CRLF);
+        out.write("Date: " + new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.ENGLISH).format(new Date()) + CRLF);
+        out.write("MIME-Version: 1.0" + CRLF);
+        out.write("Content-Type: text/plain; charset=UTF-8" + CRLF);
+        out.write("Content-Transfer-Encoding: 8bit" + CRLF);
+        out.write(CRLF);
+        for (String line : StringUtils.defaultString(message.getBody()).split("\r?\n", -1)) {
+            // dot-stuffing, so a line with a single dot doesn't end the message
+            out.write(line.startsWith(".") ? "." + line + CRLF : line + CRLF);
+        }
+        out.write("." + CRLF);
+        out.flush();
+    }
+
+    private int command(Writer out, BufferedReader in, String command) throws IOException {
+        out.write(command + CRLF);
+        out.flush();
+        return readReply(in);
+    }
+
+    private void command(Writer out, BufferedReader in, String command, int expected) throws IOException {
+        int reply = command(out, in, command);
+        if (reply != expected) {
+            throw new IOException("Unexpected SMTP reply " + reply + " to " + StringUtils.substringBefore(command, ":"));
+        }
+    }
+
+    private void expect(BufferedReader in, int expected) throws IOException {
+        int reply = readReply(in);
+        if (reply != expected) {
+            throw new IOException("Unexpected SMTP reply " + reply + ", expected " + expected);
+        }
+    }
+
+    /**
+     * Reads a possibly multi-line reply and returns its code.
+     */
+    private int readReply(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null || line.length() < 3) {
+                throw new IOException("Connection closed by SMTP server");
+            }
+        } while (line.length() > 3 && line.charAt(3) == '-');
+        return NumberUtils.toInt(line.substring(0, 3), -1);
+    }
+
+    /**
+     * Whether the given address can be written to an SMTP command and header as is: no control characters, spaces
+     * nor characters delimiting addresses.
+     */
+    static boolean isValidAddress(String address) {
+        if (StringUtils.isBlank(address) || address.length() > 254 || address.indexOf('@') < 1) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c <= ' ' || c == 127 || c == '<' || c == '>' || c == ',' || c == ';' || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the given header value as UTF-8 encoded words folded over several lines, so neither line breaks nor
+     * non-ASCII characters of the value reach the message as is.
+     */
+    static String encode(String header) {
+        String value = StringUtils.defaultString(header).replaceAll("[\\r\\n]+", " ");
+        if (value.isEmpty()) {
+            return value;
+        }
+        StringBuilder encoded = new StringBuilder();
+        int start = 0;
+        do {
+            int end = start;
+            int bytes = 0;
+            while (end < value.length()) {
+                int codePoint = value.codePointAt(end);
+                int size = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8).length;
+                if (bytes + size > ENCODED_WORD_BYTES) {
+                    break;
+                }
+                bytes += size;
+                end += Character.charCount(codePoint);
+            }
+            if (encoded.length() > 0) {
+                encoded.append(CRLF).append(' ');
+            }
+            encoded.append("=?UTF-8?B?").append(Base64.getEncoder().encodeToString(value.substring(start, end).getBytes(StandardCharsets.UTF_8))).append("?=");
+            start = end;
+        } while (start < value.length());
+        return encoded.toString();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import info.magnolia.resourceloader.Resource;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A system view export named after the bootstrap convention <code>workspace.path.to.node.xml</code>,
+ * e.g. <code>users.system.Angela.xml</code> for the node <code>/system/Angela</code> of the <code>users</code> workspace.
+ */
+public final class BootstrapFile {
+
+    private static final String EXTENSION = ".xml";
+
+    private final Resource resource;
+    private final String workspace;
+    private final String parentPath;
+    private final String nodeName;
+    private final int depth;
+
+    private BootstrapFile(Resource resource, String workspace, String parentPath, String nodeName, int depth) {
+        this.resource = resource;
+        this.workspace = workspace;
+        this.parentPath = parentPath;
+        this.nodeName = nodeName;
+        this.depth = depth;
+    }
+
+    /**
+     * Returns the bootstrap file of the given resource, or <code>null</code> if its name doesn't follow the convention
+     * (e.g. copies such as <code>fallback (1).xml</code>).
+     */
+    public static BootstrapFile of(Resource resource) {
+        String name = resource.getName();
+        if (!resource.isFile() || !name.endsWith(EXTENSION) || StringUtils.containsWhitespace(name)) {
+            return null;
+        }
+        String[] segments = StringUtils.split(StringUtils.removeEnd(name, EXTENSION), '.');
+        if (segments.length < 2) {
+            return null;
+        }
+        StringBuilder parentPath = new StringBuilder("/");
+        for (int i = 1; i < segments.length - 1; i++) {
+            parentPath.append(i > 1 ? "/" : "").append(segments[i]);
+        }
+        return new BootstrapFile(resource, segments[0], parentPath.toString(), segments[segments.length - 1], segments.length - 1);
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public String getName() {
+        return resource.getName();
+    }
+
+    public String getWorkspace() {
+        return workspace;
+    }
+
+    public String getParentPath() {
+        return parentPath;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * Path of the imported node.
+     */
+    public String getPath() {
+        return "/".equals(parentPath) ? "/" + nodeName : parentPath + "/" + nodeName;
+    }
+
+    /**
+     * Depth of the imported node; files of a workspace are imported by increasing depth, so that parents come first.
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.module.InstallContext;
+import info.magnolia.module.delta.AbstractRepositoryTask;
+import info.magnolia.repository.RepositoryConstants;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Denies the <code>anonymous</code> role any access to a URI pattern, e.g. <code>/.ui/metrics*</code>, by adding a
+ * permission 0 entry to its URI access control list. Nothing is changed if the role already has an entry for the pattern,
+ * so the task can run on every update.
+ */
+public class DenyAnonymousURITask extends AbstractRepositoryTask {
+
+    static final String ANONYMOUS_ROLE = "/anonymous";
+    static final String URI_ACL = "acl_uri";
+    static final String PATH_PROPERTY = "path";
+    static final String PERMISSIONS_PROPERTY = "permissions";
+    static final long DENY = 0;
+
+    private final String uri;
+
+    public DenyAnonymousURITask(String uri) {
+        super("Deny anonymous access to " + uri, "Adds a URI security entry denying anonymous access to " + uri + ".");
+        this.uri = uri;
+    }
+
+    @Override
+    protected void doExecute(InstallContext installContext) throws RepositoryException {
+        Session session = installContext.getJCRSession(RepositoryConstants.USER_ROLES);
+        if (!session.nodeExists(ANONYMOUS_ROLE)) {
+            installContext.warn("The anonymous role doesn't exist, " + uri + " is left unprotected.");
+            return;
+        }
+        Node acl = NodeUtil.createPath(session.getNode(ANONYMOUS_ROLE), URI_ACL, NodeTypes.ContentNode.NAME);
+        for (NodeIterator iter = acl.getNodes(); iter.hasNext(); ) {
+            if (uri.equals(PropertyUtil.getString(iter.nextNode(), PATH_PROPERTY))) {
+                return;
+            }
+        }
+        int index = 0;
+        while (acl.hasNode(String.valueOf(index))) {
+            index++;
+        }
+        Node entry = acl.addNode(String.valueOf(index), NodeTypes.ContentNode.NAME);
+        entry.setProperty(PATH_PROPERTY, uri);
+        entry.setProperty(PERMISSIONS_PROPERTY, DENY);
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xml.sax.SAXException;
+
+/**
+ * Applies a {@link BootstrapFile} to an existing node as a minimal diff: only differing properties are written, only
+ * missing nodes imported and only out of place nodes reordered. Unchanged subtrees are not touched, so they neither
+ * get saved again nor fire observation events.
+ * <p>
+ * Properties and nodes which aren't exported any more are removed only if the previous import of the file created
+ * them, as told by its items (see {@link SystemViewNode#getItems()}); anything added by editors is kept. A node whose
+ * identifier or primary type changed is replaced as a whole. Properties of the <code>jcr</code> and <code>mgnl</code>
+ * namespaces which aren't exported (e.g. maintained by the repository or by activation) are kept.
+ */
+public class DiffImporter {
+
+    private int changes;
+
+    /**
+     * Brings the node of the given file in line with it, without saving the session.
+     *
+     * @param previousItems keys of the items of the previous import of the file, the only ones which may be removed
+     * @param items receives the keys of the items of the file
+     * @return the number of changed properties and added, replaced, moved or removed nodes
+     */
+    public int importFile(Session session, BootstrapFile file, Set<String> previousItems, Set<String> items) throws RepositoryException, IOException {
+        SystemViewNode exported;
+        try (InputStream in = file.getResource().openStream()) {
+            exported = SystemViewNode.parse(in);
+        } catch (SAXException e) {
+            throw new RepositoryException("Cannot read " + file.getName(), e);
+        }
+        changes = 0;
+        items.addAll(exported.getItems());
+        if (!session.nodeExists(file.getParentPath())) {
+            NodeUtil.createPath(session.getRootNode(), StringUtils.removeStart(file.getParentPath(), "/"), NodeTypes.Content.NAME);
+        }
+        Node parent = session.getNode(file.getParentPath());
+        if (parent.hasNode(exported.getName()) && isSameNode(parent.getNode(exported.getName()), exported)) {
+            apply(parent.getNode(exported.getName()), exported, "", previousItems);
+        } else {
+            replace(parent, exported);
+        }
+        return changes;
+    }
+
+    private void apply(Node node, SystemViewNode exported, String path, Set<String> previousItems) throws RepositoryException {
+        Map<String, SystemViewNode.Property> properties = exported.getProperties();
+        ValueFactory valueFactory = node.getSession().getValueFactory();
+        for (SystemViewNode.Property property : properties.values()) {
+            if (SystemViewNode.isStructural(property.getName())) {
+                continue;
+            }
+            if (node.hasProperty(property.getName())) {
+                Property current = node.getProperty(property.getName());
+                if (current.getDefinition().isProtected() || isEqual(current, property, valueFactory)) {
+                    continue;
+                }
+                if (current.isMultiple() != property.isMultiple()) {
+                    current.remove();
+                }
+            }
+            setProperty(node, property, valueFactory);
+        }
+        // mixins only ever added, removing them could drop properties maintained by the repository
+        SystemViewNode.Property mixins = properties.get(SystemViewNode.MIXIN_TYPES);
+        if (mixins != null) {
+            for (String mixin : mixins.getValues()) {
+                if (!node.isNodeType(mixin)) {
+                    node.addMixin(mixin);
+                    changes++;
+                }
+            }
+        }
+        List<Property> obsolete = new ArrayList<>();
+        for (PropertyIterator iter = node.getProperties(); iter.hasNext(); ) {
+            Property property = iter.nextProperty();
+            if (!properties.containsKey(property.getName()) && previousItems.contains(SystemViewNode.propertyKey(path, property.getName()))
+                    && !property.getName().startsWith("jcr:") && !property.getName().startsWith(NodeTypes.MGNL_PREFIX)) {
+                obsolete.add(property);
+            }
+        }
+        for (Property property : obsolete) {
+            property.remove();
+            changes++;
+        }
+
+        Set<String> exportedNames = new HashSet<>();
+        for (SystemViewNode child : exported.getChildren()) {
+            exportedNames.add(child.getName());
+            if (node.hasNode(child.getName()) && isSameNode(node.getNode(child.getName()), child)) {
+                apply(node.getNode(child.getName()), child, SystemViewNode.childPath(path, child.getName()), previousItems);
+            } else {
+                replace(node, child);
+            }
+        }
+        List<Node> removed = new ArrayList<>();
+        for (NodeIterator iter = node.getNodes(); iter.hasNext(); ) {
+            Node child = iter.nextNode();
+            if (!exportedNames.contains(child.getName()) && previousItems.contains(SystemViewNode.childPath(path, child.getName()))) {
+                removed.add(child);
+            }
+        }
+        for (Node child : removed) {
+            child.remove();
+            changes++;
+        }
+        order(node, exported);
+    }
+
+    /**
+     * Imports the exported node in place of the existing one, if any, keeping its position among its siblings.
+     */
+    private void replace(Node parent, SystemViewNode exported) throws RepositoryException {
+        Session session = parent.getSession();
+        if (parent.hasNode(exported.getName())) {
+            parent.getNode(exported.getName()).remove();
+        }
+        try {
+            exported.toSax(session.getImportContentHandler(parent.getPath(), ImportUUIDBehavior.IMPORT_UUID_COLLISION_REPLACE_EXISTING));
+        } catch (SAXException e) {
+            if (e.getCause() instanceof RepositoryException) {
+                throw (RepositoryException) e.getCause();
+            }
+            throw new RepositoryException("Cannot import " + exported.getName() + " below " + parent.getPath(), e);
+        }
+        changes++;
+    }
+
+    /**
+     * Restores the exported order of the exported children, only moving those which are out of place. Children which
+     * aren't exported keep their place.
+     */
+    private void order(Node node, SystemViewNode exported) throws RepositoryException {
+        if (exported.getChildren().size() < 2 || !node.getPrimaryNodeType().hasOrderableChildNodes()) {
+            return;
+        }
+        List<String> expected = new ArrayList<>();
+        for (SystemViewNode child : exported.getChildren()) {
+            expected.add(child.getName());
+        }
+        List<String> current = new ArrayList<>();
+        for (NodeIterator iter = node.getNodes(); iter.hasNext(); ) {
+            String name = iter.nextNode().getName();
+            if (expected.contains(name)) {
+                current.add(name);
+            }
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            String name = expected.get(i);
+            if (!name.equals(current.get(i))) {
+                node.orderBefore(name, current.get(i));
+                current.remove(name);
+                current.add(i, name);
+                changes++;
+            }
+        }
+    }
+
+    private void setProperty(Node node, SystemViewNode.Property property, ValueFactory valueFactory) throws RepositoryException {
+        if (property.isMultiple()) {
+            node.setProperty(property.getName(), toValues(property, valueFactory), property.getType());
+        } else {
+            node.setProperty(property.getName(), toValues(property, valueFactory)[0]);
+        }
+        changes++;
+    }
+
+    private boolean isEqual(Property current, SystemViewNode.Property exported, ValueFactory valueFactory) throws RepositoryException {
+        if (current.getType() != exported.getType() || current.isMultiple() != exported.isMultiple()) {
+            return false;
+        }
+        Value[] currentValues = current.isMultiple() ? current.getValues() : new Value[] { current.getValue() };
+        Value[] exportedValues = toValues(exported, valueFactory);
+        if (currentValues.length != exportedValues.length) {
+            return false;
+        }
+        for (int i = 0; i < currentValues.length; i++) {
+            if (exported.getType() == PropertyType.BINARY) {
+                if (!Arrays.equals(read(currentValues[i]), read(exportedValues[i]))) {
+                    return false;
+                }
+            } else if (!currentValues[i].getString().equals(exportedValues[i].getString())) {
+                // both normalized by the value factory, e.g. dates of different time zones
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Value[] toValues(SystemViewNode.Property property, ValueFactory valueFactory) throws RepositoryException {
+        Value[] values = new Value[property.getValues().size()];
+        for (int i = 0; i < values.length; i++) {
+            String value = property.getValues().get(i);
+            if (property.getType() == PropertyType.BINARY) {
+                // binaries are exported base64 encoded
+                values[i] = valueFactory.createValue(valueFactory.createBinary(new ByteArrayInputStream(Base64.getMimeDecoder().decode(value))));
+            } else {
+                values[i] = valueFactory.createValue(value, property.getType());
+            }
+        }
+        return values;
+    }
+
+    private static byte[] read(Value value) throws RepositoryException {
+        try (InputStream in = value.getBinary().getStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RepositoryException("Cannot read binary value", e);
+        }
+    }
+
+    private static boolean isSameNode(Node node, SystemViewNode exported) throws RepositoryException {
+        if (exported.getPrimaryType() != null && !exported.getPrimaryType().equals(node.getPrimaryNodeType().getName())) {
+            return false;
+        }
+        return exported.getIdentifier() == null || exported.getIdentifier().equals(node.getIdentifier());
+    }
+}
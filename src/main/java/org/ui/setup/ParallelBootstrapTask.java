@@ -0,0 +1,368 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.module.InstallContext;
+import info.magnolia.module.delta.AbstractTask;
+import info.magnolia.module.delta.TaskExecutionException;
+import info.magnolia.objectfactory.Components;
+import info.magnolia.repository.RepositoryConstants;
+import info.magnolia.repository.RepositoryManager;
+import info.magnolia.resourceloader.Resource;
+import info.magnolia.resourceloader.ResourceOrigin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bootstraps the system view exports of a resource directory (e.g. the <code>data</code> directory of the light module).
+ * <p>
+ * Files are grouped by workspace and imported one after the other by increasing depth. Files of the <code>config</code>
+ * workspace are imported in the session of the install context, which saves them along with the other install tasks.
+ * The other workspaces don't depend on it nor on each other: each is imported by its own thread, in its own system
+ * session, saved once per file. Files are streamed with the {@link StreamingImporter}. The time spent on each file is
+ * reported to the install context.
+ * <p>
+ * The SHA-256 checksum of each imported file is kept in the <code>config</code> workspace. In incremental mode, files
+ * whose checksum didn't change are skipped, and changed files are applied to existing nodes by the {@link DiffImporter},
+ * so that only what actually changed is saved and observed. The keys of the nodes and properties of each imported file
+ * are kept next to its checksum, so that an update only removes what a previous import created.
+ */
+public class ParallelBootstrapTask extends AbstractTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBootstrapTask.class);
+
+    static final String CHECKSUMS_PATH = "/modules/ui/bootstrap/checksums";
+    static final String ITEMS_PATH = "/modules/ui/bootstrap/items";
+
+    private final String directory;
+    private final boolean incremental;
+
+    public ParallelBootstrapTask(String directory, boolean incremental) {
+        super("Bootstrap " + directory, incremental ? "Imports the changed files of " + directory + ", one thread per workspace."
+                : "Imports the content of " + directory + ", one thread per workspace.");
+        this.directory = directory;
+        this.incremental = incremental;
+    }
+
+    @Override
+    public void execute(InstallContext installContext) throws TaskExecutionException {
+        ResourceOrigin<?> origin = Components.getComponent(ResourceOrigin.class);
+        if (!origin.hasPath(directory)) {
+            installContext.warn("Nothing to bootstrap, " + directory + " doesn't exist.");
+            return;
+        }
+        Map<String, List<BootstrapFile>> workspaces = groupByWorkspace(installContext, origin.getByPath(directory).listChildren());
+        RepositoryManager repositoryManager = Components.getComponent(RepositoryManager.class);
+        workspaces.keySet().removeIf(workspace -> {
+            if (!repositoryManager.hasWorkspace(workspace)) {
+                installContext.warn("Workspace " + workspace + " doesn't exist, its files are not bootstrapped.");
+                return true;
+            }
+            return false;
+        });
+        if (workspaces.isEmpty()) {
+            return;
+        }
+        int workspaceCount = workspaces.size();
+        List<BootstrapFile> configFiles = workspaces.remove(RepositoryConstants.CONFIG);
+
+        final Map<String, String> checksums;
+        final Map<String, Set<String>> items;
+        try {
+            checksums = incremental ? readChecksums(installContext.getConfigJCRSession()) : Collections.<String, String>emptyMap();
+            items = incremental ? readItems(installContext.getConfigJCRSession()) : Collections.<String, Set<String>>emptyMap();
+        } catch (RepositoryException e) {
+            throw new TaskExecutionException("Cannot read the checksums of " + directory, e);
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = workspaces.isEmpty() ? null : Executors.newFixedThreadPool(Math.min(workspaces.size(), Runtime.getRuntime().availableProcessors()));
+        List<String> failures = new ArrayList<>();
+        Map<String, FileResult> imported = new LinkedHashMap<>();
+        int unchanged = 0;
+        try {
+            Map<String, Future<List<FileResult>>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, List<BootstrapFile>> entry : workspaces.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(() -> importWorkspace(repositoryManager, entry.getKey(), entry.getValue(), checksums, items)));
+            }
+            if (configFiles != null) {
+                // left unsaved, the install context saves its session once all tasks succeeded
+                try {
+                    unchanged += report(installContext, importFiles(installContext.getConfigJCRSession(), configFiles, checksums, items, false), imported);
+                } catch (RepositoryException | IOException e) {
+                    log.error("Cannot bootstrap the [{}] workspace from {}.", RepositoryConstants.CONFIG, directory, e);
+                    failures.add(RepositoryConstants.CONFIG + " (" + e.getMessage() + ")");
+                }
+            }
+            for (Map.Entry<String, Future<List<FileResult>>> entry : futures.entrySet()) {
+                try {
+                    unchanged += report(installContext, entry.getValue().get(), imported);
+                } catch (ExecutionException e) {
+                    log.error("Cannot bootstrap the [{}] workspace from {}.", entry.getKey(), directory, e.getCause());
+                    failures.add(entry.getKey() + " (" + e.getCause().getMessage() + ")");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TaskExecutionException("Interrupted while bootstrapping " + directory, e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        installContext.info(String.format("Bootstrapped %d files (%d unchanged) of %d workspaces from %s in %d ms.", imported.size(), unchanged,
+                workspaceCount, directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        try {
+            // checksums of the workspaces which failed aren't updated, so they are retried on next update
+            writeChecksums(installContext.getConfigJCRSession(), imported.values());
+        } catch (RepositoryException e) {
+            throw new TaskExecutionException("Cannot store the checksums of " + directory, e);
+        }
+        if (!failures.isEmpty()) {
+            throw new TaskExecutionException("Could not bootstrap " + String.join(", ", failures));
+        }
+    }
+
+    /**
+     * Returns the bootstrap files by workspace, each list sorted by depth, then name.
+     */
+    protected Map<String, List<BootstrapFile>> groupByWorkspace(InstallContext installContext, List<? extends Resource> resources) {
+        Map<String, List<BootstrapFile>> workspaces = new TreeMap<>();
+        for (Resource resource : resources) {
+            BootstrapFile file = BootstrapFile.of(resource);
+            if (file == null) {
+                if (resource.isFile()) {
+                    installContext.warn("Skipping " + resource.getName() + ", it isn't named workspace.path.to.node.xml.");
+                }
+                continue;
+            }
+            workspaces.computeIfAbsent(file.getWorkspace(), k -> new ArrayList<>()).add(file);
+        }
+        for (List<BootstrapFile> files : workspaces.values()) {
+            files.sort(Comparator.comparingInt(BootstrapFile::getDepth).thenComparing(BootstrapFile::getName));
+        }
+        return workspaces;
+    }
+
+    /**
+     * Reports the imported files to the install context and adds them to the given map.
+     *
+     * @return the number of unchanged files
+     */
+    private static int report(InstallContext installContext, List<FileResult> results, Map<String, FileResult> imported) {
+        int unchanged = 0;
+        for (FileResult result : results) {
+            if (result.mode == Mode.UNCHANGED) {
+                unchanged++;
+                continue;
+            }
+            installContext.info(String.format(result.mode == Mode.IMPORTED ? "Imported %s: %d nodes in %d ms." : "Updated %s: %d changes in %d ms.",
+                    result.name, result.count, result.millis));
+            imported.put(result.name, result);
+        }
+        return unchanged;
+    }
+
+    private List<FileResult> importWorkspace(RepositoryManager repositoryManager, String workspace, List<BootstrapFile> files, Map<String, String> checksums,
+            Map<String, Set<String>> items) throws Exception {
+        Session session = repositoryManager.getSystemSession(workspace);
+        try {
+            return importFiles(session, files, checksums, items, true);
+        } finally {
+            // unsaved changes of a failed file are discarded along with the session
+            session.logout();
+        }
+    }
+
+    /**
+     * Imports the files into the given session, saving it after each file if asked to.
+     */
+    private List<FileResult> importFiles(Session session, List<BootstrapFile> files, Map<String, String> checksums, Map<String, Set<String>> items, boolean save)
+            throws RepositoryException, IOException {
+        StreamingImporter importer = new StreamingImporter();
+        DiffImporter diffImporter = new DiffImporter();
+        List<FileResult> results = new ArrayList<>(files.size());
+        for (BootstrapFile file : files) {
+            long start = System.nanoTime();
+            String checksum = checksum(file.getResource());
+            if (incremental && checksum.equals(checksums.get(file.getName()))) {
+                results.add(new FileResult(file.getName(), Mode.UNCHANGED, 0, 0, checksum, null));
+                continue;
+            }
+            Set<String> fileItems = new HashSet<>();
+            int count;
+            Mode mode;
+            if (incremental && session.nodeExists(file.getPath())) {
+                // files imported before their items were kept have nothing to remove
+                count = diffImporter.importFile(session, file, items.getOrDefault(file.getName(), Collections.<String>emptySet()), fileItems);
+                mode = Mode.UPDATED;
+            } else {
+                count = importer.importFile(session, file, fileItems);
+                mode = Mode.IMPORTED;
+            }
+            if (save && session.hasPendingChanges()) {
+                session.save();
+            }
+            results.add(new FileResult(file.getName(), mode, count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), checksum, fileItems));
+        }
+        return results;
+    }
+
+    private static Map<String, String> readChecksums(Session session) throws RepositoryException {
+        Map<String, String> checksums = new HashMap<>();
+        if (session.nodeExists(CHECKSUMS_PATH)) {
+            for (PropertyIterator iter = session.getNode(CHECKSUMS_PATH).getProperties(); iter.hasNext(); ) {
+                Property property = iter.nextProperty();
+                if (!property.getName().startsWith("jcr:") && !property.getName().startsWith(NodeTypes.MGNL_PREFIX)) {
+                    checksums.put(property.getName(), property.getString());
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private static Map<String, Set<String>> readItems(Session session) throws RepositoryException {
+        Map<String, Set<String>> items = new HashMap<>();
+        if (session.nodeExists(ITEMS_PATH)) {
+            for (PropertyIterator iter = session.getNode(ITEMS_PATH).getProperties(); iter.hasNext(); ) {
+                Property property = iter.nextProperty();
+                if (property.isMultiple()) {
+                    Set<String> keys = new HashSet<>();
+                    for (Value value : property.getValues()) {
+                        keys.add(value.getString());
+                    }
+                    items.put(property.getName(), keys);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static void writeChecksums(Session session, Collection<FileResult> results) throws RepositoryException {
+        if (results.isEmpty()) {
+            return;
+        }
+        Node checksums = NodeUtil.createPath(session.getRootNode(), StringUtils.removeStart(CHECKSUMS_PATH, "/"), NodeTypes.Content.NAME);
+        Node items = NodeUtil.createPath(session.getRootNode(), StringUtils.removeStart(ITEMS_PATH, "/"), NodeTypes.Content.NAME);
+        for (FileResult result : results) {
+            if (!result.checksum.equals(PropertyUtil.getString(checksums, result.name))) {
+                checksums.setProperty(result.name, result.checksum);
+            }
+            List<String> keys = new ArrayList<>(result.items);
+            Collections.sort(keys);
+            items.setProperty(result.name, keys.toArray(new String[keys.size()]));
+        }
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 checksum of the resource.
+     */
+    static String checksum(Resource resource) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(resource.openStream(), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // only digesting
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private enum Mode {
+        IMPORTED, UPDATED, UNCHANGED
+    }
+
+    /**
+     * Outcome of one file.
+     */
+    private static class FileResult {
+        private final String name;
+        private final Mode mode;
+        private final int count;
+        private final long millis;
+        private final String checksum;
+        private final Set<String> items;
+
+        private FileResult(String name, Mode mode, int count, long millis, String checksum, Set<String> items) {
+            this.name = name;
+            this.mode = mode;
+            this.count = count;
+            this.millis = millis;
+            this.checksum = checksum;
+            this.items = items;
+        }
+    }
+}
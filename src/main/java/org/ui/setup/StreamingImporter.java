@@ -0,0 +1,149 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Imports a {@link BootstrapFile} by streaming its SAX events into the import handler of a session, instead of parsing
+ * it into a DOM first. The session isn't saved: callers save it once the file is complete, or leave that to the install
+ * context, so that a file is never left half imported.
+ */
+public class StreamingImporter {
+
+    private static final String SV_NAMESPACE = "http://www.jcp.org/jcr/sv/1.0";
+    private static final String NODE = "node";
+    private static final String PROPERTY = "property";
+    private static final String NAME = "name";
+
+    private final SAXParserFactory parserFactory;
+
+    public StreamingImporter() {
+        this.parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        try {
+            parserFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("Cannot configure the XML parser.", e);
+        }
+    }
+
+    /**
+     * Replaces the node of the given file with its content, without saving the session.
+     *
+     * @param items receives the keys of the imported items, see {@link SystemViewNode#getItems()}
+     * @return the number of imported nodes
+     */
+    public int importFile(Session session, BootstrapFile file, Set<String> items) throws RepositoryException, IOException {
+        if (session.nodeExists(file.getPath())) {
+            session.removeItem(file.getPath());
+        }
+        if (!session.nodeExists(file.getParentPath())) {
+            NodeUtil.createPath(session.getRootNode(), StringUtils.removeStart(file.getParentPath(), "/"), NodeTypes.Content.NAME);
+        }
+        ItemFilter filter = new ItemFilter(items);
+        filter.setContentHandler(session.getImportContentHandler(file.getParentPath(), ImportUUIDBehavior.IMPORT_UUID_COLLISION_REPLACE_EXISTING));
+        try (InputStream in = file.getResource().openStream()) {
+            XMLReader reader = parserFactory.newSAXParser().getXMLReader();
+            filter.setParent(reader);
+            filter.parse(new InputSource(in));
+        } catch (ParserConfigurationException | SAXException e) {
+            if (e.getCause() instanceof RepositoryException) {
+                throw (RepositoryException) e.getCause();
+            }
+            throw new RepositoryException("Cannot import " + file.getName(), e);
+        }
+        return filter.nodes;
+    }
+
+    /**
+     * Counts the imported nodes and collects the keys of the imported items.
+     */
+    private static class ItemFilter extends XMLFilterImpl {
+        private final Deque<String> paths = new ArrayDeque<>();
+        private final Set<String> items;
+        private int nodes;
+
+        private ItemFilter(Set<String> items) {
+            this.items = items;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            super.startElement(uri, localName, qName, attributes);
+            if (!SV_NAMESPACE.equals(uri)) {
+                return;
+            }
+            String name = attributes.getValue(SV_NAMESPACE, NAME);
+            if (NODE.equals(localName)) {
+                String path = paths.isEmpty() ? "" : SystemViewNode.childPath(paths.peek(), name);
+                if (!paths.isEmpty()) {
+                    items.add(path);
+                }
+                paths.push(path);
+            } else if (PROPERTY.equals(localName) && !SystemViewNode.isStructural(name)) {
+                items.add(SystemViewNode.propertyKey(paths.peek(), name));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if (SV_NAMESPACE.equals(uri) && NODE.equals(localName)) {
+                paths.pop();
+                nodes++;
+            }
+        }
+    }
+}
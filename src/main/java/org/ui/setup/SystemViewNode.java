@@ -0,0 +1,298 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.setup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.PropertyType;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Node of a system view export, read with SAX into a lightweight tree so that it can be compared to the repository.
+ */
+final class SystemViewNode {
+
+    static final String SV_NAMESPACE = "http://www.jcp.org/jcr/sv/1.0";
+    static final String PRIMARY_TYPE = "jcr:primaryType";
+    static final String MIXIN_TYPES = "jcr:mixinTypes";
+    static final String UUID = "jcr:uuid";
+
+    private final String name;
+    private final Map<String, Property> properties = new LinkedHashMap<>();
+    private final List<SystemViewNode> children = new ArrayList<>();
+
+    private SystemViewNode(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Map<String, Property> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    List<SystemViewNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    String getPrimaryType() {
+        Property property = properties.get(PRIMARY_TYPE);
+        return property == null || property.values.isEmpty() ? null : property.values.get(0);
+    }
+
+    String getIdentifier() {
+        Property property = properties.get(UUID);
+        return property == null || property.values.isEmpty() ? null : property.values.get(0);
+    }
+
+    /**
+     * Returns the keys of the nodes below this one and of the properties of this one and of the nodes below, see
+     * {@link #childPath(String, String)} and {@link #propertyKey(String, String)}.
+     */
+    Set<String> getItems() {
+        Set<String> items = new HashSet<>();
+        collectItems("", items);
+        return items;
+    }
+
+    private void collectItems(String path, Set<String> items) {
+        for (Property property : properties.values()) {
+            if (!isStructural(property.name)) {
+                items.add(propertyKey(path, property.name));
+            }
+        }
+        for (SystemViewNode child : children) {
+            String childPath = childPath(path, child.name);
+            items.add(childPath);
+            child.collectItems(childPath, items);
+        }
+    }
+
+    /**
+     * Path of a node relative to the root of its export, e.g. <code>child/grandchild</code>; empty for the root.
+     */
+    static String childPath(String path, String name) {
+        return path.isEmpty() ? name : path + "/" + name;
+    }
+
+    /**
+     * Key of a property of the node at the given relative path, e.g. <code>child|title</code>; <code>|</code> cannot
+     * occur in a JCR name.
+     */
+    static String propertyKey(String path, String name) {
+        return path + "|" + name;
+    }
+
+    /**
+     * Whether the property is imported with the node rather than set on it: primary type, mixins and identifier.
+     */
+    static boolean isStructural(String name) {
+        return PRIMARY_TYPE.equals(name) || MIXIN_TYPES.equals(name) || UUID.equals(name);
+    }
+
+    /**
+     * Reads the root node of a system view export.
+     */
+    static SystemViewNode parse(InputStream in) throws IOException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Parser parser = new Parser();
+            factory.newSAXParser().parse(new InputSource(in), parser);
+            if (parser.root == null) {
+                throw new SAXException("No node found");
+            }
+            return parser.root;
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Replays the node as system view SAX events, e.g. into the import handler of a session.
+     */
+    void toSax(ContentHandler handler) throws SAXException {
+        handler.startDocument();
+        handler.startPrefixMapping("sv", SV_NAMESPACE);
+        write(handler);
+        handler.endPrefixMapping("sv");
+        handler.endDocument();
+    }
+
+    private void write(ContentHandler handler) throws SAXException {
+        handler.startElement(SV_NAMESPACE, "node", "sv:node", nameAttribute(name, null, false));
+        for (Property property : properties.values()) {
+            handler.startElement(SV_NAMESPACE, "property", "sv:property", nameAttribute(property.name, PropertyType.nameFromValue(property.type), property.multiple));
+            for (String value : property.values) {
+                handler.startElement(SV_NAMESPACE, "value", "sv:value", new AttributesImpl());
+                handler.characters(value.toCharArray(), 0, value.length());
+                handler.endElement(SV_NAMESPACE, "value", "sv:value");
+            }
+            handler.endElement(SV_NAMESPACE, "property", "sv:property");
+        }
+        for (SystemViewNode child : children) {
+            child.write(handler);
+        }
+        handler.endElement(SV_NAMESPACE, "node", "sv:node");
+    }
+
+    private static Attributes nameAttribute(String name, String type, boolean multiple) {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute(SV_NAMESPACE, "name", "sv:name", "CDATA", name);
+        if (type != null) {
+            attributes.addAttribute(SV_NAMESPACE, "type", "sv:type", "CDATA", type);
+        }
+        if (multiple) {
+            attributes.addAttribute(SV_NAMESPACE, "multiple", "sv:multiple", "CDATA", "true");
+        }
+        return attributes;
+    }
+
+    /**
+     * Property of a system view export, values as exported.
+     */
+    static final class Property {
+        private final String name;
+        private final int type;
+        private final boolean multiple;
+        private final List<String> values = new ArrayList<>();
+
+        private Property(String name, int type, boolean multiple) {
+            this.name = name;
+            this.type = type;
+            this.multiple = multiple;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getType() {
+            return type;
+        }
+
+        boolean isMultiple() {
+            return multiple || values.size() != 1;
+        }
+
+        List<String> getValues() {
+            return Collections.unmodifiableList(values);
+        }
+    }
+
+    private static class Parser extends DefaultHandler {
+        private final Deque<SystemViewNode> nodes = new ArrayDeque<>();
+        private SystemViewNode root;
+        private Property property;
+        private StringBuilder value;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (!SV_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+            case "node":
+                SystemViewNode node = new SystemViewNode(attributes.getValue(SV_NAMESPACE, "name"));
+                if (nodes.isEmpty()) {
+                    root = node;
+                } else {
+                    nodes.peek().children.add(node);
+                }
+                nodes.push(node);
+                break;
+            case "property":
+                String type = attributes.getValue(SV_NAMESPACE, "type");
+                property = new Property(attributes.getValue(SV_NAMESPACE, "name"), type == null ? PropertyType.STRING : PropertyType.valueFromName(type),
+                        "true".equals(attributes.getValue(SV_NAMESPACE, "multiple")));
+                nodes.peek().properties.put(property.name, property);
+                break;
+            case "value":
+                value = new StringBuilder();
+                break;
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (value != null) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!SV_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+            case "node":
+                nodes.pop();
+                break;
+            case "property":
+                property = null;
+                break;
+            case "value":
+                property.values.add(value.toString());
+                value = null;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
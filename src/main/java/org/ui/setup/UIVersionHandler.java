@@ -1,16 +1,46 @@
 package org.ui.setup;
 
 import info.magnolia.module.DefaultModuleVersionHandler;
+import info.magnolia.module.InstallContext;
+import info.magnolia.module.delta.Task;
+import info.magnolia.module.model.Version;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is optional and lets you manage the versions of your module,
  * by registering "deltas" to maintain the module's configuration, or other type of content.
  * If you don't need this, simply remove the reference to this class in the module descriptor xml.
  *
+ * On install, the content exported to the <code>data</code> directory of the light module is bootstrapped; on update,
+ * only the files which changed since are applied. Install and updates deny anonymous access to the metrics and alerts servlets.
+ *
  * @see info.magnolia.module.DefaultModuleVersionHandler
  * @see info.magnolia.module.ModuleVersionHandler
  * @see info.magnolia.module.delta.Task
  */
 public class UIVersionHandler extends DefaultModuleVersionHandler {
 
+    static final String DATA_DIRECTORY = "/ui/data";
+    static final String METRICS_URI = "/.ui/metrics*";
+    static final String ALERTS_URI = "/.ui/alerts*";
+
+    @Override
+    protected List<Task> getExtraInstallTasks(InstallContext installContext) {
+        List<Task> tasks = new ArrayList<>(super.getExtraInstallTasks(installContext));
+        tasks.add(new ParallelBootstrapTask(DATA_DIRECTORY, false));
+        tasks.add(new DenyAnonymousURITask(METRICS_URI));
+        tasks.add(new DenyAnonymousURITask(ALERTS_URI));
+        return tasks;
+    }
+
+    @Override
+    protected List<Task> getDefaultUpdateTasks(Version forVersion) {
+        List<Task> tasks = new ArrayList<>(super.getDefaultUpdateTasks(forVersion));
+        tasks.add(new ParallelBootstrapTask(DATA_DIRECTORY, true));
+        tasks.add(new DenyAnonymousURITask(METRICS_URI));
+        tasks.add(new DenyAnonymousURITask(ALERTS_URI));
+        return tasks;
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.site;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * Resolves locales against the locales of the {@link Site} of the rendered content, using the tables precomputed by
+ * the {@link SiteResolver}. Content outside of any site, or of a site without i18n, gets the locale it asks for.
+ * All returned locales are interned.
+ */
+@Singleton
+public class LocaleResolver {
+
+    private final SiteResolver siteResolver;
+
+    @Inject
+    public LocaleResolver(SiteResolver siteResolver) {
+        this.siteResolver = siteResolver;
+    }
+
+    /**
+     * Returns the locale of the given language string supported by the site of the given content, or else its fallback locale.
+     */
+    public Locale getLocale(Node content, String language) throws RepositoryException {
+        Site site = getI18nSite(content);
+        if (site == null) {
+            return Locales.intern(language);
+        }
+        Locale locale = site.resolveLocale(language);
+        return locale != null ? locale : Locales.intern(language);
+    }
+
+    /**
+     * Returns the locales to look content up in for the given language, most specific first.
+     */
+    public List<Locale> getFallbackChain(Node content, String language) throws RepositoryException {
+        Site site = getI18nSite(content);
+        if (site == null) {
+            Locale locale = Locales.intern(language);
+            return locale == null ? Collections.<Locale>emptyList() : Collections.singletonList(locale);
+        }
+        return site.getFallbackChain(site.resolveLocale(language));
+    }
+
+    /**
+     * Returns the locales of the site of the given content, empty if it has none.
+     */
+    public List<Locale> getLocales(Node content) throws RepositoryException {
+        Site site = getI18nSite(content);
+        return site == null ? Collections.<Locale>emptyList() : site.getLocales();
+    }
+
+    private Site getI18nSite(Node content) throws RepositoryException {
+        Site site = siteResolver.getSite(content);
+        return site != null && site.isI18nEnabled() && !site.getLocales().isEmpty() ? site : null;
+    }
+}
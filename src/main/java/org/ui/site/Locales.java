@@ -0,0 +1,90 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.site;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Interned {@link Locale}s by language string, so templates asking for the same locale on every render share one
+ * instance instead of parsing it again. Both <code>de_CH</code> and <code>de-CH</code> are accepted.
+ */
+public final class Locales {
+
+    /**
+     * Bound of the table, against pages asking for arbitrary strings; further locales are parsed but not kept.
+     */
+    private static final int MAX_SIZE = 1000;
+
+    private static final ConcurrentMap<String, Locale> LOCALES = new ConcurrentHashMap<>();
+
+    private Locales() {
+    }
+
+    /**
+     * Returns the locale of the given string, or <code>null</code> if it is blank or not a locale.
+     */
+    public static Locale intern(String language) {
+        if (StringUtils.isBlank(language)) {
+            return null;
+        }
+        Locale locale = LOCALES.get(language);
+        if (locale != null) {
+            return locale;
+        }
+        try {
+            locale = LocaleUtils.toLocale(language.replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // one instance per distinct locale, whichever string it was asked with
+        Locale canonical = LOCALES.get(locale.toString());
+        if (canonical != null) {
+            locale = canonical;
+        } else if (LOCALES.size() < MAX_SIZE) {
+            canonical = LOCALES.putIfAbsent(locale.toString(), locale);
+            if (canonical != null) {
+                locale = canonical;
+            }
+        }
+        if (LOCALES.size() < MAX_SIZE) {
+            LOCALES.putIfAbsent(language, locale);
+        }
+        return locale;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.site;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable view of a multisite definition, as far as request matching and locales are concerned.
+ * <p>
+ * The table of supported locales and their fallback chains are computed once, so resolving the locale of a render
+ * is a map lookup.
+ */
+public final class Site {
+
+    private final String name;
+    private final List<String> handlePrefixes;
+    private final List<String> domains;
+    private final boolean i18nEnabled;
+    private final List<Locale> locales;
+    private final Locale fallbackLocale;
+    private final Map<String, Locale> supported = new HashMap<>();
+    private final Map<Locale, List<Locale>> fallbackChains = new HashMap<>();
+
+    Site(String name, List<String> handlePrefixes, List<String> domains, boolean i18nEnabled, List<Locale> locales, Locale fallbackLocale) {
+        this.name = name;
+        this.handlePrefixes = Collections.unmodifiableList(handlePrefixes);
+        this.domains = Collections.unmodifiableList(domains);
+        this.i18nEnabled = i18nEnabled;
+        this.locales = Collections.unmodifiableList(locales);
+        this.fallbackLocale = fallbackLocale;
+        for (Locale locale : locales) {
+            supported.putIfAbsent(locale.toString(), locale);
+            supported.putIfAbsent(locale.toLanguageTag(), locale);
+        }
+        // a bare language resolves to its first configured locale, e.g. de to de_CH
+        for (Locale locale : locales) {
+            supported.putIfAbsent(locale.getLanguage(), locale);
+        }
+        for (Locale locale : locales) {
+            List<Locale> chain = new ArrayList<>(3);
+            chain.add(locale);
+            Locale language = supported.get(locale.getLanguage());
+            if (language != null && !chain.contains(language)) {
+                chain.add(language);
+            }
+            if (fallbackLocale != null && !chain.contains(fallbackLocale)) {
+                chain.add(fallbackLocale);
+            }
+            fallbackChains.put(locale, Collections.unmodifiableList(chain));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Paths of the <code>website</code> workspace mapped to the site, e.g. <code>/travel</code>.
+     */
+    public List<String> getHandlePrefixes() {
+        return handlePrefixes;
+    }
+
+    public List<String> getDomains() {
+        return domains;
+    }
+
+    public boolean isI18nEnabled() {
+        return i18nEnabled;
+    }
+
+    /**
+     * Enabled locales, in configuration order.
+     */
+    public List<Locale> getLocales() {
+        return locales;
+    }
+
+    public Locale getFallbackLocale() {
+        return fallbackLocale;
+    }
+
+    /**
+     * Returns the supported locale of the given language string (<code>de_CH</code>, <code>de-CH</code> or <code>de</code>),
+     * or else the fallback locale; <code>null</code> if the site has neither.
+     */
+    public Locale resolveLocale(String language) {
+        Locale locale = language == null ? null : supported.get(language);
+        return locale != null ? locale : fallbackLocale;
+    }
+
+    /**
+     * Returns the locales to look content up in for the given supported locale, most specific first, ending with the
+     * fallback locale; only the fallback locale for unsupported ones.
+     */
+    public List<Locale> getFallbackChain(Locale locale) {
+        List<Locale> chain = fallbackChains.get(locale);
+        if (chain != null) {
+            return chain;
+        }
+        return fallbackLocale == null ? Collections.<Locale>emptyList() : Collections.singletonList(fallbackLocale);
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.site;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable matcher of requests to {@link Site}s, compiled once from all site definitions.
+ * <p>
+ * Handle prefixes are kept in a trie of path segments and domains in a trie of their labels, last label first, so a
+ * match costs one map lookup per segment or label whatever the number of sites. As in the multisite module, a domain
+ * match wins over a handle prefix match, longer matches win over shorter ones, and the <code>fallback</code> site is
+ * returned when nothing matches.
+ */
+public final class SiteMatcher {
+
+    public static final String FALLBACK = "fallback";
+
+    private final Trie handles;
+    private final Trie domains;
+    private final Map<String, Site> sites;
+    private final Site fallback;
+
+    /**
+     * Match of a site, with the handle prefix of the path if it matched one.
+     */
+    public static final class Match {
+        private final Site site;
+        private final String handlePrefix;
+
+        private Match(Site site, String handlePrefix) {
+            this.site = site;
+            this.handlePrefix = handlePrefix;
+        }
+
+        public Site getSite() {
+            return site;
+        }
+
+        /**
+         * Handle prefix of the matched path, i.e. the root of the site content; <code>null</code> if the path didn't match one.
+         */
+        public String getHandlePrefix() {
+            return handlePrefix;
+        }
+    }
+
+    private SiteMatcher(Trie handles, Trie domains, Map<String, Site> sites) {
+        this.handles = handles;
+        this.domains = domains;
+        this.sites = Collections.unmodifiableMap(sites);
+        this.fallback = sites.get(FALLBACK);
+    }
+
+    public static SiteMatcher empty() {
+        return compile(Collections.<Site>emptyList());
+    }
+
+    public static SiteMatcher compile(Collection<Site> sites) {
+        Trie handles = new Trie();
+        Trie domains = new Trie();
+        Map<String, Site> byName = new HashMap<>();
+        for (Site site : sites) {
+            byName.put(site.getName(), site);
+            for (String handlePrefix : site.getHandlePrefixes()) {
+                handles.put(StringUtils.split(handlePrefix, '/'), false, site, normalize(handlePrefix));
+            }
+            for (String domain : site.getDomains()) {
+                domains.put(StringUtils.split(StringUtils.lowerCase(domain), '.'), true, site, null);
+            }
+        }
+        return new SiteMatcher(handles, domains, byName);
+    }
+
+    /**
+     * Matches the given server name and content path; either may be <code>null</code>. Returns <code>null</code> only if
+     * nothing matches and there is no fallback site.
+     */
+    public Match match(String domain, String path) {
+        Trie handle = path == null ? null : handles.find(StringUtils.split(path, '/'), false);
+        Trie byDomain = domain == null ? null : domains.find(StringUtils.split(StringUtils.lowerCase(domain), '.'), true);
+        if (byDomain != null) {
+            // the content root is still the prefix of the path, if it belongs to the same site
+            return new Match(byDomain.site, handle != null && handle.site == byDomain.site ? handle.handlePrefix : null);
+        }
+        if (handle != null) {
+            return new Match(handle.site, handle.handlePrefix);
+        }
+        return fallback == null ? null : new Match(fallback, null);
+    }
+
+    public Site getSite(String name) {
+        return sites.get(name);
+    }
+
+    public Collection<Site> getSites() {
+        return sites.values();
+    }
+
+    private static String normalize(String handlePrefix) {
+        return "/" + StringUtils.strip(handlePrefix, "/");
+    }
+
+    /**
+     * Node of a trie, holding the site of the key ending there. Only mutated while compiling.
+     */
+    private static final class Trie {
+        private final Map<String, Trie> children = new HashMap<>(4);
+        private Site site;
+        private String handlePrefix;
+
+        private void put(String[] key, boolean reversed, Site site, String handlePrefix) {
+            Trie node = this;
+            for (int i = 0; i < key.length; i++) {
+                node = node.children.computeIfAbsent(key[reversed ? key.length - 1 - i : i], k -> new Trie());
+            }
+            // first definition wins, as with the configuration order of the multisite module
+            if (node.site == null) {
+                node.site = site;
+                node.handlePrefix = handlePrefix;
+            }
+        }
+
+        /**
+         * Returns the node of the longest prefix of the given key holding a site, or <code>null</code>.
+         */
+        private Trie find(String[] key, boolean reversed) {
+            Trie node = this;
+            Trie found = site == null ? null : this;
+            for (int i = 0; i < key.length; i++) {
+                node = node.children.get(key[reversed ? key.length - 1 - i : i]);
+                if (node == null) {
+                    break;
+                }
+                if (node.site != null) {
+                    found = node;
+                }
+            }
+            return found;
+        }
+    }
+}
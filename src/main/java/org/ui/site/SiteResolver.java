@@ -0,0 +1,213 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.site;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.context.WebContext;
+import info.magnolia.jcr.util.NodeTypes;
+import info.magnolia.jcr.util.NodeUtil;
+import info.magnolia.jcr.util.PropertyUtil;
+import info.magnolia.jcr.wrapper.ExtendingNodeWrapper;
+import info.magnolia.observation.WorkspaceEventListenerRegistration;
+import info.magnolia.repository.RepositoryConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.inject.Singleton;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the {@link Site} of rendered content with a {@link SiteMatcher} compiled from the multisite definitions of
+ * the <code>config</code> workspace, including those extending others. The definitions are observed and the matcher
+ * replaced as a whole when they change, so requests never see a partially built one.
+ */
+@Singleton
+public class SiteResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(SiteResolver.class);
+
+    public static final String SITES_PATH = "/modules/multisite/config/sites";
+
+    private static final long LISTENER_DELAY = 500;
+    private static final long LISTENER_MAX_DELAY = 2000;
+
+    private volatile SiteMatcher matcher = SiteMatcher.empty();
+    private volatile WorkspaceEventListenerRegistration.Handle registration;
+
+    /**
+     * Matches the given content of the <code>website</code> workspace, and the server name of the current request.
+     */
+    public SiteMatcher.Match match(Node content) throws RepositoryException {
+        String path = content != null && RepositoryConstants.WEBSITE.equals(content.getSession().getWorkspace().getName()) ? content.getPath() : null;
+        return matcher.match(getServerName(), path);
+    }
+
+    /**
+     * Returns the site of the given content, or <code>null</code> if no site is defined.
+     */
+    public Site getSite(Node content) throws RepositoryException {
+        SiteMatcher.Match match = match(content);
+        return match == null ? null : match.getSite();
+    }
+
+    /**
+     * Returns the root of the site of the given content, i.e. the node of its handle prefix, or <code>null</code> if its
+     * path isn't mapped to a site.
+     */
+    public Node getSiteRoot(Node content) throws RepositoryException {
+        SiteMatcher.Match match = match(content);
+        if (match == null || match.getHandlePrefix() == null) {
+            return null;
+        }
+        Session session = content.getSession();
+        return session.nodeExists(match.getHandlePrefix()) ? session.getNode(match.getHandlePrefix()) : null;
+    }
+
+    public SiteMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Compiles the site definitions again.
+     */
+    public synchronized void rebuild() {
+        List<Site> sites;
+        try {
+            sites = MgnlContext.doInSystemContext(new MgnlContext.Op<List<Site>, RepositoryException>() {
+                @Override
+                public List<Site> exec() throws RepositoryException {
+                    List<Site> sites = new ArrayList<>();
+                    Session session = MgnlContext.getJCRSession(RepositoryConstants.CONFIG);
+                    if (session.nodeExists(SITES_PATH)) {
+                        for (Node site : NodeUtil.getNodes(session.getNode(SITES_PATH), NodeTypes.ContentNode.NAME)) {
+                            sites.add(read(new ExtendingNodeWrapper(site)));
+                        }
+                    }
+                    return sites;
+                }
+            });
+        } catch (RepositoryException | RuntimeException e) {
+            log.warn("Cannot read the site definitions, keeping the previous ones.", e);
+            return;
+        }
+        matcher = SiteMatcher.compile(sites);
+        log.info("Compiled {} site definitions.", sites.size());
+    }
+
+    public synchronized void start() {
+        if (registration != null) {
+            return;
+        }
+        rebuild();
+        try {
+            registration = WorkspaceEventListenerRegistration.observe(RepositoryConstants.CONFIG, SITES_PATH, events -> rebuild())
+                    .withSubNodes(true)
+                    .withDelay(LISTENER_DELAY, LISTENER_MAX_DELAY)
+                    .register();
+        } catch (RepositoryException e) {
+            log.warn("Cannot observe the site definitions, changes will only apply after a restart.", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (RepositoryException e) {
+                log.warn("Cannot stop observing the site definitions.", e);
+            }
+            registration = null;
+        }
+        matcher = SiteMatcher.empty();
+    }
+
+    private static Site read(Node site) throws RepositoryException {
+        List<String> handlePrefixes = new ArrayList<>();
+        if (site.hasNode("mappings")) {
+            for (Node mapping : NodeUtil.getNodes(site.getNode("mappings"), NodeTypes.ContentNode.NAME)) {
+                String handlePrefix = PropertyUtil.getString(mapping, "handlePrefix");
+                if (StringUtils.isNotBlank(handlePrefix) && RepositoryConstants.WEBSITE.equals(PropertyUtil.getString(mapping, "repository", RepositoryConstants.WEBSITE))) {
+                    handlePrefixes.add(handlePrefix);
+                }
+            }
+        }
+        List<String> domains = new ArrayList<>();
+        if (site.hasNode("domains")) {
+            for (Node domain : NodeUtil.getNodes(site.getNode("domains"), NodeTypes.ContentNode.NAME)) {
+                String name = PropertyUtil.getString(domain, "name");
+                if (StringUtils.isNotBlank(name)) {
+                    domains.add(name);
+                }
+            }
+        }
+        boolean i18nEnabled = false;
+        List<Locale> locales = new ArrayList<>();
+        Locale fallbackLocale = null;
+        if (site.hasNode("i18n")) {
+            Node i18n = site.getNode("i18n");
+            i18nEnabled = PropertyUtil.getBoolean(i18n, "enabled", false);
+            fallbackLocale = toLocale(PropertyUtil.getString(i18n, "fallbackLocale"), null);
+            if (i18n.hasNode("locales")) {
+                for (Node locale : NodeUtil.getNodes(i18n.getNode("locales"), NodeTypes.ContentNode.NAME)) {
+                    Locale parsed = toLocale(PropertyUtil.getString(locale, "language"), PropertyUtil.getString(locale, "country"));
+                    if (parsed != null && PropertyUtil.getBoolean(locale, "enabled", true)) {
+                        locales.add(parsed);
+                    }
+                }
+            }
+        }
+        return new Site(site.getName(), handlePrefixes, domains, i18nEnabled, locales, fallbackLocale);
+    }
+
+    private static Locale toLocale(String language, String country) {
+        Locale locale = Locales.intern(StringUtils.isBlank(country) ? language : language + "_" + country);
+        if (locale == null && StringUtils.isNotBlank(language)) {
+            log.warn("Ignoring invalid locale [{}].", language);
+        }
+        return locale;
+    }
+
+    private static String getServerName() {
+        WebContext webContext = MgnlContext.isWebContext() ? MgnlContext.getWebContext() : null;
+        return webContext == null || webContext.getRequest() == null ? null : webContext.getRequest().getServerName();
+    }
+}
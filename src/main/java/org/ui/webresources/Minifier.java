@@ -0,0 +1,214 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.webresources;
+
+/**
+ * Conservative whitespace and comment minification of stylesheets and scripts.
+ * <p>
+ * Nothing is renamed or rewritten: comments are dropped, except <code>/*!</code> license comments, and whitespace is
+ * collapsed. Scripts keep their line breaks, so automatic semicolon insertion works as in the source.
+ */
+final class Minifier {
+
+    private static final String CSS_PUNCTUATION = "{};,>";
+    private static final String REGEX_PRECEDING = "(,=:[!&|?{};+-*%<>~^";
+    private static final String[] REGEX_KEYWORDS = { "return", "typeof", "case", "else", "in", "of", "void", "delete", "throw", "new" };
+
+    private Minifier() {
+    }
+
+    static String css(String source) {
+        StringBuilder out = new StringBuilder(source.length());
+        boolean space = false;
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = copyString(source, i, out, space);
+                space = false;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                if (i + 2 < length && source.charAt(i + 2) == '!') {
+                    out.append(source, i, end).append('\n');
+                }
+                i = end - 1;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                char last = out.length() == 0 ? 0 : out.charAt(out.length() - 1);
+                if (space && last != 0 && last != '\n' && CSS_PUNCTUATION.indexOf(last) < 0 && CSS_PUNCTUATION.indexOf(c) < 0) {
+                    out.append(' ');
+                }
+                space = false;
+                if (c == '}' && last == ';') {
+                    out.setLength(out.length() - 1);
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    static String js(String source) {
+        StringBuilder out = new StringBuilder(source.length());
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'' || c == '`') {
+                i = copyString(source, i, out, false);
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i + 1 < length && source.charAt(i + 1) != '\n' && source.charAt(i + 1) != '\r') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                if (i + 2 < length && source.charAt(i + 2) == '!') {
+                    out.append(source, i, end);
+                } else if (source.substring(i, end).indexOf('\n') >= 0) {
+                    newline(out);
+                } else {
+                    space(out);
+                }
+                i = end - 1;
+            } else if (c == '/' && regexAllowed(out)) {
+                int end = regexEnd(source, i);
+                if (end < 0) {
+                    out.append(c);
+                } else {
+                    out.append(source, i, end);
+                    i = end - 1;
+                }
+            } else if (c == '\n' || c == '\r') {
+                newline(out);
+            } else if (Character.isWhitespace(c)) {
+                space(out);
+            } else {
+                out.append(c);
+            }
+        }
+        trimTrailingSpace(out);
+        return out.toString();
+    }
+
+    /**
+     * Copies the string literal starting at the given index, returns the index of its closing quote.
+     */
+    private static int copyString(String source, int start, StringBuilder out, boolean space) {
+        if (space && out.length() > 0 && out.charAt(out.length() - 1) != '\n' && CSS_PUNCTUATION.indexOf(out.charAt(out.length() - 1)) < 0) {
+            out.append(' ');
+        }
+        char quote = source.charAt(start);
+        int i = start;
+        out.append(quote);
+        while (++i < source.length()) {
+            char c = source.charAt(i);
+            out.append(c);
+            if (c == '\\' && i + 1 < source.length()) {
+                out.append(source.charAt(++i));
+            } else if (c == quote) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index following the regular expression literal starting at the given index, or -1 if the line ends first.
+     */
+    private static int regexEnd(String source, int start) {
+        boolean inClass = false;
+        for (int i = start + 1; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return -1;
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A slash starts a regular expression where an operand is expected, i.e. not after an identifier, number or closing bracket.
+     */
+    private static boolean regexAllowed(StringBuilder out) {
+        int i = out.length() - 1;
+        while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+            i--;
+        }
+        if (i < 0 || REGEX_PRECEDING.indexOf(out.charAt(i)) >= 0) {
+            return true;
+        }
+        int end = i + 1;
+        while (i >= 0 && Character.isJavaIdentifierPart(out.charAt(i))) {
+            i--;
+        }
+        String word = out.substring(i + 1, end);
+        for (String keyword : REGEX_KEYWORDS) {
+            if (keyword.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void space(StringBuilder out) {
+        if (out.length() > 0 && !Character.isWhitespace(out.charAt(out.length() - 1))) {
+            out.append(' ');
+        }
+    }
+
+    private static void newline(StringBuilder out) {
+        trimTrailingSpace(out);
+        if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') {
+            out.append('\n');
+        }
+    }
+
+    private static void trimTrailingSpace(StringBuilder out) {
+        int length = out.length();
+        while (length > 0 && out.charAt(length - 1) == ' ') {
+            length--;
+        }
+        out.setLength(length);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.webresources;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, minified concatenation of the stylesheets or scripts of the module, with its gzip variant.
+ * The name embeds a hash of the content, so the bundle can be cached forever under it.
+ */
+public final class WebResourceBundle {
+
+    private final String type;
+    private final String name;
+    private final String hash;
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final List<String> sources;
+
+    WebResourceBundle(String type, String hash, byte[] content, byte[] gzipped, List<String> sources) {
+        this.type = type;
+        this.name = "ui." + hash + "." + type;
+        this.hash = hash;
+        this.content = content;
+        this.gzipped = gzipped;
+        this.sources = Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * <code>css</code> or <code>js</code>.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the content itself, not a copy: must not be modified.
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    byte[] getGzipped() {
+        return gzipped;
+    }
+
+    /**
+     * Paths of the resources bundled, in order.
+     */
+    public List<String> getSources() {
+        return sources;
+    }
+}
@@ -0,0 +1,386 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.webresources;
+
+import info.magnolia.objectfactory.Components;
+import info.magnolia.resourceloader.Resource;
+import info.magnolia.resourceloader.ResourceChangeHandlerRegistration;
+import info.magnolia.resourceloader.ResourceOrigin;
+import info.magnolia.resourceloader.ResourceOriginChange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds one {@link WebResourceBundle} per type out of the stylesheets and scripts found below {@link #getDirectory()},
+ * in the light module and on the classpath alike, at startup and again whenever a source is added, removed or modified:
+ * the bundler registers a change handler with the resource origin, which reports the changes of the watched light
+ * modules without walking them. Where that isn't enough, e.g. for classpath resources replaced at runtime, sources can
+ * also be checked every {@link #getCheckInterval()} milliseconds by a background task; off by default.
+ * <p>
+ * Sources are bundled in the order of {@link #getCssOrder()} and {@link #getJsOrder()}, then alphabetically. Relative
+ * <code>url(...)</code> references of stylesheets are rewritten to point to the original resources from the
+ * {@link WebResourceServlet} path. The resulting manifest maps each type to its bundle, so templates link bundles
+ * without scanning resources.
+ */
+@Singleton
+public class WebResourceBundler {
+
+    private static final Logger log = LoggerFactory.getLogger(WebResourceBundler.class);
+
+    public static final String CSS = "css";
+    public static final String JS = "js";
+
+    private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+    /**
+     * From the bundle path (<code>/.ui/bundles/</code>) back to the root of the resources servlet.
+     */
+    private static final String RESOURCES_FROM_BUNDLES = "../../.resources";
+
+    private String directory = "/ui/webresources";
+    private List<String> cssOrder = new ArrayList<>(Arrays.asList("/ui/webresources/css/bootstrap.css"));
+    private List<String> jsOrder = new ArrayList<>(Arrays.asList("/ui/webresources/js/jquery.js", "/ui/webresources/js/bootstrap.js"));
+
+    private long checkInterval = 0;
+
+    private volatile Map<String, WebResourceBundle> manifest = Collections.emptyMap();
+    /**
+     * Last modification time of each source of the current bundles, by path.
+     */
+    private volatile Map<String, Long> sourceStamps = Collections.emptyMap();
+    private ScheduledExecutorService checker;
+    private ResourceChangeHandlerRegistration changeHandler;
+
+    public synchronized void start() {
+        if (manifest.isEmpty()) {
+            rebuild();
+        }
+        if (changeHandler == null) {
+            try {
+                changeHandler = Components.getComponent(ResourceOrigin.class).registerResourceChangeHandler(this::onResourceChanged);
+            } catch (RuntimeException e) {
+                log.warn("Cannot follow the changes of the web resources below [{}], they are only bundled at startup.", directory, e);
+            }
+        }
+        if (checker == null && checkInterval > 0) {
+            checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ui-webresources-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(this::rebuildIfChanged, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (changeHandler != null) {
+            changeHandler.unregister();
+            changeHandler = null;
+        }
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        manifest = Collections.emptyMap();
+        sourceStamps = Collections.emptyMap();
+    }
+
+    private void onResourceChanged(ResourceOriginChange change) {
+        String path = change.getRelatedResourcePath();
+        if (path == null || !(path.equals(directory) || path.startsWith(directory + "/"))) {
+            return;
+        }
+        try {
+            log.debug("Web resource [{}] changed, bundling the web resources again.", path);
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Cannot bundle the web resources again after [{}] changed.", path, e);
+        }
+    }
+
+    /**
+     * Rebuilds the bundles if a source was added, removed or modified since the last build.
+     */
+    public void rebuildIfChanged() {
+        try {
+            ResourceOrigin<?> origin = Components.getComponent(ResourceOrigin.class);
+            Map<String, List<Resource>> sources = new HashMap<>();
+            if (origin.hasPath(directory)) {
+                collect(origin.getByPath(directory), sources);
+            }
+            if (!stamp(sources).equals(sourceStamps)) {
+                log.debug("Web resources below [{}] changed, bundling them again.", directory);
+                rebuild();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot check the web resources below [{}] for changes.", directory, e);
+        }
+    }
+
+    /**
+     * Builds the bundles again from the current resources. The previous bundles are kept when they cannot be built.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<String, WebResourceBundle> bundles = new HashMap<>();
+        Map<String, Long> stamps;
+        try {
+            ResourceOrigin<?> origin = Components.getComponent(ResourceOrigin.class);
+            if (!origin.hasPath(directory)) {
+                log.info("No web resources below [{}], nothing to bundle.", directory);
+                manifest = Collections.emptyMap();
+                sourceStamps = Collections.emptyMap();
+                return;
+            }
+            Map<String, List<Resource>> sources = new HashMap<>();
+            collect(origin.getByPath(directory), sources);
+            stamps = stamp(sources);
+            for (String type : Arrays.asList(CSS, JS)) {
+                List<Resource> resources = sources.get(type);
+                if (resources != null) {
+                    bundles.put(type, bundle(type, sort(resources, CSS.equals(type) ? cssOrder : jsOrder)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot bundle the web resources below [{}], keeping the previous bundles.", directory, e);
+            return;
+        }
+        manifest = Collections.unmodifiableMap(bundles);
+        sourceStamps = stamps;
+        for (WebResourceBundle bundle : bundles.values()) {
+            log.info("Bundled {} resources into [{}] ({} bytes, {} gzipped).", bundle.getSources().size(), bundle.getName(), bundle.getContent().length, bundle.getGzipped().length);
+        }
+        log.debug("Bundled web resources in {} ms.", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Returns the bundle of the given type, or <code>null</code> if there is none.
+     */
+    public WebResourceBundle getBundle(String type) {
+        return manifest.get(type);
+    }
+
+    /**
+     * Returns the bundle of the given file name, or <code>null</code> if it isn't current.
+     */
+    public WebResourceBundle getBundleByName(String name) {
+        WebResourceBundle bundle = manifest.get(StringUtils.substringAfterLast(name, "."));
+        return bundle != null && bundle.getName().equals(name) ? bundle : null;
+    }
+
+    /**
+     * Bundles as resolved at the last build, by type.
+     */
+    public Map<String, WebResourceBundle> getManifest() {
+        return manifest;
+    }
+
+    /**
+     * In milliseconds, 0 (the default) to rely on the change handler only; only taken into account on next
+     * {@link #start()}.
+     */
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Stylesheets to bundle first, in this order; e.g. frameworks which the others override.
+     */
+    public List<String> getCssOrder() {
+        return cssOrder;
+    }
+
+    public void setCssOrder(List<String> cssOrder) {
+        this.cssOrder = cssOrder;
+    }
+
+    /**
+     * Scripts to bundle first, in this order; e.g. libraries the others depend on.
+     */
+    public List<String> getJsOrder() {
+        return jsOrder;
+    }
+
+    public void setJsOrder(List<String> jsOrder) {
+        this.jsOrder = jsOrder;
+    }
+
+    private static void collect(Resource resource, Map<String, List<Resource>> sources) {
+        if (resource.isDirectory()) {
+            for (Resource child : resource.listChildren()) {
+                collect(child, sources);
+            }
+        } else if (resource.isFile()) {
+            String extension = StringUtils.substringAfterLast(resource.getName(), ".");
+            if ((CSS.equals(extension) || JS.equals(extension)) && !resource.getName().contains(".min.")) {
+                sources.computeIfAbsent(extension, k -> new ArrayList<>()).add(resource);
+            }
+        }
+    }
+
+    private static Map<String, Long> stamp(Map<String, List<Resource>> sources) {
+        Map<String, Long> stamps = new HashMap<>();
+        for (List<Resource> resources : sources.values()) {
+            for (Resource resource : resources) {
+                stamps.put(resource.getPath(), resource.getLastModified());
+            }
+        }
+        return stamps;
+    }
+
+    private static List<Resource> sort(List<Resource> resources, List<String> order) {
+        Map<String, Resource> byPath = new HashMap<>();
+        for (Resource resource : resources) {
+            byPath.put(resource.getPath(), resource);
+        }
+        List<Resource> sorted = new ArrayList<>();
+        for (String path : order) {
+            Resource resource = byPath.remove(path);
+            if (resource != null) {
+                sorted.add(resource);
+            }
+        }
+        for (String path : new TreeSet<>(byPath.keySet())) {
+            sorted.add(byPath.get(path));
+        }
+        return sorted;
+    }
+
+    private static WebResourceBundle bundle(String type, List<Resource> resources) throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> paths = new ArrayList<>();
+        for (Resource resource : resources) {
+            String source;
+            try (InputStream in = resource.openStream()) {
+                source = IOUtils.toString(in, StandardCharsets.UTF_8);
+            }
+            if (CSS.equals(type)) {
+                text.append(Minifier.css(rewriteUrls(source, resource.getPath()))).append('\n');
+            } else {
+                // a script not ending with a semicolon must not run into the next one
+                text.append(Minifier.js(source)).append("\n;\n");
+            }
+            paths.add(resource.getPath());
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        return new WebResourceBundle(type, hash(content), content, gzip(content), paths);
+    }
+
+    /**
+     * Rewrites the relative urls of a stylesheet against its own path, so they still resolve from the bundle.
+     */
+    static String rewriteUrls(String css, String path) {
+        URI base = URI.create(StringUtils.substringBeforeLast(path, "/") + "/");
+        Matcher matcher = CSS_URL.matcher(css);
+        StringBuffer out = new StringBuffer(css.length());
+        while (matcher.find()) {
+            String url = matcher.group(2).trim();
+            String replacement = matcher.group();
+            if (!url.startsWith("/") && !url.startsWith("#") && !url.contains(":")) {
+                try {
+                    replacement = "url(" + matcher.group(1) + RESOURCES_FROM_BUNDLES + base.resolve(url).normalize() + matcher.group(1) + ")";
+                } catch (IllegalArgumentException e) {
+                    log.debug("Cannot resolve url [{}] of [{}], keeping it as is.", url, path);
+                }
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+        try (OutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.webresources;
+
+import info.magnolia.objectfactory.Components;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Serves the current {@link WebResourceBundle}s under <code>/.ui/bundles/</code>, mapped by the module descriptor.
+ * Bundle names change with their content, so responses are cacheable for a year; gzip is sent to clients accepting it.
+ */
+public class WebResourceServlet extends HttpServlet {
+
+    public static final String PATH = "/.ui/bundles/";
+
+    private static final String CACHE_CONTROL = "public, max-age=" + TimeUnit.DAYS.toSeconds(365) + ", immutable";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String name = StringUtils.substringAfterLast(request.getRequestURI(), "/");
+        WebResourceBundle bundle = Components.getComponent(WebResourceBundler.class).getBundleByName(name);
+        if (bundle == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String etag = "\"" + bundle.getHash() + "\"";
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        response.setHeader("ETag", etag);
+        response.setHeader("Vary", "Accept-Encoding");
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(WebResourceBundler.CSS.equals(bundle.getType()) ? "text/css; charset=utf-8" : "application/javascript; charset=utf-8");
+        byte[] body = bundle.getContent();
+        if (StringUtils.contains(request.getHeader("Accept-Encoding"), "gzip")) {
+            response.setHeader("Content-Encoding", "gzip");
+            body = bundle.getGzipped();
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
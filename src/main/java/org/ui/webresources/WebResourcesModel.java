@@ -0,0 +1,93 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.webresources;
+
+import info.magnolia.context.MgnlContext;
+import info.magnolia.rendering.model.RenderingModel;
+import info.magnolia.rendering.model.RenderingModelImpl;
+import info.magnolia.rendering.template.RenderableDefinition;
+
+import javax.inject.Inject;
+import javax.jcr.Node;
+
+import org.ui.image.ImageDerivatives;
+
+/**
+ * Page model linking the {@link WebResourceBundle}s: <code>${model.css}</code> and <code>${model.js}</code> each emit a
+ * single tag, looked up in the manifest of the {@link WebResourceBundler}. Both are <code>null</code> while there is no
+ * bundle, so templates can fall back to linking the sources, e.g. <code>${model.css!resfn.css(["/ui/.*css"])}</code>.
+ * Images of the web resources are linked in resized variants with {@link #image(String, int)} and {@link #srcset(String)}.
+ */
+public class WebResourcesModel<RD extends RenderableDefinition> extends RenderingModelImpl<RD> {
+
+    private final WebResourceBundler bundler;
+    private final ImageDerivatives imageDerivatives;
+
+    @Inject
+    public WebResourcesModel(Node content, RD definition, RenderingModel<?> parent, WebResourceBundler bundler, ImageDerivatives imageDerivatives) {
+        super(content, definition, parent);
+
+        this.bundler = bundler;
+        this.imageDerivatives = imageDerivatives;
+    }
+
+    public String getCss() {
+        String href = link(WebResourceBundler.CSS);
+        return href == null ? null : "<link rel=\"stylesheet\" href=\"" + href + "\" />";
+    }
+
+    public String getJs() {
+        String src = link(WebResourceBundler.JS);
+        return src == null ? null : "<script src=\"" + src + "\"></script>";
+    }
+
+    /**
+     * Returns the url of an image of the web resources resized to the given width, e.g. <code>model.image("/ui/webresources/img/header.jpg", 960)</code>.
+     */
+    public String image(String path, int width) {
+        return imageDerivatives.url(ImageDerivatives.resourceSource(path), width);
+    }
+
+    /**
+     * Returns the <code>srcset</code> of the resized variants of an image of the web resources.
+     */
+    public String srcset(String path) {
+        return imageDerivatives.srcset(ImageDerivatives.resourceSource(path));
+    }
+
+    private String link(String type) {
+        WebResourceBundle bundle = bundler.getBundle(type);
+        return bundle == null ? null : MgnlContext.getContextPath() + WebResourceServlet.PATH + bundle.getName();
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * This file Copyright (c) 2019 Magnolia International
+ * Ltd.  (http://www.magnolia-cms.com). All rights reserved.
+ *
+ *
+ * This file is dual-licensed under both the Magnolia
+ * Network Agreement and the GNU General Public License.
+ * You may elect to use one or the other of these licenses.
+ *
+ * This file is distributed in the hope that it will be
+ * useful, but AS-IS and WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE, TITLE, or NONINFRINGEMENT.
+ * Redistribution, except as permitted by whichever of the GPL
+ * or MNA you select, is prohibited.
+ *
+ * 1. For the GPL license (GPL), you can redistribute and/or
+ * modify this file under the terms of the GNU General
+ * Public License, Version 3, as published by the Free Software
+ * Foundation.  You should have received a copy of the GNU
+ * General Public License, Version 3 along with this program;
+ * if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * 2. For the Magnolia Network Agreement (MNA), this file
+ * and the accompanying materials are made available under the
+ * terms of the MNA which accompanies this distribution, and
+ * is available at http://www.magnolia-cms.com/mna.html
+ *
+ * Any modifications to this file must keep this entire header
+ * intact.
+ *
+ */
+package org.ui.field;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AssignmentTableTest {
+
+    private AssignmentTable table;
+
+    @Before
+    public void setUp() {
+        table = new AssignmentTable();
+    }
+
+    @Test
+    public void referencesFollowAssignments() {
+        // WHEN
+        table.apply("page", "/site/page", "tags", set("news", "tax"));
+        table.apply("other", "/site/other", "tags", set("news"));
+
+        // THEN
+        assertEquals(2, table.getReferenceCount("news"));
+        assertEquals(Collections.singletonList(new AssignmentReference("page", "tags")), table.getReferences("tax"));
+        assertEquals(2, table.getOwnerCount());
+    }
+
+    @Test
+    public void reapplyingUnlinksDroppedTargets() {
+        // GIVEN
+        table.apply("page", "/site/page", "tags", set("news", "tax"));
+
+        // WHEN
+        table.apply("page", "/site/page", "tags", set("tax", "careers"));
+
+        // THEN
+        assertFalse(table.isReferenced("news"));
+        assertEquals(1, table.getReferenceCount("tax"));
+        assertEquals(1, table.getReferenceCount("careers"));
+    }
+
+    @Test
+    public void emptyAssignmentsForgetTheOwner() {
+        // GIVEN
+        table.apply("page", "/site/page", "tags", set("news"));
+        table.apply("page", "/site/page", "groups", set("editors"));
+
+        // WHEN
+        table.apply("page", "/site/page", "tags", set());
+        table.apply("page", "/site/page", "groups", set());
+
+        // THEN
+        assertEquals(0, table.getOwnerCount());
+        assertEquals(0, table.getTargetCount());
+        assertNull(table.getPath("page"));
+    }
+
+    @Test
+    public void removingAnOwnerUnlinksAllItsAssignments() {
+        // GIVEN
+        table.apply("page", "/site/page", "tags", set("news"));
+        table.apply("page", "/site/page", "users", set("julia"));
+
+        // WHEN
+        boolean removed = table.remove("page");
+
+        // THEN
+        assertTrue(removed);
+        assertFalse(table.isReferenced("news"));
+        assertFalse(table.isReferenced("julia"));
+        assertFalse(table.remove("page"));
+    }
+
+    @Test
+    public void removingASubtreeRemovesEveryOwnerBelowIt() {
+        // GIVEN
+        table.apply("section", "/site/section", "tags", set("news"));
+        table.apply("child", "/site/section/child", "tags", set("news"));
+        table.apply("grandchild", "/site/section/child/grandchild", "tags", set("tax"));
+        table.apply("sibling", "/site/section2", "tags", set("news"));
+
+        // WHEN
+        Set<String> removed = new HashSet<>(table.removeBelow("/site/section"));
+
+        // THEN
+        assertEquals(set("section", "child", "grandchild"), removed);
+        assertEquals(Collections.singletonList(new AssignmentReference("sibling", "tags")), table.getReferences("news"));
+        assertFalse(table.isReferenced("tax"));
+    }
+
+    @Test
+    public void removingAPathWithoutOwnersRemovesNothing() {
+        // GIVEN
+        table.apply("page", "/site/page", "tags", set("news"));
+
+        // WHEN
+        Set<String> removed = new HashSet<>(table.removeBelow("/site/other"));
+
+        // THEN
+        assertTrue(removed.isEmpty());
+        assertEquals(1, table.getOwnerCount());
+    }
+
+    @Test
+    public void movingASubtreeMovesThePathsOfItsOwners() {
+        // GIVEN
+        table.apply("section", "/site/section", "tags", set("news"));
+        table.apply("child", "/site/section/child", "tags", set("tax"));
+        table.apply("sibling", "/site/section2", "tags", set("news"));
+
+        // WHEN
+        table.move("/site/section", "/archive/section");
+
+        // THEN
+        assertEquals("/archive/section", table.getPath("section"));
+        assertEquals("/archive/section/child", table.getPath("child"));
+        assertEquals("/site/section2", table.getPath("sibling"));
+        assertTrue(table.removeBelow("/site/section").isEmpty());
+        assertEquals(set("section", "child"), new HashSet<>(table.removeBelow("/archive")));
+    }
+
+    @Test
+    public void aRemovalArrivingAgainIsAMove() {
+        // GIVEN
+        table.apply("section", "/site/section", "tags", set("news"));
+        table.apply("child", "/site/section/child", "tags", set("tax"));
+        Map<String, String> removals = new LinkedHashMap<>();
+        removals.put("/site/section", "section");
+        Map<String, String> arrivals = new HashMap<>();
+        arrivals.put("section", "/archive/section");
+
+        // WHEN
+        List<String> removed = table.reconcile(removals, arrivals);
+        // the move event following the removal and the addition finds it done
+        table.move("/site/section", "/archive/section");
+
+        // THEN
+        assertTrue(removed.isEmpty());
+        assertEquals(2, table.getOwnerCount());
+        assertEquals("/archive/section/child", table.getPath("child"));
+        assertEquals(1, table.getReferenceCount("tax"));
+    }
+
+    @Test
+    public void aRemovalNotArrivingAgainRemovesTheSubtree() {
+        // GIVEN
+        table.apply("section", "/site/section", "tags", set("news"));
+        table.apply("child", "/site/section/child", "tags", set("tax"));
+        table.apply("other", "/site/other", "tags", set("news"));
+        Map<String, String> removals = new LinkedHashMap<>();
+        removals.put("/site/section", "section");
+        Map<String, String> arrivals = new HashMap<>();
+        arrivals.put("other", "/archive/other");
+
+        // WHEN
+        List<String> removed = table.reconcile(removals, arrivals);
+
+        // THEN
+        assertEquals(set("section", "child"), new HashSet<>(removed));
+        assertFalse(table.isReferenced("tax"));
+        assertEquals("/site/other", table.getPath("other"));
+    }
+
+    @Test
+    public void removingATargetDropsItFromAllOwners() {
+        // GIVEN
+        table.apply("page", "/site/page", "tags", set("news", "tax"));
+        table.apply("other", "/site/other", "tags", set("news"));
+
+        // WHEN
+        int removed = table.removeTarget("news").size();
+
+        // THEN
+        assertEquals(2, removed);
+        assertFalse(table.isReferenced("news"));
+        assertEquals(1, table.getOwnerCount());
+        assertNull(table.getPath("other"));
+
+        // a later update only unlinks what is left
+        table.apply("page", "/site/page", "tags", set());
+        assertFalse(table.isReferenced("tax"));
+        assertEquals(0, table.getOwnerCount());
+    }
+
+    @Test
+    public void concurrentWritersAllLandInTheTable() throws Exception {
+        // GIVEN
+        int owners = 200;
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // WHEN
+        for (int thread = 0; thread < threads; thread++) {
+            final int offset = thread;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = offset; i < owners; i += threads) {
+                    table.apply("page" + i, "/site/page" + i, "tags", set("news"));
+                    assertTrue(table.getReferenceCount("news") > 0);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // THEN
+        assertEquals(owners, table.getReferenceCount("news"));
+        assertEquals(owners, table.getOwnerCount());
+        assertEquals(owners, table.removeBelow("/site").size());
+        assertFalse(table.isReferenced("news"));
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,12 @@
+[#assign feed = model.feed]
+<div class="feed">
+  <ul class="list-unstyled">
+  [#list feed.entries as entry]
+    <li><a href='${ctx.contextPath}${entry.path}.html'>${entry.title!}</a></li>
+  [/#list]
+  </ul>
+
+  [#if feed.nextCursor?has_content]
+    <a href='?${model.cursorParameter}=${feed.nextCursor?url}' class='btn btn-link'>&raquo;</a>
+  [/#if]
+</div>
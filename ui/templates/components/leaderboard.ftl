@@ -0,0 +1,10 @@
+[#assign entries = model.entries]
+[#if entries?has_content]
+<div class="leaderboard">
+  <ol>
+  [#list entries as entry]
+    <li>${entry.name!} <span class="badge">${entry.value?string("0.#")}</span></li>
+  [/#list]
+  </ol>
+</div>
+[/#if]
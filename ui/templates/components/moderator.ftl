@@ -0,0 +1,12 @@
+[#if model.moderator?has_content]
+<div class="moderator">
+  [#if content.title?has_content]
+    <h3>${content.title!}</h3>
+  [/#if]
+  <ul class="list-inline">
+    <li><span class="badge">${model.views}</span> views</li>
+    <li><span class="badge">${model.likes}</span> likes</li>
+    <li><span class="badge">${model.comments}</span> comments</li>
+  </ul>
+</div>
+[/#if]
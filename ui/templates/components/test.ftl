@@ -4,10 +4,11 @@
   [/#if]
 
   [#if content.image?has_content]
-    [#assign image = damfn.getAsset(content.image)]
-    [#assign imageLink = image.link]
+    [#assign image = model.image!]
+    [#assign imageLink = image.link!]
     <img
       src='${imageLink!}'
+      [#if model.imageSrcset?has_content]srcset='${model.imageSrcset}' sizes='(max-width: 768px) 100vw, 50vw'[/#if]
       class='img-responsive'
       alt='${content.caption!"image"}'>
   [/#if]
@@ -17,16 +18,13 @@
   [/#if]
 
   [#if content.internalLink?has_content]
-    [#assign target = cmsfn.contentById(content.internalLink, "website")!]
+    [#assign target = model.internalLink!]
     <a href='${ctx.contextPath}/${cmsfn.link(target)!}' class='btn btn-link'>${target.title!target.@name}</a>
   [/#if]
 
-  [#if content.categories?has_content && content.categories?size > 0]
-    [#list content.categories as item]
-      [#assign category = cmsfn.contentById(item, "category")!]
-      <span class="label label-default">${category.name!category.@name!}</span>
-    [/#list]
-  [/#if]
+  [#list model.categories as category]
+    <span class="label label-default">${category.name!category.@name!}</span>
+  [/#list]
 
   [#if content.option?has_content]
     <div>${content.option!}</div>
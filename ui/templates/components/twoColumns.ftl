@@ -1,3 +1,4 @@
+[@model.fragment]
 <div class="row">
     <div class="col-sm-6">
         <div class="panel panel-default">
@@ -16,3 +17,4 @@
         </div>
     </div>   
 </div>
+[/@model.fragment]
@@ -7,14 +7,14 @@
     <title>${content.windowTitle!content.title!}</title>
     <meta name="description" content="${content.description!""}" />
     <meta name="keywords" content="${content.keywords!""}" />
-    ${resfn.css(["/ui/.*css"])!}
+    ${model.css!resfn.css(["/ui/.*css"])!}
   </head>
-  <body class="taxation ${cmsfn.language()}">
+  <body class="taxation ${cmsfn.language()}"[#if ctx.user?? && ctx.user.name != "anonymous"] data-ui-alerts="${ctx.contextPath}/.ui/alerts"[/#if] data-ui-context="${ctx.contextPath}">
 
     <div class="container">
     </div>
 
-    ${resfn.js(["/ui/.*js"])!}
+    ${model.js!resfn.js(["/ui/.*js"])!}
     [@cms.area name="main"/]
   </body>
 </html>
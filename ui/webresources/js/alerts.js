@@ -0,0 +1,24 @@
+/*
+ * Shows the alerts about important pages pushed by the ui module, on pages giving the stream in data-ui-alerts, which
+ * they only do for authenticated users.
+ */
+(function ($) {
+  'use strict';
+
+  var url = $(document.body).data('ui-alerts');
+  if (!url || typeof window.EventSource === 'undefined') {
+    return;
+  }
+
+  var $container = $('<div class="ui-alerts"></div>').css({ position: 'fixed', top: '1em', right: '1em', zIndex: 1050 }).appendTo(document.body);
+  var source = new EventSource(url);
+
+  source.addEventListener('alert', function (event) {
+    var alert = JSON.parse(event.data);
+    var $alert = $('<div class="alert alert-danger alert-dismissible" role="alert"></div>')
+      .append('<button type="button" class="close" data-dismiss="alert" aria-label="Close"><span aria-hidden="true">&times;</span></button>')
+      .append($('<a class="alert-link"></a>').attr('href', $(document.body).data('ui-context') + alert.path + '.html').text(alert.title || alert.path));
+    $container.find('[data-identifier="' + alert.identifier + '"]').remove();
+    $alert.attr('data-identifier', alert.identifier).prependTo($container);
+  });
+})(jQuery);